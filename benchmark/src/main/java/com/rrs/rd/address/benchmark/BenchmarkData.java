@@ -0,0 +1,171 @@
+package com.rrs.rd.address.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import com.rrs.rd.address.index.TermIndexBuilder;
+import com.rrs.rd.address.interpret.AddressInterpreter;
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.persist.AddressPersister;
+import com.rrs.rd.address.similarity.SimilarityComputer;
+
+/**
+ * 基准测试共用的模拟数据。
+ * <p>
+ * 行政区域从benchmark-regions.txt加载，地址由固定随机种子按模板生成，每次运行的数据完全一致。
+ * 生成的地址经过解析后按分区写入临时缓存目录，查询地址使用另一个随机种子生成，与地址库中的地址相似但不完全相同。
+ * </p>
+ * <p>地址库的地址数量通过系统属性benchmark.docs指定，默认为20000。</p>
+ */
+public class BenchmarkData {
+	private static final String[] PREFIXES = { "北京北京市海淀区", "北京市朝阳区望京街道", "北京北京市东城区", "北京海淀区温泉镇"
+		, "北京海淀区苏家坨镇北安河村", "山东省青岛市市南区", "山东青岛李沧区", "青岛市崂山区中韩街道", "山东青岛李沧区虎山路街道"
+		, "广东省深圳市南山区粤海街道", "深圳福田区" };
+	private static final String[] ROADS = { "北崂路", "宁夏路", "香港中路", "中关村大街", "和平里中街", "翠微路", "温泉路"
+		, "北安河路", "深南大道", "科技园路" };
+	private static final String[] COMMS = { "东山峰景", "翠微西里", "期颐百年小区", "紫韵东城", "海上五月花", "和平商业大厦"
+		, "嘉园", "北里", "新村", "花园" };
+
+	private static BenchmarkData instance = null;
+
+	private AddressPersister persister = null;
+	private TermIndexBuilder termIndex = null;
+	private AddressInterpreter interpreter = null;
+	private SimilarityComputer computer = null;
+	private List<AddressEntity> addresses = null;
+	private List<String> queryTexts = null;
+	private List<AddressEntity> queryAddresses = null;
+
+	public static synchronized BenchmarkData get() {
+		if(instance==null) instance = new BenchmarkData(Integer.getInteger("benchmark.docs", 20000));
+		return instance;
+	}
+
+	private BenchmarkData(int docs) {
+		this.persister = new AddressPersister();
+		this.persister.setRegionDao(new MemoryRegionDao("benchmark-regions.txt"));
+		this.termIndex = new TermIndexBuilder(this.persister, Arrays.asList("市区", "城区"));
+		this.interpreter = new AddressInterpreter();
+		this.interpreter.setPersister(this.persister);
+		this.interpreter.setTermIndex(this.termIndex);
+
+		File folder = null;
+		try {
+			folder = Files.createTempDirectory("benchmark-cache").toFile();
+		} catch (IOException ex) {
+			throw new IllegalStateException("创建临时缓存目录失败", ex);
+		}
+		deleteOnExit(folder);
+		this.computer = new SimilarityComputer();
+		this.computer.setInterpreter(this.interpreter);
+		this.computer.setCacheFolder(folder.getAbsolutePath());
+		this.computer.setCacheVectorsInMemory(true);
+
+		//地址库：解析后按分区写入缓存文件
+		Random random = new Random(42);
+		this.addresses = new ArrayList<AddressEntity>(docs);
+		Map<String, List<AddressEntity>> partitions = new TreeMap<String, List<AddressEntity>>();
+		for(int i=0; i<docs; i++){
+			AddressEntity address = this.interpreter.interpret(fullText(random));
+			if(address==null || !address.hasDistrict()) continue;
+			address.setId(i + 1);
+			this.addresses.add(address);
+			String key = this.computer.buildCacheKey(address);
+			List<AddressEntity> list = partitions.get(key);
+			if(list==null){
+				list = new ArrayList<AddressEntity>();
+				partitions.put(key, list);
+			}
+			list.add(address);
+		}
+		for(Map.Entry<String, List<AddressEntity>> entry : partitions.entrySet())
+			this.computer.buildDocumentFileCache(entry.getKey(), entry.getValue());
+
+		//查询地址
+		random = new Random(7);
+		this.queryTexts = new ArrayList<String>(1000);
+		this.queryAddresses = new ArrayList<AddressEntity>(1000);
+		for(int i=0; i<1000; i++){
+			String text = queryText(random);
+			AddressEntity address = this.interpreter.interpret(text);
+			if(address==null || !address.hasDistrict()) continue;
+			this.queryTexts.add(text);
+			this.queryAddresses.add(address);
+		}
+	}
+
+	private static String fullText(Random random) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(PREFIXES[random.nextInt(PREFIXES.length)]);
+		if(random.nextInt(3)>0) sb.append(ROADS[random.nextInt(ROADS.length)]).append(1 + random.nextInt(200)).append("号");
+		sb.append(COMMS[random.nextInt(COMMS.length)]);
+		if(random.nextInt(2)==0) sb.append(COMMS[random.nextInt(COMMS.length)]);
+		sb.append(1 + random.nextInt(30)).append("号楼").append(1 + random.nextInt(6)).append("单元").append(101 + random.nextInt(900));
+		return sb.toString();
+	}
+
+	private static String queryText(Random random) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(PREFIXES[random.nextInt(PREFIXES.length)]);
+		if(random.nextInt(3)>0) sb.append(ROADS[random.nextInt(ROADS.length)]).append(1 + random.nextInt(200)).append("号");
+		sb.append(COMMS[random.nextInt(COMMS.length)]).append(1 + random.nextInt(30)).append("号楼");
+		return sb.toString();
+	}
+
+	private static void deleteOnExit(File folder) {
+		final File dir = folder;
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				File[] files = dir.listFiles();
+				if(files!=null)
+					for(File file : files) file.delete();
+				dir.delete();
+			}
+		});
+	}
+
+	public AddressPersister getPersister() {
+		return this.persister;
+	}
+
+	public TermIndexBuilder getTermIndex() {
+		return this.termIndex;
+	}
+
+	public AddressInterpreter getInterpreter() {
+		return this.interpreter;
+	}
+
+	public SimilarityComputer getComputer() {
+		return this.computer;
+	}
+
+	/**
+	 * 地址库中的全部地址（已解析）。
+	 */
+	public List<AddressEntity> getAddresses() {
+		return this.addresses;
+	}
+
+	/**
+	 * 查询地址原文。
+	 */
+	public List<String> getQueryTexts() {
+		return this.queryTexts;
+	}
+
+	/**
+	 * 查询地址解析结果，与{@link #getQueryTexts()}一一对应。
+	 */
+	public List<AddressEntity> getQueryAddresses() {
+		return this.queryAddresses;
+	}
+}
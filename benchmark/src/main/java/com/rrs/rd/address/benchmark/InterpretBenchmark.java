@@ -0,0 +1,64 @@
+package com.rrs.rd.address.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rrs.rd.address.index.TermIndexBuilder;
+import com.rrs.rd.address.interpret.AddressInterpreter;
+import com.rrs.rd.address.interpret.RegionInterpreterVisitor;
+import com.rrs.rd.address.persist.AddressEntity;
+
+/**
+ * 地址解析：{@link AddressInterpreter#interpret(String)}，以及省市区匹配使用的{@link TermIndexBuilder#deepMostQuery(String, com.rrs.rd.address.index.TermIndexVisitor)}。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.xml")
+public class InterpretBenchmark {
+	private AddressInterpreter interpreter = null;
+	private TermIndexBuilder termIndex = null;
+	private RegionInterpreterVisitor visitor = null;
+	private List<String> texts = null;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		BenchmarkData data = BenchmarkData.get();
+		this.interpreter = data.getInterpreter();
+		this.termIndex = data.getTermIndex();
+		this.visitor = new RegionInterpreterVisitor(data.getPersister());
+		this.texts = data.getQueryTexts();
+	}
+
+	private String nextText() {
+		String text = this.texts.get(this.next);
+		this.next = (this.next + 1) % this.texts.size();
+		return text;
+	}
+
+	@Benchmark
+	public AddressEntity interpret() {
+		return this.interpreter.interpret(nextText());
+	}
+
+	@Benchmark
+	public int deepMostQuery() {
+		this.visitor.reset();
+		this.termIndex.deepMostQuery(nextText(), this.visitor);
+		return this.visitor.resultEndPosition();
+	}
+}
@@ -0,0 +1,177 @@
+package com.rrs.rd.address.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+
+import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionType;
+import com.rrs.rd.address.persist.RegionWatermark;
+import com.rrs.rd.address.persist.dao.RegionDao;
+
+/**
+ * 基于内存的只读行政区域DAO，从区域文件加载模拟的行政区域，基准测试不需要连接mysql。
+ * <p>区域文件每行一个区域：ID,上级ID,类型,名称,别名，#开头的行为注释。根节点固定为ID为1的"中国"。</p>
+ */
+public class MemoryRegionDao implements RegionDao {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private RegionEntity root = null;
+	private Map<Long, RegionEntity> regions = new HashMap<Long, RegionEntity>();
+	private Map<Long, List<RegionEntity>> children = new HashMap<Long, List<RegionEntity>>();
+
+	/**
+	 * 从classpath加载区域文件。
+	 */
+	public MemoryRegionDao(String resource) {
+		InputStream stream = MemoryRegionDao.class.getClassLoader().getResourceAsStream(resource);
+		if(stream==null) throw new IllegalArgumentException("区域文件不存在：" + resource);
+		this.load(stream, resource);
+	}
+
+	/**
+	 * 从文件系统加载区域文件，例如{@link SyntheticDataGenerator}生成的区域文件。
+	 */
+	public MemoryRegionDao(File file) {
+		try {
+			this.load(new FileInputStream(file), file.getPath());
+		} catch (FileNotFoundException ex) {
+			throw new IllegalArgumentException("区域文件不存在：" + file.getPath(), ex);
+		}
+	}
+
+	private void load(InputStream stream, String name) {
+		this.root = new RegionEntity();
+		this.root.setId(1);
+		this.root.setName("中国");
+		this.root.setType(RegionType.Country);
+		this.regions.put(this.root.getId(), this.root);
+
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(stream, "utf-8"));
+			String line = null;
+			while((line = reader.readLine())!=null){
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#")) continue;
+				String[] fields = line.split(",", -1);
+				RegionEntity region = new RegionEntity();
+				region.setId(Long.parseLong(fields[0]));
+				region.setParentId(Long.parseLong(fields[1]));
+				region.setType(RegionType.valueOf(fields[2]));
+				region.setName(fields[3]);
+				if(fields.length>4 && !fields[4].isEmpty()) region.setAlias(fields[4]);
+				this.regions.put(region.getId(), region);
+				List<RegionEntity> list = this.children.get(region.getParentId());
+				if(list==null){
+					list = new ArrayList<RegionEntity>();
+					this.children.put(region.getParentId(), list);
+				}
+				list.add(region);
+			}
+		} catch (IOException ex) {
+			throw new IllegalStateException("读取区域文件失败：" + name, ex);
+		} finally {
+			try { if(reader!=null) reader.close(); } catch (IOException ex) { }
+		}
+	}
+
+	@Override
+	public List<RegionEntity> findByParent(long pid) {
+		List<RegionEntity> list = this.children.get(pid);
+		return list==null ? new ArrayList<RegionEntity>(0) : new ArrayList<RegionEntity>(list);
+	}
+
+	@Override
+	public RegionEntity findByParentAndName(long pid, String name) {
+		List<RegionEntity> list = this.children.get(pid);
+		if(list==null) return null;
+		for(RegionEntity region : list)
+			if(region.getName().equals(name)) return region;
+		return null;
+	}
+
+	@Override
+	public RegionEntity findRoot() {
+		return this.root;
+	}
+
+	/**
+	 * 与mysql中的查询相同，按上级ID、ID排序后逐个回调。
+	 */
+	@Override
+	public void scanAll(ResultHandler<RegionEntity> handler) {
+		List<RegionEntity> all = new ArrayList<RegionEntity>(this.regions.values());
+		Collections.sort(all, new Comparator<RegionEntity>() {
+			@Override
+			public int compare(RegionEntity a, RegionEntity b) {
+				if(a.getParentId()!=b.getParentId()) return a.getParentId() < b.getParentId() ? -1 : 1;
+				return a.getId()==b.getId() ? 0 : (a.getId() < b.getId() ? -1 : 1);
+			}
+		});
+		DefaultResultContext<RegionEntity> context = new DefaultResultContext<RegionEntity>();
+		for(RegionEntity region : all){
+			context.nextResultObject(region);
+			handler.handleResult(context);
+			if(context.isStopped()) break;
+		}
+	}
+
+	/**
+	 * 与mysql中的统计方式相同：数量、最大ID，以及每个区域各字段以|连接后CRC32的和。
+	 */
+	@Override
+	public RegionWatermark watermark() {
+		long maxId = 0, checksum = 0;
+		CRC32 crc = new CRC32();
+		for(RegionEntity region : this.regions.values()){
+			maxId = Math.max(maxId, region.getId());
+			String row = region.getId() + "|" + region.getParentId() + "|" + region.getName() + "|" + region.getAlias()
+				+ "|" + region.getType().toValue() + "|" + region.getZip();
+			crc.reset();
+			crc.update(row.getBytes(UTF8));
+			checksum += crc.getValue();
+		}
+		return new RegionWatermark(this.regions.size(), maxId, checksum);
+	}
+
+	@Override
+	public RegionEntity get(long id) {
+		return this.regions.get(id);
+	}
+
+	@Override
+	public int create(RegionEntity entity) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int batchCreate(List<RegionEntity> regions) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int update(RegionEntity entity) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int delete(long id) {
+		throw new UnsupportedOperationException();
+	}
+}
@@ -0,0 +1,60 @@
+package com.rrs.rd.address.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.similarity.Segmenter;
+import com.rrs.rd.address.similarity.segment.IKAnalyzerSegmenter;
+import com.rrs.rd.address.similarity.segment.SimpleSegmenter;
+import com.rrs.rd.address.similarity.segment.SmartCNSegmenter;
+
+/**
+ * 各{@link Segmenter}实现对解析后剩余地址文本的分词。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.xml")
+public class SegmenterBenchmark {
+	@Param({ "simple", "ikanalyzer", "smartcn" })
+	private String segmenterName;
+
+	private Segmenter segmenter = null;
+	private List<String> texts = null;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		if("simple".equals(this.segmenterName)) this.segmenter = new SimpleSegmenter();
+		else if("ikanalyzer".equals(this.segmenterName)) this.segmenter = new IKAnalyzerSegmenter();
+		else if("smartcn".equals(this.segmenterName)) this.segmenter = new SmartCNSegmenter();
+		else throw new IllegalArgumentException("未知的分词器：" + this.segmenterName);
+
+		this.texts = new ArrayList<String>();
+		for(AddressEntity address : BenchmarkData.get().getQueryAddresses())
+			if(address.getText()!=null && !address.getText().isEmpty()) this.texts.add(address.getText());
+	}
+
+	@Benchmark
+	public List<String> segment() {
+		String text = this.texts.get(this.next);
+		this.next = (this.next + 1) % this.texts.size();
+		return this.segmenter.segment(text);
+	}
+}
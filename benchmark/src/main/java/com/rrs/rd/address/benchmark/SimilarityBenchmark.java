@@ -0,0 +1,83 @@
+package com.rrs.rd.address.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.similarity.Document;
+import com.rrs.rd.address.similarity.Query;
+import com.rrs.rd.address.similarity.SimilarityComputer;
+
+/**
+ * 相似度计算：{@link SimilarityComputer#analyse(AddressEntity)}、单个文档的
+ * {@link SimilarityComputer#computeDocSimilarity(Query, Document, int, boolean)}，以及端到端的
+ * {@link SimilarityComputer#findSimilarAddress(String, int, boolean)}。
+ * <p>查询前已加载全部分区，findSimilarAddress不包含分区文件读取时间。</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.xml")
+public class SimilarityBenchmark {
+	private SimilarityComputer computer = null;
+	private List<String> texts = null;
+	private List<AddressEntity> addresses = null;
+	private List<Query> queries = null;
+	private List<Document> docs = null;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		BenchmarkData data = BenchmarkData.get();
+		this.computer = data.getComputer();
+		this.texts = data.getQueryTexts();
+		this.addresses = data.getQueryAddresses();
+		this.queries = new ArrayList<Query>(this.addresses.size());
+		this.docs = new ArrayList<Document>(this.addresses.size());
+		for(AddressEntity address : this.addresses){
+			Query query = new Query(5);
+			query.setQueryAddr(address);
+			query.setQueryDoc(this.computer.analyse(address));
+			this.queries.add(query);
+			//同一分区中的一个地址库文档，同时完成分区加载
+			List<Document> partition = this.computer.loadDocunentsFromCache(address);
+			this.docs.add(partition.get(this.queries.size() % partition.size()));
+		}
+	}
+
+	private int nextIndex() {
+		int index = this.next;
+		this.next = (this.next + 1) % this.addresses.size();
+		return index;
+	}
+
+	@Benchmark
+	public Document analyse() {
+		return this.computer.analyse(this.addresses.get(nextIndex()));
+	}
+
+	@Benchmark
+	public double computeDocSimilarity() {
+		int index = nextIndex();
+		return this.computer.computeDocSimilarity(this.queries.get(index), this.docs.get(index), 1, false);
+	}
+
+	@Benchmark
+	public Query findSimilarAddress() {
+		return this.computer.findSimilarAddress(this.texts.get(nextIndex()), 5, false);
+	}
+}
@@ -0,0 +1,461 @@
+package com.rrs.rd.address.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.rrs.rd.address.index.TermIndexBuilder;
+import com.rrs.rd.address.interpret.AddressInterpreter;
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.persist.AddressPersister;
+import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionType;
+import com.rrs.rd.address.similarity.CacheManifest;
+import com.rrs.rd.address.similarity.SimilarityComputer;
+
+/**
+ * 生成模拟的行政区域和大量地址，用于在本地重现数据规模相关的性能问题。
+ * <p>用法：SyntheticDataGenerator 输出目录 [-addresses 地址数量] [-provinces N] [-cities N] [-districts N]
+ * [-towns N] [-villages N] [-roads N] [-communities N] [-skew S] [-seed N] [-sql] [-cache]</p>
+ * <p>
+ * 区域树为 省份 &gt; 地级市 &gt; 区县 &gt; 街道乡镇、村，-cities、-districts为每个上级区域的下级数量，
+ * -towns、-villages、-roads、-communities为每个区县的街道乡镇、村、道路、小区数量。
+ * 省份、城市、区县名称全局唯一，区县下的名称在区县内唯一。区域ID与正式数据的编码方式相同，街道乡镇、村的ID为区县ID*10000+序号。
+ * </p>
+ * <p>
+ * 地址文本使用与正式数据相同的形态：省市区（全称、简称混用，部分省略省份）、街道乡镇、村、道路+门牌号、小区、
+ * 楼号+单元+房间号，或者村+组+门牌号。每条地址都经过{@link AddressInterpreter}解析，解析结果的区县与生成时不一致的地址丢弃。
+ * </p>
+ * <p>
+ * -skew为地址分布的偏斜度（Zipf分布的指数），同时用于各区县的地址数量以及区县内道路、小区的出现频率。
+ * 0为均匀分布，默认为1，值越大少数热点区县的地址越集中，分区大小差别越大。
+ * </p>
+ * <p>
+ * 输出目录中总是生成区域文件regions.txt，格式与{@link MemoryRegionDao}相同；指定-sql时生成regions.sql、addresses.sql，
+ * 可以导入mysql的bas_region、addr_address表；指定-cache时在cache子目录中直接生成分区缓存文件，并记录分区水位到
+ * {@link CacheManifest 清单文件}。地址按区县逐个生成、输出，内存中只持有一个区县的地址。
+ * 相同的参数和随机种子每次生成完全相同的数据。
+ * </p>
+ */
+public class SyntheticDataGenerator {
+	/**
+	 * 名称使用的汉字，不包含省、市、区、县、镇、乡、村、路、街、道、号、楼等会影响地址解析的字。
+	 */
+	private static final char[] NAME_CHARS = ("安平宁永兴华东西南北阳山江河湖海泉林丰和嘉康长新福德昌盛春秋青龙凤云金银石桥源溪"
+		+ "岭峰川明光泰广通顺利清远乐景文武松柏桃梅兰竹玉宝鹤鸣").toCharArray();
+	private static final String[] ROAD_SUFFIXES = { "路", "路", "路", "街", "大道" };
+	private static final String[] COMMUNITY_SUFFIXES = { "小区", "花园", "家园", "公寓", "大厦", "新村" };
+	private static final int SQL_BATCH = 1000;
+	private static SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+
+	private int addressCount = 1000000;
+	private int provinces = 31;
+	private int cities = 10;
+	private int districts = 8;
+	private int towns = 12;
+	private int villages = 10;
+	private int roads = 40;
+	private int communities = 60;
+	private double skew = 1;
+	private long seed = 42;
+	private boolean sql = false;
+	private boolean cache = false;
+
+	private Set<String> globalNames = new HashSet<String>();
+	private List<DistrictInfo> districtList = new ArrayList<DistrictInfo>();
+
+	public static void main(String[] args) {
+		if(args==null || args.length<1){
+			System.out.println("> 用法：SyntheticDataGenerator 输出目录 [-addresses 地址数量] [-provinces N] [-cities N] [-districts N]"
+				+ " [-towns N] [-villages N] [-roads N] [-communities N] [-skew S] [-seed N] [-sql] [-cache]");
+			return;
+		}
+		SyntheticDataGenerator generator = new SyntheticDataGenerator();
+		for(int i=1; i<args.length; i++){
+			String name = args[i];
+			if("-sql".equals(name)) { generator.sql = true; continue; }
+			if("-cache".equals(name)) { generator.cache = true; continue; }
+			if(i+1>=args.length){
+				System.out.println("> [错误] 参数缺少值：" + name);
+				return;
+			}
+			String value = args[++i];
+			try{
+				if("-addresses".equals(name)) generator.addressCount = Integer.parseInt(value);
+				else if("-provinces".equals(name)) generator.provinces = Integer.parseInt(value);
+				else if("-cities".equals(name)) generator.cities = Integer.parseInt(value);
+				else if("-districts".equals(name)) generator.districts = Integer.parseInt(value);
+				else if("-towns".equals(name)) generator.towns = Integer.parseInt(value);
+				else if("-villages".equals(name)) generator.villages = Integer.parseInt(value);
+				else if("-roads".equals(name)) generator.roads = Integer.parseInt(value);
+				else if("-communities".equals(name)) generator.communities = Integer.parseInt(value);
+				else if("-skew".equals(name)) generator.skew = Double.parseDouble(value);
+				else if("-seed".equals(name)) generator.seed = Long.parseLong(value);
+				else {
+					System.out.println("> [错误] 未知参数：" + name);
+					return;
+				}
+			}catch(NumberFormatException ex){
+				System.out.println("> [错误] 参数" + name + "必须是数字：" + value);
+				return;
+			}
+		}
+		if(generator.provinces<1 || generator.provinces>80 || generator.cities<1 || generator.cities>99
+				|| generator.districts<1 || generator.districts>99 || generator.roads<1 || generator.communities<1
+				|| generator.towns<0 || generator.villages<0 || generator.towns + generator.villages>9999){
+			System.out.println("> [错误] 区域数量超出范围：provinces 1-80，cities、districts 1-99，towns+villages不超过9999");
+			return;
+		}
+		if(generator.provinces * generator.cities * (generator.districts + 1) > NAME_CHARS.length * NAME_CHARS.length * 20){
+			System.out.println("> [错误] 区域数量太多，无法生成唯一的区域名称");
+			return;
+		}
+
+		try {
+			generator.generate(new File(args[0]));
+		} catch (IOException ex) {
+			System.out.println("> [错误] 写入文件失败：" + ex.getMessage());
+			ex.printStackTrace(System.out);
+		}
+	}
+
+	public void generate(File folder) throws IOException {
+		if(!folder.exists()) folder.mkdirs();
+		Date start = new Date();
+		File regionFile = new File(folder, "regions.txt");
+		this.buildRegions(regionFile);
+		print(start, "generated " + this.districtList.size() + " districts, region file: " + regionFile.getPath());
+		if(this.sql) this.writeRegionSql(new File(folder, "regions.sql"));
+
+		//使用生成的区域解析地址
+		AddressPersister persister = new AddressPersister();
+		persister.setRegionDao(new MemoryRegionDao(regionFile));
+		TermIndexBuilder termIndex = new TermIndexBuilder(persister, Arrays.asList("市区", "城区"));
+		AddressInterpreter interpreter = new AddressInterpreter();
+		interpreter.setPersister(persister);
+		interpreter.setTermIndex(termIndex);
+		SimilarityComputer computer = null;
+		CacheManifest manifest = null;
+		if(this.cache){
+			File cacheFolder = new File(folder, "cache");
+			cacheFolder.mkdirs();
+			computer = new SimilarityComputer();
+			computer.setInterpreter(interpreter);
+			computer.setCacheFolder(cacheFolder.getAbsolutePath());
+			manifest = CacheManifest.load(cacheFolder);
+		}
+
+		Writer addressSql = null;
+		if(this.sql)
+			addressSql = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(folder, "addresses.sql")), "utf-8"));
+		try{
+			int[] counts = this.distribute();
+			int id = 0, generated = 0, rejected = 0, sqlRows = 0;
+			long lastPrint = System.currentTimeMillis();
+			for(int i=0; i<this.districtList.size(); i++){
+				if(counts[i]<=0) continue;
+				DistrictInfo district = this.districtList.get(i);
+				Random random = new Random(this.seed * 31 + district.district.getId());
+				district.createStreetNames(random, this.roads, this.communities);
+				Zipf roadZipf = new Zipf(district.roads.length, this.skew);
+				Zipf communityZipf = new Zipf(district.communities.length, this.skew);
+
+				List<AddressEntity> addresses = new ArrayList<AddressEntity>(counts[i]);
+				for(int j=0; j<counts[i]; j++){
+					String text = district.addressText(random, roadZipf, communityZipf);
+					AddressEntity address = interpreter.interpret(text);
+					if(address==null || !address.hasDistrict() || address.getDistrict().getId()!=district.district.getId()){
+						rejected++;
+						continue;
+					}
+					address.setId(++id);
+					address.setHash(address.getRawText().hashCode());
+					addresses.add(address);
+				}
+				generated += addresses.size();
+				if(addresses.isEmpty()) continue;
+
+				if(addressSql!=null){
+					for(AddressEntity address : addresses){
+						addressSql.write(sqlRows % SQL_BATCH==0 ? "INSERT INTO `addr_address`(`id`,`province`,`city`,`district`,`street`"
+							+ ",`town`,`village`,`text`,`road`,`road_num`,`building_num`,`hash`,`raw_text`) VALUES\n" : ",\n");
+						addressSql.write(addressValues(address));
+						sqlRows++;
+						if(sqlRows % SQL_BATCH==0) addressSql.write(";\n");
+					}
+				}
+				if(computer!=null){
+					String key = computer.buildCacheKey(addresses.get(0));
+					computer.buildDocumentFileCache(key, addresses);
+					manifest.update(key, addresses.get(addresses.size()-1).getId(), addresses.size());
+				}
+				if(System.currentTimeMillis() - lastPrint >= 10000){
+					lastPrint = System.currentTimeMillis();
+					print(start, (i+1) + "/" + this.districtList.size() + " districts, " + generated + " addresses, " + rejected + " rejected");
+				}
+			}
+			if(addressSql!=null && sqlRows % SQL_BATCH!=0) addressSql.write(";\n");
+			print(start, "finished " + generated + " addresses (" + rejected + " rejected by interpreter) in "
+				+ this.districtList.size() + " districts" + (this.sql ? ", sql: " + folder.getPath() : "")
+				+ (this.cache ? ", cache: " + new File(folder, "cache").getPath() : ""));
+		}finally{
+			if(addressSql!=null) addressSql.close();
+		}
+	}
+
+	/**
+	 * 生成区域树并写入区域文件。
+	 */
+	private void buildRegions(File file) throws IOException {
+		Random random = new Random(this.seed);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "utf-8"));
+		try{
+			writer.write("# 模拟行政区域：ID,上级ID,类型,名称,别名\n");
+			for(int p=0; p<this.provinces; p++){
+				String base = this.uniqueName(random, this.globalNames);
+				RegionEntity province = region((11 + p) * 10000L, 1, RegionType.Province, base + "省", base);
+				writeRegion(writer, province);
+				for(int c=0; c<this.cities; c++){
+					base = this.uniqueName(random, this.globalNames);
+					RegionEntity city = region(province.getId() + (c + 1) * 100, province.getId(), RegionType.City, base + "市", base);
+					writeRegion(writer, city);
+					for(int d=0; d<this.districts; d++){
+						base = this.uniqueName(random, this.globalNames);
+						RegionEntity district = region(city.getId() + d + 1, city.getId(), RegionType.District
+							, base + (d % 4==3 ? "县" : "区"), null);
+						writeRegion(writer, district);
+						this.districtList.add(new DistrictInfo(province, city, district));
+					}
+				}
+			}
+			//区县下的街道乡镇、村，名称只需要在区县内唯一，但不与省市区重名
+			for(DistrictInfo info : this.districtList){
+				long id = info.district.getId() * 10000;
+				for(int t=0; t<this.towns; t++){
+					String base = this.uniqueName(random, info.names);
+					boolean street = t % 2==0;
+					RegionEntity town = region(++id, info.district.getId(), street ? RegionType.Street : RegionType.Town
+						, base + (street ? "街道" : "镇"), null);
+					writeRegion(writer, town);
+					info.towns.add(town);
+				}
+				for(int v=0; v<this.villages; v++){
+					RegionEntity village = region(++id, info.district.getId(), RegionType.Village, this.uniqueName(random, info.names) + "村", null);
+					writeRegion(writer, village);
+					info.villages.add(village);
+				}
+			}
+		}finally{
+			writer.close();
+		}
+	}
+
+	private void writeRegionSql(File file) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "utf-8"));
+		try{
+			List<RegionEntity> regions = new ArrayList<RegionEntity>();
+			RegionEntity root = region(1, 0, RegionType.Country, "中国", null);
+			regions.add(root);
+			RegionEntity province = null, city = null;
+			for(DistrictInfo info : this.districtList){
+				if(info.province!=province) regions.add(province = info.province);
+				if(info.city!=city) regions.add(city = info.city);
+				regions.add(info.district);
+				regions.addAll(info.towns);
+				regions.addAll(info.villages);
+			}
+			for(int i=0; i<regions.size(); i++){
+				RegionEntity region = regions.get(i);
+				writer.write(i % SQL_BATCH==0 ? "INSERT INTO `bas_region`(`id`,`parent_id`,`type`,`name`,`alias`) VALUES\n" : ",\n");
+				writer.write("(" + region.getId() + "," + region.getParentId() + "," + region.getType().toValue()
+					+ "," + quote(region.getName()) + "," + quote(region.getAlias()) + ")");
+				if((i+1) % SQL_BATCH==0 || i==regions.size()-1) writer.write(";\n");
+			}
+		}finally{
+			writer.close();
+		}
+	}
+
+	/**
+	 * 按Zipf分布将地址数量分配到各区县，区县的热度排名随机打乱。
+	 */
+	private int[] distribute(){
+		int n = this.districtList.size();
+		List<Integer> ranks = new ArrayList<Integer>(n);
+		for(int i=0; i<n; i++) ranks.add(i);
+		Collections.shuffle(ranks, new Random(this.seed));
+
+		double total = 0;
+		double[] weights = new double[n];
+		for(int k=0; k<n; k++){
+			weights[k] = 1 / Math.pow(k + 1, this.skew);
+			total += weights[k];
+		}
+		int[] counts = new int[n];
+		int assigned = 0;
+		for(int k=0; k<n; k++){
+			counts[ranks.get(k)] = (int)(this.addressCount * weights[k] / total);
+			assigned += counts[ranks.get(k)];
+		}
+		for(int k=0; assigned<this.addressCount; k = (k + 1) % n, assigned++)
+			counts[ranks.get(k)]++;
+		return counts;
+	}
+
+	/**
+	 * 生成不在used中的名称并加入used，同时避开省市区的名称。一般为2个字，2个字的组合用尽时使用3个字。
+	 */
+	private String uniqueName(Random random, Set<String> used){
+		for(int attempt=0; ; attempt++){
+			int length = attempt<50 ? 2 : 3;
+			StringBuilder sb = new StringBuilder(length);
+			for(int i=0; i<length; i++){
+				char c = NAME_CHARS[random.nextInt(NAME_CHARS.length)];
+				sb.append(c);
+			}
+			String name = sb.toString();
+			if(name.charAt(0)==name.charAt(1) || this.globalNames.contains(name) || used.contains(name)) continue;
+			used.add(name);
+			return name;
+		}
+	}
+
+	private static RegionEntity region(long id, long parentId, RegionType type, String name, String alias){
+		RegionEntity region = new RegionEntity();
+		region.setId(id);
+		region.setParentId(parentId);
+		region.setType(type);
+		region.setName(name);
+		region.setAlias(alias);
+		return region;
+	}
+
+	private static void writeRegion(Writer writer, RegionEntity region) throws IOException {
+		writer.write(region.getId() + "," + region.getParentId() + "," + region.getType().name() + "," + region.getName()
+			+ "," + (region.getAlias()==null ? "" : region.getAlias()) + "\n");
+	}
+
+	private static String addressValues(AddressEntity address){
+		return "(" + address.getId() + "," + regionId(address.getProvince()) + "," + regionId(address.getCity())
+			+ "," + regionId(address.getDistrict()) + "," + regionId(address.getStreet()) + "," + regionId(address.getTown())
+			+ "," + regionId(address.getVillage()) + "," + quote(address.getText()) + "," + quote(address.getRoad())
+			+ "," + quote(address.getRoadNum()) + "," + quote(address.getBuildingNum()) + "," + address.getHash()
+			+ "," + quote(address.getRawText()) + ")";
+	}
+
+	private static long regionId(RegionEntity region){
+		return region==null ? 0 : region.getId();
+	}
+
+	private static String quote(String value){
+		if(value==null) return "''";
+		return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+	}
+
+	private static void print(Date startDate, String message){
+		System.out.println("> [" + format.format(startDate) + " -> " + format.format(new Date()) + "] " + message);
+	}
+
+	/**
+	 * 区县及其下级区域、道路、小区名称。
+	 */
+	private class DistrictInfo {
+		private RegionEntity province, city, district;
+		private List<RegionEntity> towns = new ArrayList<RegionEntity>();
+		private List<RegionEntity> villages = new ArrayList<RegionEntity>();
+		/**
+		 * 区县内已使用的名称（不含后缀）。
+		 */
+		private Set<String> names = new HashSet<String>();
+		private String[] roads, communities;
+
+		DistrictInfo(RegionEntity province, RegionEntity city, RegionEntity district){
+			this.province = province;
+			this.city = city;
+			this.district = district;
+		}
+
+		/**
+		 * 道路、小区名称在生成地址时才创建，不在内存中持有全部区县的道路、小区。
+		 */
+		void createStreetNames(Random random, int roadCount, int communityCount){
+			this.roads = new String[roadCount];
+			for(int i=0; i<roadCount; i++)
+				this.roads[i] = uniqueName(random, this.names) + ROAD_SUFFIXES[random.nextInt(ROAD_SUFFIXES.length)];
+			this.communities = new String[communityCount];
+			for(int i=0; i<communityCount; i++)
+				this.communities[i] = uniqueName(random, this.names) + COMMUNITY_SUFFIXES[random.nextInt(COMMUNITY_SUFFIXES.length)];
+		}
+
+		String addressText(Random random, Zipf roadZipf, Zipf communityZipf){
+			StringBuilder sb = new StringBuilder();
+			switch(random.nextInt(4)){
+				case 0: sb.append(this.province.getName()).append(this.city.getName()); break;
+				case 1: sb.append(this.province.getAlias()).append(this.city.getAlias()); break;
+				case 2: sb.append(this.city.getName()); break;
+				default: sb.append(this.province.getName()).append(this.city.getAlias());
+			}
+			sb.append(this.district.getName());
+
+			RegionEntity village = null;
+			if(!this.towns.isEmpty() && random.nextInt(3)==0){
+				RegionEntity town = this.towns.get(random.nextInt(this.towns.size()));
+				sb.append(town.getName());
+				if(town.getType()==RegionType.Town && !this.villages.isEmpty() && random.nextBoolean())
+					village = this.villages.get(random.nextInt(this.villages.size()));
+			}else if(!this.villages.isEmpty() && random.nextInt(10)==0){
+				village = this.villages.get(random.nextInt(this.villages.size()));
+			}
+			if(village!=null){
+				sb.append(village.getName());
+				if(random.nextBoolean()){
+					sb.append(1 + random.nextInt(12)).append("组").append(1 + random.nextInt(80)).append("号");
+					return sb.toString();
+				}
+			}
+
+			if(random.nextInt(3)>0)
+				sb.append(this.roads[roadZipf.next(random)]).append(1 + random.nextInt(300)).append("号");
+			sb.append(this.communities[communityZipf.next(random)]);
+			if(random.nextInt(4)>0)
+				sb.append(1 + random.nextInt(30)).append("号楼").append(1 + random.nextInt(6)).append("单元").append(101 + random.nextInt(2500));
+			else
+				sb.append(1 + random.nextInt(30)).append("栋").append(101 + random.nextInt(900)).append("室");
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Zipf分布的随机数，返回0到n-1，0的概率最大。指数为0时为均匀分布。
+	 */
+	private static class Zipf {
+		private double[] cumulative;
+
+		Zipf(int n, double exponent){
+			this.cumulative = new double[n];
+			double sum = 0;
+			for(int k=0; k<n; k++){
+				sum += 1 / Math.pow(k + 1, exponent);
+				this.cumulative[k] = sum;
+			}
+		}
+
+		int next(Random random){
+			double value = random.nextDouble() * this.cumulative[this.cumulative.length - 1];
+			int pos = Arrays.binarySearch(this.cumulative, value);
+			return Math.min(pos>=0 ? pos : -pos - 1, this.cumulative.length - 1);
+		}
+	}
+}
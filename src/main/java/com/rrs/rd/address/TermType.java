@@ -67,11 +67,14 @@ public enum TermType {
 		return this.value;
 	}
 	
+	private static final TermType[] BY_VALUE = new TermType[128];
+	static {
+		for(TermType tt : EnumSet.allOf(TermType.class))
+			BY_VALUE[tt.getValue()] = tt;
+	}
+	
 	public static TermType toEnum(char val){
-		EnumSet<TermType> enums = EnumSet.allOf(TermType.class);
-		for(TermType tt : enums){
-			if(tt.getValue() == val) return tt;
-		}
+		if(val<BY_VALUE.length && BY_VALUE[val]!=null) return BY_VALUE[val];
 		return TermType.Undefined;
 	}
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.rrs.rd.address.demo;
 
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
@@ -19,4 +20,23 @@ public interface HttpDemoService {
 	@Produces({"text/html;charset=UTF-8"})
 	String find(@PathParam("addr") String addrText, @QueryParam("top") int topN);
 	
+	/**
+	 * 重新加载分区文件已经更新的分区。
+	 * @param key 分区cacheKey，为空时检查全部已缓存的分区。
+	 * @return
+	 */
+	@POST
+	@Path("reload")
+	@Produces({"text/plain;charset=UTF-8"})
+	String reload(@QueryParam("key") String key);
+	
+	/**
+	 * 运行指标：解析各阶段、分区加载、相似度计算的耗时分位数和计数，参考{@link com.rrs.rd.address.metrics.Metrics}。
+	 * @return
+	 */
+	@GET
+	@Path("metrics")
+	@Produces({"text/plain;charset=UTF-8"})
+	String metrics();
+	
 }
\ No newline at end of file
@@ -14,6 +14,7 @@ import org.apache.velocity.runtime.RuntimeConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.rrs.rd.address.metrics.Metrics;
 import com.rrs.rd.address.persist.AddressPersister;
 import com.rrs.rd.address.similarity.Document;
 import com.rrs.rd.address.similarity.Query;
@@ -73,6 +74,16 @@ public class HttpDemoServiceImpl implements HttpDemoService {
         }
 	}
 	
+	public String reload(String key){
+		if(key==null || key.trim().isEmpty())
+			return computer.reloadChangedPartitions() + " partitions reloaded.";
+		return computer.reloadPartition(key.trim()) ? key + " reloaded." : key + " not loaded.";
+	}
+	
+	public String metrics(){
+		return Metrics.report();
+	}
+	
 	private void findSimilarAddress(String addrText, Map<String, Object> model, int topN){
 		long startAt = System.currentTimeMillis();
 		Query q = computer.findSimilarAddress(addrText, topN, true);
@@ -0,0 +1,289 @@
+package com.rrs.rd.address.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import com.rrs.rd.address.TermType;
+import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionType;
+import com.rrs.rd.address.persist.RegionWatermark;
+
+/**
+ * 行政区域树和{@link TermIndexBuilder}索引树的本地快照文件，服务启动时直接从快照还原，不需要逐级查询数据库、重新建立索引。
+ *
+ * <p>
+ * <strong>文件格式（版本2）</strong>，整数均为big-endian：<br />
+ * 1. 文件头，16字节：magic(int) | version(int) | 数据长度(int) | 数据的CRC32(int)；<br />
+ * 2. 数据库水位：区域数量(long) | 最大区域ID(long) | 校验和(long)，参考{@link RegionWatermark}；<br />
+ * 3. 忽略列表：数量(int) | 文本 * 数量；<br />
+ * 4. 只加载的省份：数量(int) | 省份ID(long) * 数量，为0时加载全部省份；<br />
+ * 5. 区域树，先序遍历：区域数量(int)，每个区域：ID(long) | 上级ID(long) | 类型(int) | 名称 | 别名 | 邮编 | 下级数量(int)；<br />
+ * 6. 索引树，广度优先遍历，每个节点：下级数量(int) | 下级字符(char) * 下级数量 | 索引对象数量(int)
+ *    | 索引对象 * 数量，每个索引对象：类型(char, {@link TermType#getValue()}) | 区域ID(long，忽略列表为-1)。<br />
+ * 文本均为：UTF-8字节数(short) | UTF-8字节。
+ * </p>
+ *
+ * <p>写入时先写临时文件再替换，读取时校验magic、版本和CRC32，不一致时抛出{@link IllegalArgumentException}。</p>
+ */
+class RegionIndexSnapshot {
+	public static final int MAGIC = 0x52494458; //"RIDX"
+	public static final int VERSION = 2;
+	private static final int HEADER_SIZE = 16;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final RegionType[] REGION_TYPES = RegionType.values();
+
+	private RegionWatermark watermark;
+	private List<String> ignorings;
+	private Set<Long> provinces;
+	private RegionEntity root;
+	private TermIndexEntry indexRoot;
+
+	private RegionIndexSnapshot(){
+	}
+
+	/**
+	 * 读取快照文件。
+	 * @param file
+	 * @return 文件不存在时返回null。
+	 * @throws IOException 文件读取失败。
+	 * @throws IllegalArgumentException 文件格式、版本不正确，或者校验和不一致。
+	 */
+	public static RegionIndexSnapshot read(File file) throws IOException {
+		if(!file.exists()) return null;
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		if(buffer.capacity()<HEADER_SIZE || buffer.getInt(0)!=MAGIC)
+			throw new IllegalArgumentException("Not a region snapshot, invalid magic number");
+		int version = buffer.getInt(4);
+		if(version!=VERSION)
+			throw new IllegalArgumentException("Unsupported region snapshot version: " + version);
+		int length = buffer.getInt(8);
+		if(length<0 || HEADER_SIZE + length != buffer.capacity())
+			throw new IllegalArgumentException("Corrupted region snapshot, invalid length");
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), HEADER_SIZE, length);
+		if((int)crc.getValue()!=buffer.getInt(12))
+			throw new IllegalArgumentException("Corrupted region snapshot, checksum mismatch");
+
+		buffer.position(HEADER_SIZE);
+		RegionIndexSnapshot snapshot = new RegionIndexSnapshot();
+		snapshot.watermark = new RegionWatermark(buffer.getLong(), buffer.getLong(), buffer.getLong());
+		int n = buffer.getInt();
+		snapshot.ignorings = new ArrayList<String>(n);
+		for(int i=0; i<n; i++) snapshot.ignorings.add(readString(buffer));
+		n = buffer.getInt();
+		snapshot.provinces = new TreeSet<Long>();
+		for(int i=0; i<n; i++) snapshot.provinces.add(buffer.getLong());
+
+		n = buffer.getInt();
+		Map<Long, RegionEntity> regions = new HashMap<Long, RegionEntity>(n * 4 / 3 + 1);
+		snapshot.root = readRegion(buffer, regions);
+		if(regions.size()!=n)
+			throw new IllegalArgumentException("Corrupted region snapshot, region count mismatch");
+
+		snapshot.indexRoot = readIndex(buffer, regions);
+		return snapshot;
+	}
+
+	/**
+	 * 写入快照文件。
+	 * @param file
+	 * @param watermark 区域树加载之前统计的数据库水位。
+	 * @param ignorings 建立索引使用的忽略列表。
+	 * @param provinces 区域树只加载的省份，为空时加载全部省份。
+	 * @param root 中国国家区域对象。
+	 * @param indexRoot 索引树根节点。
+	 * @throws IOException
+	 */
+	public static void write(File file, RegionWatermark watermark, List<String> ignorings, Set<Long> provinces
+			, RegionEntity root, TermIndexEntry indexRoot) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeLong(watermark.getCount());
+		out.writeLong(watermark.getMaxId());
+		out.writeLong(watermark.getChecksum());
+		out.writeInt(ignorings==null ? 0 : ignorings.size());
+		if(ignorings!=null)
+			for(String str : ignorings) writeString(out, str);
+		out.writeInt(provinces==null ? 0 : provinces.size());
+		if(provinces!=null)
+			for(Long id : provinces) out.writeLong(id);
+		out.writeInt(countRegions(root));
+		writeRegion(out, root);
+		writeIndex(out, indexRoot);
+		out.flush();
+
+		byte[] body = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(body, 0, body.length);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).putInt(body.length).putInt((int)crc.getValue());
+
+		File temp = new File(file.getAbsolutePath() + ".tmp");
+		OutputStream fos = new FileOutputStream(temp);
+		try {
+			fos.write(header.array());
+			fos.write(body);
+		} finally {
+			fos.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * 快照生成时数据库的区域水位。
+	 * @return
+	 */
+	public RegionWatermark getWatermark(){
+		return this.watermark;
+	}
+	public List<String> getIgnorings(){
+		return this.ignorings;
+	}
+	/**
+	 * 快照中区域树只加载的省份，为空时为全部省份。
+	 * @return
+	 */
+	public Set<Long> getProvinces(){
+		return this.provinces;
+	}
+	/**
+	 * 中国国家区域对象，下级区域已建立树状结构。
+	 * @return
+	 */
+	public RegionEntity getRoot(){
+		return this.root;
+	}
+	/**
+	 * 索引树根节点，索引对象引用{@link #getRoot()}区域树中的区域对象。
+	 * @return
+	 */
+	public TermIndexEntry getIndexRoot(){
+		return this.indexRoot;
+	}
+
+	private static int countRegions(RegionEntity region){
+		int count = 1;
+		if(region.getChildren()!=null)
+			for(RegionEntity child : region.getChildren()) count += countRegions(child);
+		return count;
+	}
+
+	private static void writeRegion(DataOutputStream out, RegionEntity region) throws IOException {
+		out.writeLong(region.getId());
+		out.writeLong(region.getParentId());
+		out.writeInt(region.getType().toValue());
+		writeString(out, region.getName());
+		writeString(out, region.getAlias());
+		writeString(out, region.getZip());
+		List<RegionEntity> children = region.getChildren();
+		out.writeInt(children==null ? 0 : children.size());
+		if(children!=null)
+			for(RegionEntity child : children) writeRegion(out, child);
+	}
+
+	private static RegionEntity readRegion(ByteBuffer in, Map<Long, RegionEntity> regions){
+		RegionEntity region = new RegionEntity();
+		region.setId(in.getLong());
+		region.setParentId(in.getLong());
+		region.setType(toRegionType(in.getInt()));
+		region.setName(readString(in));
+		region.setAlias(readString(in));
+		region.setZip(readString(in));
+		regions.put(region.getId(), region);
+		int n = in.getInt();
+		if(n>0){
+			List<RegionEntity> children = new ArrayList<RegionEntity>(n);
+			for(int i=0; i<n; i++) children.add(readRegion(in, regions));
+			region.setChildren(children);
+		}
+		return region;
+	}
+
+	private static RegionType toRegionType(int value){
+		for(RegionType type : REGION_TYPES)
+			if(type.toValue()==value) return type;
+		throw new IllegalArgumentException("Corrupted region snapshot, invalid region type: " + value);
+	}
+
+	private static void writeIndex(DataOutputStream out, TermIndexEntry root) throws IOException {
+		List<TermIndexEntry> queue = new ArrayList<TermIndexEntry>();
+		queue.add(root);
+		for(int i=0; i<queue.size(); i++){
+			TermIndexEntry entry = queue.get(i);
+			char[] chars = entry.getChildChars();
+			out.writeInt(chars.length);
+			for(char c : chars) out.writeChar(c);
+			for(TermIndexEntry child : entry.getChildEntries()) queue.add(child);
+
+			List<TermIndexItem> items = entry.getItems();
+			out.writeInt(items==null ? 0 : items.size());
+			if(items==null) continue;
+			for(TermIndexItem item : items){
+				out.writeChar(item.getType().getValue());
+				if(item.getValue()==null) out.writeLong(-1);
+				else if(item.getValue() instanceof RegionEntity) out.writeLong(((RegionEntity)item.getValue()).getId());
+				else throw new IllegalStateException("Unsupported term index item: " + item.getValue().getClass().getName());
+			}
+		}
+	}
+
+	private static TermIndexEntry readIndex(ByteBuffer in, Map<Long, RegionEntity> regions){
+		TermIndexEntry root = new TermIndexEntry();
+		List<TermIndexEntry> queue = new ArrayList<TermIndexEntry>();
+		queue.add(root);
+		for(int i=0; i<queue.size(); i++){
+			TermIndexEntry entry = queue.get(i);
+			int n = in.getInt();
+			char[] chars = new char[n];
+			TermIndexEntry[] children = new TermIndexEntry[n];
+			for(int j=0; j<n; j++){
+				chars[j] = in.getChar();
+				children[j] = new TermIndexEntry(entry, chars[j]);
+				queue.add(children[j]);
+			}
+			entry.setChildren(chars, children);
+
+			n = in.getInt();
+			for(int j=0; j<n; j++){
+				TermType type = TermType.toEnum(in.getChar());
+				long id = in.getLong();
+				RegionEntity region = null;
+				if(id>=0){
+					region = regions.get(id);
+					if(region==null)
+						throw new IllegalArgumentException("Corrupted region snapshot, region " + id + " not found");
+				}
+				entry.addItem(new TermIndexItem(type, region));
+			}
+		}
+		return root;
+	}
+
+	private static void writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = (str==null ? "" : str).getBytes(UTF8);
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in){
+		int len = in.getShort() & 0xFFFF;
+		String str = new String(in.array(), in.position(), len, UTF8);
+		in.position(in.position() + len);
+		return str;
+	}
+}
@@ -0,0 +1,116 @@
+package com.rrs.rd.address.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 由{@link TermIndexBuilder}的索引树编译而成的Aho-Corasick自动机。
+ *
+ * <p>
+ * 状态与索引树的{@link TermIndexEntry}一一对应，按广度优先顺序编号，0为根节点。
+ * 每个状态的转移字符就是节点上已排序的下级字符数组，通过二分查找转移，不需要装箱Character。
+ * 失败指针指向当前前缀的最长后缀所在的状态，输出指针指向失败链上最近的一个包含索引对象的状态。
+ * </p>
+ *
+ * <p>{@link #match(String)}从左到右扫描一遍文本，即可找出文本中出现的全部索引词条。创建之后只读，可以在多个线程中共享。</p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+class TermIndexAutomaton {
+	private final char[][] labels;
+	private final int[][] targets;
+	private final int[] fail;
+	private final int[] output;
+	private final int[] depth;
+	private final TermIndexEntry[] entries;
+
+	TermIndexAutomaton(TermIndexEntry root){
+		//1. 广度优先遍历索引树，为节点编号，建立转移表。转移字符直接使用节点上已排序的字符数组
+		List<TermIndexEntry> nodes = new ArrayList<TermIndexEntry>();
+		nodes.add(root);
+		List<int[]> targetList = new ArrayList<int[]>();
+		for(int s=0; s<nodes.size(); s++){
+			TermIndexEntry[] children = nodes.get(s).getChildEntries();
+			if(children.length==0){
+				targetList.add(null);
+				continue;
+			}
+			int[] next = new int[children.length];
+			for(int i=0; i<children.length; i++){
+				next[i] = nodes.size();
+				nodes.add(children[i]);
+			}
+			targetList.add(next);
+		}
+
+		int size = nodes.size();
+		this.labels = new char[size][];
+		this.targets = targetList.toArray(new int[size][]);
+		this.fail = new int[size];
+		this.output = new int[size];
+		this.depth = new int[size];
+		this.entries = new TermIndexEntry[size];
+		for(int s=0; s<size; s++){
+			TermIndexEntry node = nodes.get(s);
+			if(this.targets[s]!=null) this.labels[s] = node.getChildChars();
+			this.depth[s] = node.getLength();
+			if(node.hasItem()) this.entries[s] = node;
+		}
+
+		//2. 按编号顺序（广度优先）计算失败指针和输出指针，父节点总是先于子节点完成计算
+		this.output[0] = -1;
+		for(int s=0; s<size; s++){
+			if(this.labels[s]==null) continue;
+			for(int i=0; i<this.labels[s].length; i++){
+				char c = this.labels[s][i];
+				int t = this.targets[s][i], f = 0;
+				if(s!=0){
+					f = this.fail[s];
+					while(f!=0 && this.next(f, c)<0) f = this.fail[f];
+					f = Math.max(this.next(f, c), 0);
+				}
+				this.fail[t] = f;
+				this.output[t] = this.entries[f]!=null ? f : this.output[f];
+			}
+		}
+	}
+
+	/**
+	 * 扫描文本，找出其中出现的全部索引词条。
+	 * @param text
+	 * @return
+	 */
+	TermIndexMatches match(String text){
+		TermIndexMatches matches = new TermIndexMatches(text);
+		int s = 0;
+		for(int end=0; end<text.length(); end++){
+			char c = text.charAt(end);
+			int t = this.next(s, c);
+			while(t<0 && s!=0){
+				s = this.fail[s];
+				t = this.next(s, c);
+			}
+			s = Math.max(t, 0);
+			//当前状态及其输出链上的状态，对应以end结尾、长度依次递减的词条
+			for(int o = this.entries[s]!=null ? s : this.output[s]; o>0; o=this.output[o])
+				matches.add(end - this.depth[o] + 1, end, this.entries[o]);
+		}
+		return matches;
+	}
+
+	/**
+	 * 状态数量。
+	 * @return
+	 */
+	int size(){
+		return this.fail.length;
+	}
+
+	private int next(int state, char c){
+		char[] chars = this.labels[state];
+		if(chars==null) return -1;
+		int i = Arrays.binarySearch(chars, c);
+		return i<0 ? -1 : this.targets[state][i];
+	}
+}
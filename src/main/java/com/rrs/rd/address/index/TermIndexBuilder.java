@@ -1,11 +1,16 @@
 package com.rrs.rd.address.index;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.rrs.rd.address.TermType;
 import com.rrs.rd.address.persist.AddressPersister;
 import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionWatermark;
 import com.rrs.rd.address.utils.StringUtil;
 
 /**
@@ -14,11 +19,98 @@ import com.rrs.rd.address.utils.StringUtil;
  * 2016年10月17日
  */
 public class TermIndexBuilder {
+	private final static Logger LOG = LoggerFactory.getLogger(TermIndexBuilder.class);
+	
 	private TermIndexEntry indexRoot = new TermIndexEntry();
+	/**
+	 * 由索引树编译的Aho-Corasick自动机，索引发生变化时置空，下次查询时重新编译。
+	 */
+	private volatile TermIndexAutomaton automaton = null;
 
 	public TermIndexBuilder(AddressPersister persister, List<String> ingoringRegionNames){
-		this.indexRegions(persister.rootRegion().getChildren());
-		this.indexIgnorings(ingoringRegionNames);
+		this(persister, ingoringRegionNames, null);
+	}
+	
+	/**
+	 * 使用本地快照文件加速启动，参考{@link RegionIndexSnapshot}。
+	 * <p>
+	 * 快照文件有效，并且数据库中的区域水位与快照一致（或者无法连接数据库）时，直接从快照还原区域树和索引树；
+	 * 快照不存在、已损坏或者已过期时，从数据库加载区域、建立索引，然后重新写入快照文件。
+	 * </p>
+	 * @param persister
+	 * @param ingoringRegionNames
+	 * @param snapshotPath 快照文件路径，为空时不使用快照。
+	 */
+	public TermIndexBuilder(AddressPersister persister, List<String> ingoringRegionNames, String snapshotPath){
+		File snapshotFile = snapshotPath==null || snapshotPath.trim().isEmpty() ? null : new File(snapshotPath.trim());
+		RegionWatermark watermark = snapshotFile==null ? null : watermark(persister);
+		if(snapshotFile==null || !this.restore(snapshotFile, persister, watermark, ingoringRegionNames)){
+			this.indexRegions(persister.rootRegion().getChildren());
+			this.indexIgnorings(ingoringRegionNames);
+			if(snapshotFile!=null && watermark!=null) 
+				this.writeSnapshot(snapshotFile, persister, watermark, ingoringRegionNames);
+		}
+		this.automaton();
+	}
+	
+	private static RegionWatermark watermark(AddressPersister persister){
+		try{
+			return persister.regionWatermark();
+		}catch(Exception ex){
+			LOG.warn("[addr] [snapshot] Can't read region watermark from database: " + ex.getMessage());
+			return null;
+		}
+	}
+	
+	private boolean restore(File file, AddressPersister persister, RegionWatermark watermark, List<String> ignorings){
+		long start = System.currentTimeMillis();
+		if(persister.isRegionLoaded()) return false; //区域已从数据库加载，快照中的区域对象不能再使用
+		RegionIndexSnapshot snapshot = null;
+		try{
+			snapshot = RegionIndexSnapshot.read(file);
+		}catch(Exception ex){
+			LOG.warn("[addr] [snapshot] Invalid snapshot " + file.getPath() + ", load regions from database: " + ex.getMessage());
+			return false;
+		}
+		if(snapshot==null) return false;
+		if(watermark!=null && !watermark.equals(snapshot.getWatermark())){
+			if(LOG.isInfoEnabled())
+				LOG.info("[addr] [snapshot] Snapshot is stale, " + snapshot.getWatermark() + " in snapshot, " + watermark + " in database");
+			return false;
+		}
+		if(!persister.getRegionProvinces().equals(snapshot.getProvinces())){
+			if(LOG.isInfoEnabled())
+				LOG.info("[addr] [snapshot] Snapshot is stale, provinces " + snapshot.getProvinces() + " in snapshot, " 
+					+ persister.getRegionProvinces() + " configured");
+			return false;
+		}
+		if(!persister.initRegions(snapshot.getRoot())) return false;
+		
+		List<String> current = ignorings==null ? new ArrayList<String>(0) : ignorings;
+		if(current.equals(snapshot.getIgnorings())) {
+			this.indexRoot = snapshot.getIndexRoot();
+		} else { //忽略列表已修改，区域仍然可以使用，重新建立索引，并按新的忽略列表重新写入快照
+			this.indexRegions(snapshot.getRoot().getChildren());
+			this.indexIgnorings(ignorings);
+			if(watermark!=null) this.writeSnapshot(file, persister, watermark, ignorings);
+		}
+		this.automaton = null;
+		
+		if(LOG.isInfoEnabled())
+			LOG.info("[addr] [snapshot] Regions and term index restored from " + file.getPath() + (watermark==null ? " without database check" : "") 
+				+ ", elapsed " + (System.currentTimeMillis() - start)/1000.0 + "s");
+		return true;
+	}
+	
+	private void writeSnapshot(File file, AddressPersister persister, RegionWatermark watermark, List<String> ignorings){
+		try{
+			if(file.getParentFile()!=null) file.getParentFile().mkdirs();
+			RegionIndexSnapshot.write(file, watermark, ignorings, persister.getRegionProvinces(), persister.rootRegion(), this.indexRoot);
+			if(LOG.isInfoEnabled())
+				LOG.info("[addr] [snapshot] Snapshot written to " + file.getPath() + ", " + watermark);
+		}catch(Exception ex){
+			LOG.error("[addr] [snapshot] Error in writing snapshot " + file.getPath() + ": " + ex.getMessage(), ex);
+		}
 	}
 	
 	/**
@@ -28,6 +120,7 @@ public class TermIndexBuilder {
 	 */
 	public TermIndexBuilder indexRegions(List<RegionEntity> regions){
 		this.indexRegions(regions, indexRoot);
+		this.automaton = null;
 		return this;
 	}
 	private void indexRegions(List<RegionEntity> regions, TermIndexEntry index){
@@ -81,6 +174,7 @@ public class TermIndexBuilder {
 		if(ignoreList==null || ignoreList.isEmpty()) return this;
 		for(String str : ignoreList)
 			this.indexRoot.buildIndex(str, 0, new TermIndexItem(TermType.Ignore, null));
+		this.automaton = null;
 		return this;
 	}
 	private TermType convertRegionType(RegionEntity region){
@@ -109,37 +203,53 @@ public class TermIndexBuilder {
 		this.deepMostQuery(text, 0, visitor);
 	}
 	public void deepMostQuery(String text, int pos, TermIndexVisitor visitor){
+		this.deepMostQuery(this.match(text), pos, visitor);
+	}
+	/**
+	 * 使用{@link #match(String)}得到的词条进行深度优先匹配，访问顺序与逐字符遍历索引树相同。
+	 * <p>对同一文本从多个位置开始匹配时，只需要扫描一次文本，参考{@link TermIndexVisitor}。</p>
+	 * @param matches 文本中出现的全部词条。
+	 * @param pos 开始匹配的位置。
+	 * @param visitor
+	 */
+	public void deepMostQuery(TermIndexMatches matches, int pos, TermIndexVisitor visitor){
 		visitor.startRound();
-		deepFirstQueryRound(text, pos, indexRoot.getChildren(), visitor);
+		String text = matches.getText();
+		for(int i=matches.first(pos); i>=0; i=matches.next(i)){
+			TermIndexEntry entry = matches.entry(i);
+			if(visitor.visit(entry, text, matches.end(i))) {
+				int end = visitor.positionAfterAcceptItem(); //给访问者一个调整当前指针的机会
+				if(end+1 <= text.length()-1) 
+					deepMostQuery(matches, end + 1, visitor);
+				visitor.endVisit(entry, text, end);
+			}
+		}
 		visitor.endRound();
 	}
-	private void deepFirstQueryRound(String text, int pos, Map<Character, TermIndexEntry> entries, TermIndexVisitor visitor){
-		char c = text.charAt(pos);
-		TermIndexEntry entry = entries.get(c);
-		if(entry==null) return;
-		
-		if(entry.getChildren()!=null && pos+1 <= text.length()-1)
-			deepFirstQueryRound(text, pos + 1, entry.getChildren(), visitor);
-		if(entry.hasItem()) {
-			if(visitor.visit(entry, text, pos)) {
-				pos = visitor.positionAfterAcceptItem(); //给访问者一个调整当前指针的机会
-				if(pos+1 <= text.length()-1) 
-					deepMostQuery(text, pos + 1, visitor);
-				visitor.endVisit(entry, text, pos);
-			}
+	
+	/**
+	 * 扫描一遍文本，找出其中出现的全部索引词条。
+	 * @param text
+	 * @return
+	 */
+	public TermIndexMatches match(String text){
+		return this.automaton().match(text==null ? "" : text);
+	}
+	
+	private TermIndexAutomaton automaton(){
+		TermIndexAutomaton result = this.automaton;
+		if(result!=null) return result;
+		synchronized (this) {
+			if(this.automaton==null) this.automaton = new TermIndexAutomaton(indexRoot);
+			return this.automaton;
 		}
 	}
 	
 	public List<TermIndexItem> fullMatch(String text) {
 		if(text==null || text.isEmpty()) return null;
-		return fullMatch(text, 0, indexRoot.getChildren());
-	}
-	private List<TermIndexItem> fullMatch(String text, int pos, Map<Character, TermIndexEntry> entries){
-		if(entries==null) return null;
-		char c = text.charAt(pos);
-		TermIndexEntry entry = entries.get(c);
-		if(entry==null) return null;
-		if(pos==text.length()-1) return entry.getItems();
-		return fullMatch(text, pos+1, entry.getChildren());
+		TermIndexEntry entry = indexRoot;
+		for(int i=0; i<text.length() && entry!=null; i++)
+			entry = entry.getChild(text.charAt(i));
+		return entry==null ? null : entry.getItems();
 	}
 }
\ No newline at end of file
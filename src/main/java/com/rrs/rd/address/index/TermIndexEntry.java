@@ -1,48 +1,90 @@
 package com.rrs.rd.address.index;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import com.rrs.rd.address.TermType;
-import com.rrs.rd.address.utils.StringUtil;
 
 /**
  * 索引条目。
+ * <p>
+ * 紧凑的索引树节点：下级节点的字符排序后存放在char[]中，下级节点存放在相同下标的数组中，按二分查找定位，
+ * 不使用Map，避免Character装箱；节点只记录所在深度（即词条长度），词条文本通过上级节点回溯得到，
+ * 不在每个节点上保存前缀字符串。
+ * </p>
  * @author Richie 刘志斌 yudi@sina.com
  * 2016年10月16日
  */
 public class TermIndexEntry {
-	private String key;
+	private static final char[] NO_CHARS = new char[0];
+	private static final TermIndexEntry[] NO_ENTRIES = new TermIndexEntry[0];
+
+	private final TermIndexEntry parent;
+	private final char label;
+	private final int depth;
 	private List<TermIndexItem> items;
-	private Map<Character, TermIndexEntry> children;
-	
+	private char[] childChars = NO_CHARS;
+	private TermIndexEntry[] childEntries = NO_ENTRIES;
+
+	public TermIndexEntry(){
+		this(null, '\0');
+	}
+	TermIndexEntry(TermIndexEntry parent, char label){
+		this.parent = parent;
+		this.label = label;
+		this.depth = parent==null ? 0 : parent.depth + 1;
+	}
+
 	public void buildIndex(String text, int pos, TermIndexItem item){
 		if(text==null || text.isEmpty() || pos<0 || pos>=text.length()) return;
-		
-		char c = text.charAt(pos);
-		if(this.children==null) this.children = new HashMap<Character, TermIndexEntry>(1);
-		
-		TermIndexEntry entry = this.children.get(c);
-		if(entry==null) {
-			entry = new TermIndexEntry();
-			entry.key = StringUtil.head(text, pos + 1);
-			this.children.put(c, entry);
-		}
-		
-		if(pos==text.length()-1) {
-			entry.addItem(item);
-			return;
-		}
-		
-		entry.buildIndex(text, pos + 1, item);
+
+		TermIndexEntry entry = this;
+		for(int i=pos; i<text.length(); i++)
+			entry = entry.getOrAddChild(text.charAt(i));
+		entry.addItem(item);
 	}
-	
+
+	private TermIndexEntry getOrAddChild(char c){
+		int i = Arrays.binarySearch(this.childChars, c);
+		if(i>=0) return this.childEntries[i];
+
+		//插入到排序位置，每次按实际数量重新分配数组，建立索引之后不再变化
+		i = -i - 1;
+		int n = this.childChars.length;
+		char[] chars = new char[n + 1];
+		TermIndexEntry[] entries = new TermIndexEntry[n + 1];
+		System.arraycopy(this.childChars, 0, chars, 0, i);
+		System.arraycopy(this.childEntries, 0, entries, 0, i);
+		System.arraycopy(this.childChars, i, chars, i + 1, n - i);
+		System.arraycopy(this.childEntries, i, entries, i + 1, n - i);
+		TermIndexEntry entry = new TermIndexEntry(this, c);
+		chars[i] = c;
+		entries[i] = entry;
+		this.childChars = chars;
+		this.childEntries = entries;
+		return entry;
+	}
+
+	/**
+	 * 索引词条文本，由当前节点回溯到根节点得到，仅用于调试输出等场合，词条长度使用{@link #getLength()}。
+	 * @return
+	 */
 	public String getKey(){
-		return this.key;
+		char[] chars = new char[this.depth];
+		for(TermIndexEntry entry = this; entry.parent!=null; entry = entry.parent)
+			chars[entry.depth - 1] = entry.label;
+		return new String(chars);
 	}
-	
+
+	/**
+	 * 索引词条的长度，即节点在索引树中的深度。
+	 * @return
+	 */
+	public int getLength(){
+		return this.depth;
+	}
+
 	public boolean hasItem(){
 		return this.items != null && !this.items.isEmpty();
 	}
@@ -57,13 +99,37 @@ public class TermIndexEntry {
 	public TermIndexEntry addItem(TermType type, Object value){
 		return this.addItem(new TermIndexItem(type, value));
 	}
-	
-	public Map<Character, TermIndexEntry> getChildren(){
-		return this.children;
+
+	/**
+	 * 获取字符c对应的下级节点。
+	 * @param c
+	 * @return 不存在时返回null。
+	 */
+	public TermIndexEntry getChild(char c){
+		int i = Arrays.binarySearch(this.childChars, c);
+		return i<0 ? null : this.childEntries[i];
 	}
-	
+
+	/**
+	 * 下级节点的字符，已排序，与{@link #getChildEntries()}下标对应。返回内部数组，不能修改。
+	 * @return
+	 */
+	char[] getChildChars(){
+		return this.childChars;
+	}
+	TermIndexEntry[] getChildEntries(){
+		return this.childEntries;
+	}
+	/**
+	 * 直接设置下级节点，用于从快照还原索引树，chars必须已排序。
+	 */
+	void setChildren(char[] chars, TermIndexEntry[] entries){
+		this.childChars = chars.length==0 ? NO_CHARS : chars;
+		this.childEntries = entries.length==0 ? NO_ENTRIES : entries;
+	}
+
 	@Override
 	public String toString() {
-		return this.key;
+		return this.getKey();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,111 @@
+package com.rrs.rd.address.index;
+
+import java.util.Arrays;
+
+import com.rrs.rd.address.utils.StringUtil;
+
+/**
+ * 一段文本中出现的全部索引词条，由{@link TermIndexBuilder#match(String)}一次扫描得到。
+ *
+ * <p>
+ * 按词条在文本中的起始位置分组，同一起始位置的词条按长度从长到短排列，
+ * 与逐字符遍历索引树时最大长度优先的访问顺序一致，参考{@link TermIndexVisitor}。
+ * </p>
+ * 
+ * <p>
+ * 删除文本开头的部分之后，剩余文本中的词条就是原文本中起始位置不小于删除长度的词条，
+ * 使用{@link #suffix(int)}得到剩余文本的词条，不需要重新扫描。
+ * </p>
+ *
+ * @author Richie 刘志斌 yudi@sina.com
+ */
+public class TermIndexMatches {
+	private final String text;
+	/**
+	 * 每个起始位置的第一个词条在数组中的下标，没有词条时为-1。
+	 */
+	private final int[] first;
+	/**
+	 * 当前文本在原始扫描文本中的起始位置，参考{@link #suffix(int)}。
+	 */
+	private final int offset;
+	private int[] next;
+	private int[] ends;
+	private TermIndexEntry[] entries;
+	private int size = 0;
+
+	TermIndexMatches(String text){
+		this.text = text;
+		this.offset = 0;
+		this.first = new int[text.length()];
+		Arrays.fill(this.first, -1);
+		int capacity = Math.max(4, text.length());
+		this.next = new int[capacity];
+		this.ends = new int[capacity];
+		this.entries = new TermIndexEntry[capacity];
+	}
+
+	private TermIndexMatches(TermIndexMatches source, int offset){
+		this.text = StringUtil.substring(source.text, offset);
+		this.offset = source.offset + offset;
+		this.first = source.first;
+		this.next = source.next;
+		this.ends = source.ends;
+		this.entries = source.entries;
+		this.size = source.size;
+	}
+
+	/**
+	 * 添加一个词条。同一起始位置后添加的词条排在前面，调用方按结束位置从小到大添加，
+	 * 因此同一起始位置的词条从长到短排列。
+	 */
+	void add(int start, int end, TermIndexEntry entry){
+		if(this.size==this.entries.length){
+			int capacity = this.size * 2;
+			this.next = Arrays.copyOf(this.next, capacity);
+			this.ends = Arrays.copyOf(this.ends, capacity);
+			this.entries = Arrays.copyOf(this.entries, capacity);
+		}
+		this.next[this.size] = this.first[start];
+		this.ends[this.size] = end;
+		this.entries[this.size] = entry;
+		this.first[start] = this.size++;
+	}
+
+	public String getText(){
+		return this.text;
+	}
+
+	/**
+	 * 删除文本开头offset个字符之后，剩余文本中的词条，与原对象共享数据。
+	 * @param offset 删除的字符数，与{@link StringUtil#substring(String, int)}的beginIndex一致。
+	 * @return
+	 */
+	public TermIndexMatches suffix(int offset){
+		if(offset<=0) return this;
+		return new TermIndexMatches(this, offset);
+	}
+
+	/**
+	 * 是否存在从start位置开始的词条。
+	 * @param start
+	 * @return
+	 */
+	public boolean hasMatch(int start){
+		return this.first(start)>=0;
+	}
+
+	int first(int start){
+		if(start<0 || start>=this.text.length()) return -1;
+		return this.first[start + this.offset];
+	}
+	int next(int i){
+		return this.next[i];
+	}
+	int end(int i){
+		return this.ends[i] - this.offset;
+	}
+	TermIndexEntry entry(int i){
+		return this.entries[i];
+	}
+}
@@ -5,6 +5,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -14,6 +22,9 @@ import org.slf4j.LoggerFactory;
 import com.rrs.rd.address.TermType;
 import com.rrs.rd.address.index.TermIndexBuilder;
 import com.rrs.rd.address.index.TermIndexItem;
+import com.rrs.rd.address.index.TermIndexMatches;
+import com.rrs.rd.address.metrics.LatencyHistogram;
+import com.rrs.rd.address.metrics.Metrics;
 import com.rrs.rd.address.persist.AddressEntity;
 import com.rrs.rd.address.persist.AddressPersister;
 import com.rrs.rd.address.persist.RegionEntity;
@@ -28,8 +39,27 @@ public class AddressInterpreter {
 	private final static Logger LOG = LoggerFactory.getLogger(AddressInterpreter.class);
 	private final static Logger TOWM_LOG = LoggerFactory.getLogger("com.rrs.rd.address.ExtractTown");
 	
+	/**
+	 * 解析各阶段的耗时，参考{@link Metrics}。
+	 */
+	private final static LatencyHistogram TIME_INTERPRET = Metrics.histogram("interpret");
+	private final static LatencyHistogram TIME_BUILD = Metrics.histogram("interpret.building");
+	private final static LatencyHistogram TIME_SPECIAL_CHARS = Metrics.histogram("interpret.specialChars");
+	private final static LatencyHistogram TIME_BRACKETS = Metrics.histogram("interpret.brackets");
+	private final static LatencyHistogram TIME_REGION = Metrics.histogram("interpret.region");
+	private final static LatencyHistogram TIME_REDUNDANCY = Metrics.histogram("interpret.redundancy");
+	private final static LatencyHistogram TIME_ROAD = Metrics.histogram("interpret.road");
+	private final static LatencyHistogram TIME_TOWN = Metrics.histogram("interpret.townVillage");
+	private final static AtomicLong FAILED = Metrics.counter("interpret.failed");
+	
 	private TermIndexBuilder termIndex = null;
 	private AddressPersister persister;
+	/**
+	 * 每个线程复用一个{@link RegionInterpreterVisitor}，{@link #interpret(String)}不再每次创建访问者。
+	 */
+	private volatile ThreadLocal<RegionInterpreterVisitor> visitors = newVisitors();
+	private int batchThreads = 1;
+	private ExecutorService batchPool = null;
 	
 	private static char[] specialChars1 = " \r\n\t,，。·.．;；:：、！@$%*^`~=+&'\"|_-\\/".toCharArray();
 	//private static char[] specialChars2 = "{}【】〈〉<>[]「」“”".toCharArray();
@@ -172,9 +202,6 @@ public class AddressInterpreter {
 	//***************************************************************************************
 	// AddressService对外提供的服务接口
 	//***************************************************************************************
-	public long timeDb=0, timeCache=0, timeInter=0, timeRegion=0, timeRmRed=0
-			, timeTown=0, timeRoad=0, timeBuild=0, timeRmSpec=0, timeBrc=0;
-	
 	/**
 	 * 批量导入地址到地址库中。
 	 * <p>
@@ -195,36 +222,111 @@ public class AddressInterpreter {
 	public List<AddressEntity> interpret(List<String> addrTextList, RegionInterpreterVisitor visitor) throws IllegalStateException, RuntimeException {
 		if(addrTextList==null) return null;
 		long start = System.currentTimeMillis();
-		int numSuccess=0, numFail=0;
-		List<AddressEntity> addresses = new ArrayList<AddressEntity>(addrTextList.size());
-		for(String addrText : addrTextList){
+		AddressEntity[] results = new AddressEntity[addrTextList.size()];
+		int numFail = interpret(addrTextList, 0, results.length, results, visitor);
+		return collect(results, numFail, start);
+	}
+	
+	/**
+	 * 批量解析地址，参考{@link #interpret(List, RegionInterpreterVisitor)}。
+	 * <p>
+	 * {@link #setBatchParallelism(int) batchParallelism}大于1时，将地址列表拆分成多个区块在线程池中并行解析，
+	 * 每个工作线程使用自己的{@link RegionInterpreterVisitor}；返回结果仍然保持地址列表中的先后顺序，
+	 * 解析失败的地址与串行解析一样逐条记录日志并跳过。
+	 * </p>
+	 * @param addrTextList 详细地址列表
+	 * @return 解析成功的地址，顺序与addrTextList一致。
+	 * @throws IllegalStateException
+	 * @throws RuntimeException
+	 */
+	public List<AddressEntity> interpret(final List<String> addrTextList) throws IllegalStateException, RuntimeException {
+		if(addrTextList==null) return null;
+		ExecutorService pool = this.getBatchPool();
+		if(pool==null || addrTextList.size()<2) return interpret(addrTextList, visitor());
+		
+		long start = System.currentTimeMillis();
+		final AddressEntity[] results = new AddressEntity[addrTextList.size()];
+		int chunkSize = Math.max(1, results.length / (this.batchThreads * 4));
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for(int from=0; from<results.length; from+=chunkSize){
+			final int begin = from, end = Math.min(results.length, from + chunkSize);
+			futures.add(pool.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					return interpret(addrTextList, begin, end, results, visitor());
+				}
+			}));
+		}
+		//各区块的失败数量在当前线程中汇总，各阶段耗时由LatencyHistogram无锁累计
+		int numFail = 0;
+		for(Future<Integer> future : futures){
+			try {
+				numFail += future.get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while interpreting addresses", ex);
+			} catch (ExecutionException ex) {
+				throw new RuntimeException("Error in interpreting addresses", ex.getCause());
+			}
+		}
+		return collect(results, numFail, start);
+	}
+	
+	/**
+	 * 解析addrTextList中[from, to)区间的地址，结果放入results相同下标位置，解析失败的位置为null。
+	 * @return 解析失败的地址数量。
+	 */
+	private int interpret(List<String> addrTextList, int from, int to, AddressEntity[] results, RegionInterpreterVisitor visitor){
+		int numFail = 0;
+		for(int i=from; i<to; i++){
+			String addrText = addrTextList.get(i);
 			try{
 				if(addrText==null || addrText.trim().isEmpty()) continue;
 				AddressEntity address = interpret(addrText, visitor);
 				if(address==null || !address.hasCity() || !address.hasDistrict()) {
 					numFail++;
+					FAILED.incrementAndGet();
 					LOG.error("[addr-inter] [fail] " + addrText + " > " 
 							+ (address==null ? "null" : address.toString()));
 					continue;
 				}
-				numSuccess++;
-				addresses.add(address);
+				results[i] = address;
 			}catch(Exception ex){
 				LOG.error("[addr-imp] [error] " + addrText + ": " + ex.getMessage(), ex);
 			}
 		}
-		timeInter += System.currentTimeMillis() - start;
+		return numFail;
+	}
+	
+	private List<AddressEntity> collect(AddressEntity[] results, int numFail, long start){
+		List<AddressEntity> addresses = new ArrayList<AddressEntity>(results.length);
+		for(AddressEntity address : results)
+			if(address!=null) addresses.add(address);
 		
 		if(LOG.isInfoEnabled()){
-			LOG.info("[addr-inter] [perf] " + numSuccess + " success, " + numFail + " failed. "
-				+ "tot=" + timeInter/1000.0 + ": rms=" + timeRmSpec/1000.0 + ", rmr=" + timeRmRed/1000.0
-				+ ", brc=" + timeBrc/1000.0 + ", reg=" + timeRegion/1000.0 + ", tow=" + timeTown/1000.0
-				+ ", rod=" + timeRoad/1000.0 + ", bud=" + timeBuild/1000.0);
+			LOG.info("[addr-inter] [perf] " + addresses.size() + " success, " + numFail + " failed, elapsed " 
+				+ (System.currentTimeMillis() - start)/1000.0 + "s. " + TIME_INTERPRET.getName() + ": " + TIME_INTERPRET.snapshot());
 		}
 		
 		return addresses;
 	}
 	
+	private synchronized ExecutorService getBatchPool(){
+		if(batchThreads<=1) return null;
+		if(batchPool==null){
+			final AtomicInteger seq = new AtomicInteger();
+			batchPool = Executors.newFixedThreadPool(batchThreads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "addr-interpret-" + seq.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return batchPool;
+	}
+	
 	/**
 	 * 将文本形式的地址解析成{@link AddressEntity}对象。
 	 * 
@@ -246,8 +348,25 @@ public class AddressInterpreter {
 	 * @return 解析成功返回{@link AddressEntity}，解析失败返回null。
 	 */
 	public AddressEntity interpret(String addressText){
-		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor(persister);
-		return interpret(addressText, visitor);
+		return interpret(addressText, visitor());
+	}
+	
+	/**
+	 * 获取当前线程复用的{@link RegionInterpreterVisitor}，使用前由匹配方法自行复位。
+	 * <p>只能在当前线程中使用，不能传递给其他线程。</p>
+	 * @return
+	 */
+	public RegionInterpreterVisitor visitor(){
+		return visitors.get();
+	}
+	
+	private ThreadLocal<RegionInterpreterVisitor> newVisitors(){
+		return new ThreadLocal<RegionInterpreterVisitor>() {
+			@Override
+			protected RegionInterpreterVisitor initialValue() {
+				return new RegionInterpreterVisitor(persister);
+			}
+		};
 	}
 
 	//***************************************************************************************
@@ -256,45 +375,49 @@ public class AddressInterpreter {
 	private AddressEntity interpret(String addressText, RegionInterpreterVisitor visitor){
 		if(addressText==null || addressText.trim().length()<=0) return null;
 		
-		long start = 0;
+		long begin = System.nanoTime(), start = begin;
 		
 		AddressEntity addr = new AddressEntity(addressText);
 		
-		start = System.currentTimeMillis();
 		extractBuildingNum(addr);
-		timeBuild += System.currentTimeMillis() - start;
+		start = TIME_BUILD.recordSince(start);
 		
-		start = System.currentTimeMillis();
 		removeSpecialChars(addr);
-		timeRmSpec += System.currentTimeMillis() - start;
+		start = TIME_SPECIAL_CHARS.recordSince(start);
 		
-		start = System.currentTimeMillis();
 		String brackets = extractBrackets(addr);
-		timeBrc += System.currentTimeMillis() - start;
+		start = TIME_BRACKETS.recordSince(start);
 		
-		start = System.currentTimeMillis();
-		extractRegion(addr, visitor);
-		timeRegion += System.currentTimeMillis() - start;
+		//省市区匹配和删除冗余的省市区共用一次扫描得到的词条
+		TermIndexMatches matches = extractRegion(addr, termIndex.match(addr.getText()), visitor);
+		start = TIME_REGION.recordSince(start);
 		
-		start = System.currentTimeMillis();
-		removeRedundancy(addr, visitor);
-		timeRmRed += System.currentTimeMillis() - start;
+		removeRedundancy(addr, matches, visitor);
+		start = TIME_REDUNDANCY.recordSince(start);
 		
-		start = System.currentTimeMillis();
 		extractRoad(addr);
-		timeRoad += System.currentTimeMillis() - start;
+		TIME_ROAD.recordSince(start);
 		
 		addr.setText(addr.getText().replaceAll("[0-9A-Za-z\\#]+(单元|楼|室|层|米|户|\\#)", ""));
 		addr.setText(addr.getText().replaceAll("[一二三四五六七八九十]+(单元|楼|室|层|米|户)", ""));
 		if(brackets!=null && brackets.length()>0)
 			addr.setText(addr.getText()+brackets);
 		
+		TIME_INTERPRET.recordSince(begin);
 		return addr;
 	}
 	
 	public boolean extractRegion(AddressEntity addr, RegionInterpreterVisitor visitor){
+		extractRegion(addr, termIndex.match(addr.getText()), visitor);
+		return visitor.hasResult();
+	}
+	/**
+	 * 使用地址文本的词条匹配省市区。
+	 * @return 删除已匹配的省市区之后，剩余文本的词条。
+	 */
+	private TermIndexMatches extractRegion(AddressEntity addr, TermIndexMatches matches, RegionInterpreterVisitor visitor){
 		visitor.reset();
-		termIndex.deepMostQuery(addr.getText(), visitor);
+		termIndex.deepMostQuery(matches, 0, visitor);
 		addr.setProvince(visitor.resultDivision().getProvince());
 		addr.setCity(visitor.resultDivision().getCity());
 		addr.setDistrict(visitor.resultDivision().getDistrict());
@@ -302,8 +425,7 @@ public class AddressInterpreter {
 		addr.setTown(visitor.resultDivision().getTown());
 		addr.setVillage(visitor.resultDivision().getVillage());
 		addr.setText(StringUtil.substring(addr.getText(), visitor.resultEndPosition() + 1));
-		if(!visitor.hasResult()) return false;
-		return true;
+		return matches.suffix(visitor.resultEndPosition() + 1);
 	}
 	
 	public boolean removeSpecialChars(AddressEntity addr){
@@ -341,13 +463,22 @@ public class AddressInterpreter {
 	
 	public boolean removeRedundancy(AddressEntity addr, RegionInterpreterVisitor visitor) {
 		if(addr.getText().length()<=0 || !addr.hasProvince() || !addr.hasCity()) return false;
+		return removeRedundancy(addr, termIndex.match(addr.getText()), visitor);
+	}
+	private boolean removeRedundancy(AddressEntity addr, TermIndexMatches matches, RegionInterpreterVisitor visitor) {
+		if(addr.getText().length()<=0 || !addr.hasProvince() || !addr.hasCity()) return false;
 		
 		boolean removed = false;
 		//采用后序数组方式匹配省市区
+		//词条来自一次文本扫描，各个位置开始的匹配直接使用扫描结果，删除匹配部分之后使用剩余文本的词条
 		int endIndex = addr.getText().length()-2;
 		for(int i=0; i<endIndex; ){
+			if(!matches.hasMatch(i)){ //该位置没有任何词条
+				i++;
+				continue;
+			}
 			visitor.reset();
-			termIndex.deepMostQuery(addr.getText(), i, visitor);
+			termIndex.deepMostQuery(matches, i, visitor);
 			if(visitor.resultMatchCount()<2 && visitor.resultFullMatchCount()<1) { 
 				//没有匹配上，或者匹配上的行政区域个数少于2个认当做无效匹配
 				i++;
@@ -381,6 +512,7 @@ public class AddressInterpreter {
 			//正确匹配上，删除
 			addr.setText(StringUtil.substring(addr.getText(), visitor.resultEndPosition()+1));
 			endIndex=addr.getText().length();
+			matches = matches.suffix(visitor.resultEndPosition()+1);
 			i=0;
 			removed = true;
 		}
@@ -417,16 +549,18 @@ public class AddressInterpreter {
 		AddressEntity addr = new AddressEntity(addressText);
 		removeSpecialChars(addr);
 		extractBrackets(addr);
-		extractRegion(addr, visitor);
-		removeRedundancy(addr, visitor);
+		removeRedundancy(addr, extractRegion(addr, termIndex.match(addr.getText()), visitor), visitor);
 		extractTownVillage(addr, towns);
 	}
 	public void extractTownVillage(AddressEntity addr, Map<Long, List<String>> towns){
-		if( extractTownVillage(addr, towns, P_TOWN1, "z", null, "c") >=0 ) return;
-		if(addr.hasTown())
-			extractTownVillage(addr, towns, P_TOWN3, null, null, "c");
-		else
-			extractTownVillage(addr, towns, P_TOWN2, "z", "x", "c");
+		long start = System.nanoTime();
+		if( extractTownVillage(addr, towns, P_TOWN1, "z", null, "c") < 0 ){
+			if(addr.hasTown())
+				extractTownVillage(addr, towns, P_TOWN3, null, null, "c");
+			else
+				extractTownVillage(addr, towns, P_TOWN2, "z", "x", "c");
+		}
+		TIME_TOWN.recordSince(start);
 	}
 	/**
 	 * @return 1 匹配成功，0 未执行匹配，-1 未匹配上。
@@ -638,6 +772,20 @@ public class AddressInterpreter {
 	}
 	public void setPersister(AddressPersister value){
 		persister = value;
+		//已创建的访问者使用原persister，丢弃后按新的persister重新创建
+		visitors = newVisitors();
+	}
+	/**
+	 * {@link #interpret(List)}批量解析地址的线程数，小于等于0时使用CPU核数，1表示在调用线程中串行解析（默认）。
+	 * <p>线程池在第一次并行解析时创建，修改线程数会关闭已创建的线程池。</p>
+	 * @param value
+	 */
+	public synchronized void setBatchParallelism(int value){
+		if(batchPool!=null){
+			batchPool.shutdown();
+			batchPool = null;
+		}
+		batchThreads = value<=0 ? Runtime.getRuntime().availableProcessors() : value;
 	}
 	
 }
\ No newline at end of file
@@ -1,12 +1,10 @@
 package com.rrs.rd.address.interpret;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.alibaba.dubbo.common.utils.Stack;
 import com.rrs.rd.address.index.TermIndexVisitor;
 import com.rrs.rd.address.Division;
 import com.rrs.rd.address.TermType;
@@ -53,7 +51,8 @@ import com.rrs.rd.address.persist.RegionType;
  * 执行多次省市区匹配只需创建一个{@link RegionInterpreterVisitor}对象，在每次匹配开始时必须调用{@link #reset()}方法复位状态。
  * </p>
  * 
- * <p>{@link RegionInterpreterVisitor}非线程安全，只能支持单个线程内串行执行。</p>
+ * <p>{@link RegionInterpreterVisitor}非线程安全，只能支持单个线程内串行执行。
+ * {@link AddressInterpreter}为每个线程保留一个访问者对象，多个线程并发解析地址时各自复用自己的访问者。</p>
  * 
  * @author Richie 刘志斌 yudi@sina.com
  * 2016年10月19日
@@ -62,7 +61,6 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 	private final static Logger LOG = LoggerFactory.getLogger(RegionInterpreterVisitor.class);
 	
 	private static boolean isDebug = false;
-	private static Set<Character> ambiguousChars = null;
 	
 	private AddressPersister persister = null;
 	
@@ -70,18 +68,13 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 	private int fullMatchCount = 0, deepMostFullMatchCount = 0;
 	private Division deepMostDivision = new Division();
 	private Division curDivision = new Division();
-	private Stack<TermIndexItem> stack = new Stack<TermIndexItem>(); 
+	/**
+	 * 已接受的索引项，数组实现的栈，深度超过数组长度时扩容，复位后继续使用同一数组。
+	 */
+	private TermIndexItem[] stack = new TermIndexItem[8];
+	private int stackSize = 0;
 	
 
-	static {
-		ambiguousChars = new HashSet<Character>();
-		ambiguousChars.add('市');
-		ambiguousChars.add('县');
-		ambiguousChars.add('区');
-		ambiguousChars.add('镇');
-		ambiguousChars.add('乡');
-	}
-
 	public RegionInterpreterVisitor(AddressPersister persister){
 		this.persister = persister;
 	}
@@ -117,7 +110,7 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 			printDebugInfo("visit", null, entry.getKey() + " : " + acceptableItem.getValue().toString());
 		
 		//更新当前状态
-		stack.push(acceptableItem); //匹配项压栈
+		push(acceptableItem); //匹配项压栈
 		if(isFullMatch(entry, region)) fullMatchCount++; //使用全名匹配的词条数
 		currentPos = positioning(region, entry, text, pos); //当前结束的位置
 		updateCurrentDivisionState(region); //刷新当前已经匹配上的省市区
@@ -143,16 +136,16 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 		
 		this.checkDeepMost();
 		
-		TermIndexItem tii = stack.pop(); //当前访问的索引对象出栈
-		currentPos = pos - entry.getKey().length(); //恢复当前位置指针
+		TermIndexItem tii = pop(); //当前访问的索引对象出栈
+		currentPos = pos - entry.getLength(); //恢复当前位置指针
 		RegionEntity region = (RegionEntity)tii.getValue();
 		if(isFullMatch(entry, region)) fullMatchCount++; //更新全名匹配的数量
 		if(tii.getType()==TermType.Ignore) return; //如果是忽略项，无需更新当前已匹配的省市区状态
 		
 		//扫描一遍stack，找出街道street、乡镇town、村庄village，以及省市区中级别最低的一个least
 		RegionEntity least = null, street=null, town=null, village=null;
-		for(int i=0; i<stack.size(); i++) {
-			tii = stack.get(i);
+		for(int i=0; i<stackSize; i++) {
+			tii = stack[i];
 			if(tii.getType()==TermType.Ignore) continue;
 			RegionEntity r = (RegionEntity)tii.getValue();
 			switch(r.getType()){
@@ -212,7 +205,7 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 				|| acceptedRegion.getType()==RegionType.Street)
 				&& !isFullMatch(entry, acceptedRegion) && pos+1<=text.length()-1 ) {
 			char c = text.charAt(pos+1);
-			if(ambiguousChars.contains(c)) { //后续跟着特殊字符
+			if(isAmbiguousChar(c)) { //后续跟着特殊字符
 				if(acceptedRegion.getChildren()!=null) {
 					for(RegionEntity child : acceptedRegion.getChildren()) {
 						if(child.getName().charAt(0)==c) return pos;
@@ -390,9 +383,9 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 	}
 	private boolean isFullMatch(TermIndexEntry entry, RegionEntity region){
 		if(region==null) return false;
-		if(entry.getKey().length() == region.getName().length()) return true;
+		if(entry.getLength() == region.getName().length()) return true;
 		if(region.getType()==RegionType.Street && region.getName().endsWith("街道")
-				&& region.getName().length() == entry.getKey().length()+1)
+				&& region.getName().length() == entry.getLength()+1)
 			//xx街道，使用别名xx镇、xx乡匹配上的，认为是全名匹配
 			return true;
 		return false;
@@ -470,8 +463,8 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 		}
 	}
 	private void checkDeepMost(){
-		if(stack.size() > deepMostLevel) {
-			deepMostLevel = stack.size();
+		if(stackSize > deepMostLevel) {
+			deepMostLevel = stackSize;
 			deepMostPos = currentPos;
 			deepMostFullMatchCount = fullMatchCount;
 			deepMostDivision.setProvince(curDivision.getProvince());
@@ -532,10 +525,31 @@ public class RegionInterpreterVisitor implements TermIndexVisitor {
 	public Division resultDivision(){
 		return deepMostDivision;
 	}
+	/**
+	 * 行政区域名称的后缀字符：市、县、区、镇、乡。
+	 */
+	private static boolean isAmbiguousChar(char c){
+		return c=='市' || c=='县' || c=='区' || c=='镇' || c=='乡';
+	}
+	
+	private void push(TermIndexItem item){
+		if(stackSize==stack.length) stack = Arrays.copyOf(stack, stackSize * 2);
+		stack[stackSize++] = item;
+	}
+	
+	private TermIndexItem pop(){
+		TermIndexItem item = stack[--stackSize];
+		stack[stackSize] = null;
+		return item;
+	}
+	
 	/**
 	 * 状态复位。
 	 */
 	public void reset(){
+		//正常匹配结束时栈已经为空，匹配过程中出现异常时清除残留的索引项
+		for(int i=0; i<stackSize; i++) stack[i] = null;
+		stackSize = 0;
 		currentLevel = 0;
 		deepMostLevel = 0;
 		currentPos = -1;
@@ -0,0 +1,109 @@
+package com.rrs.rd.address.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的耗时直方图，记录纳秒级耗时，统计次数、平均值、最大值和分位数。
+ * <p>
+ * 耗时按对数-线性方式分桶：小于16纳秒每纳秒一个桶，其余每个2的幂次区间再均分为16个桶，
+ * 分位数取所在桶的上界（不超过最大值），相对误差不超过6.25%。
+ * 全部桶固定分配，记录时只有几次原子递增，不分配内存、不加锁，可以在查询、解析等热点路径上并发调用。
+ * </p>
+ * <p>{@link #snapshot()}与并发的{@link #record(long)}之间不做同步，快照中的各项统计可能相差正在记录的少数几次。</p>
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 4;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int BUCKET_COUNT = SUB_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+	private final String name;
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong(0);
+	private final AtomicLong total = new AtomicLong(0);
+	private final AtomicLong max = new AtomicLong(0);
+
+	public LatencyHistogram(String name){
+		this.name = name;
+	}
+
+	public String getName(){
+		return this.name;
+	}
+
+	/**
+	 * 记录一次耗时。
+	 * @param nanos 耗时，单位纳秒，小于0时按0记录。
+	 */
+	public void record(long nanos){
+		if(nanos<0) nanos = 0;
+		this.buckets.incrementAndGet(bucketIndex(nanos));
+		this.count.incrementAndGet();
+		this.total.addAndGet(nanos);
+		long current = this.max.get();
+		while(nanos>current && !this.max.compareAndSet(current, nanos))
+			current = this.max.get();
+	}
+
+	/**
+	 * 记录从startNanos（{@link System#nanoTime()}）到现在的耗时。
+	 * @param startNanos
+	 * @return 当前的{@link System#nanoTime()}，可以作为下一阶段的开始时间。
+	 */
+	public long recordSince(long startNanos){
+		long now = System.nanoTime();
+		this.record(now - startNanos);
+		return now;
+	}
+
+	public long getCount(){
+		return this.count.get();
+	}
+
+	public LatencySnapshot snapshot(){
+		long[] counts = new long[BUCKET_COUNT];
+		long n = 0;
+		for(int i=0; i<BUCKET_COUNT; i++){
+			counts[i] = this.buckets.get(i);
+			n += counts[i];
+		}
+		long maxNanos = this.max.get(), calls = this.count.get();
+		double mean = calls==0 ? 0 : this.total.get() * 1.0 / calls;
+		return new LatencySnapshot(n, mean / 1000, percentile(counts, n, 0.5, maxNanos) / 1000.0
+			, percentile(counts, n, 0.99, maxNanos) / 1000.0, percentile(counts, n, 0.999, maxNanos) / 1000.0, maxNanos / 1000.0);
+	}
+
+	/**
+	 * 清空统计数据。
+	 */
+	public void reset(){
+		for(int i=0; i<BUCKET_COUNT; i++) this.buckets.set(i, 0);
+		this.count.set(0);
+		this.total.set(0);
+		this.max.set(0);
+	}
+
+	private static long percentile(long[] counts, long n, double quantile, long maxNanos){
+		if(n==0) return 0;
+		long rank = (long)Math.ceil(quantile * n);
+		long seen = 0;
+		for(int i=0; i<counts.length; i++){
+			seen += counts[i];
+			if(seen>=rank) return Math.min(bucketUpperBound(i), maxNanos);
+		}
+		return maxNanos;
+	}
+
+	static int bucketIndex(long nanos){
+		if(nanos<SUB_COUNT) return (int)nanos;
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		return SUB_COUNT + (exponent - SUB_BITS) * SUB_COUNT + (int)((nanos >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1));
+	}
+
+	static long bucketUpperBound(int index){
+		if(index<SUB_COUNT) return index;
+		int exponent = (index - SUB_COUNT) / SUB_COUNT + SUB_BITS;
+		long sub = (index - SUB_COUNT) % SUB_COUNT;
+		return ((SUB_COUNT + sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+}
@@ -0,0 +1,51 @@
+package com.rrs.rd.address.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * {@link LatencyHistogram}某一时刻的统计结果，耗时单位为微秒。
+ */
+public class LatencySnapshot {
+	private long count;
+	private double mean, p50, p99, p999, max;
+
+	@ConstructorProperties({ "count", "mean", "p50", "p99", "p999", "max" })
+	public LatencySnapshot(long count, double mean, double p50, double p99, double p999, double max){
+		this.count = count;
+		this.mean = mean;
+		this.p50 = p50;
+		this.p99 = p99;
+		this.p999 = p999;
+		this.max = max;
+	}
+
+	public long getCount(){
+		return this.count;
+	}
+	public double getMean(){
+		return this.mean;
+	}
+	public double getP50(){
+		return this.p50;
+	}
+	public double getP99(){
+		return this.p99;
+	}
+	public double getP999(){
+		return this.p999;
+	}
+	public double getMax(){
+		return this.max;
+	}
+
+	@Override
+	public String toString(){
+		return "count=" + this.count + ", mean=" + format(this.mean) + ", p50=" + format(this.p50) + ", p99=" + format(this.p99)
+			+ ", p999=" + format(this.p999) + ", max=" + format(this.max);
+	}
+
+	private static String format(double micros){
+		if(micros>=1000) return String.format("%.2fms", micros / 1000);
+		return String.format("%.1fus", micros);
+	}
+}
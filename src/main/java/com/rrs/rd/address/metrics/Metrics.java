@@ -0,0 +1,125 @@
+package com.rrs.rd.address.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 运行指标：各处理阶段的耗时直方图和计数器，按名称全局共享。
+ * <p>
+ * 名称使用"模块.阶段"的形式，例如interpret.region、partition.load、search.score。
+ * 使用方在静态字段中持有{@link #histogram(String)}、{@link #counter(String)}返回的对象，热点路径上不需要再按名称查找。
+ * </p>
+ * <p>
+ * 统计数据通过{@link #latencies()}、{@link #counters()}、{@link #report()}读取，
+ * 类加载时注册到平台MBeanServer（{@value #OBJECT_NAME}），也可以通过JMX查看。
+ * </p>
+ */
+public final class Metrics {
+	private final static Logger LOG = LoggerFactory.getLogger(Metrics.class);
+	public static final String OBJECT_NAME = "com.rrs.rd.address:type=Metrics";
+
+	private static final ConcurrentHashMap<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<String, LatencyHistogram>();
+	private static final ConcurrentHashMap<String, AtomicLong> COUNTERS = new ConcurrentHashMap<String, AtomicLong>();
+
+	static{
+		try{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if(!server.isRegistered(name)) server.registerMBean(new MetricsBean(), name);
+		}catch(Exception ex){
+			LOG.warn("[metrics] Failed to register MBean " + OBJECT_NAME + ": " + ex.getMessage());
+		}
+	}
+
+	private Metrics(){ }
+
+	/**
+	 * 获取耗时直方图，不存在时创建。
+	 */
+	public static LatencyHistogram histogram(String name){
+		LatencyHistogram histogram = HISTOGRAMS.get(name);
+		if(histogram!=null) return histogram;
+		histogram = new LatencyHistogram(name);
+		LatencyHistogram existing = HISTOGRAMS.putIfAbsent(name, histogram);
+		return existing==null ? histogram : existing;
+	}
+
+	/**
+	 * 获取计数器，不存在时创建。
+	 */
+	public static AtomicLong counter(String name){
+		AtomicLong counter = COUNTERS.get(name);
+		if(counter!=null) return counter;
+		counter = new AtomicLong(0);
+		AtomicLong existing = COUNTERS.putIfAbsent(name, counter);
+		return existing==null ? counter : existing;
+	}
+
+	/**
+	 * 全部耗时统计，按名称排序。
+	 */
+	public static Map<String, LatencySnapshot> latencies(){
+		Map<String, LatencySnapshot> result = new TreeMap<String, LatencySnapshot>();
+		for(LatencyHistogram histogram : HISTOGRAMS.values())
+			result.put(histogram.getName(), histogram.snapshot());
+		return result;
+	}
+
+	/**
+	 * 全部计数器的当前值，按名称排序。
+	 */
+	public static Map<String, Long> counters(){
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for(Map.Entry<String, AtomicLong> entry : COUNTERS.entrySet())
+			result.put(entry.getKey(), entry.getValue().get());
+		return result;
+	}
+
+	/**
+	 * 文本格式的全部统计数据，每行一项。
+	 */
+	public static String report(){
+		StringBuilder sb = new StringBuilder();
+		for(Map.Entry<String, LatencySnapshot> entry : latencies().entrySet())
+			sb.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+		for(Map.Entry<String, Long> entry : counters().entrySet())
+			sb.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+		return sb.toString();
+	}
+
+	/**
+	 * 清空全部统计数据，已获取的直方图、计数器对象继续有效。
+	 */
+	public static void reset(){
+		for(LatencyHistogram histogram : HISTOGRAMS.values()) histogram.reset();
+		for(AtomicLong counter : COUNTERS.values()) counter.set(0);
+	}
+
+	private static class MetricsBean implements MetricsMXBean {
+		@Override
+		public Map<String, LatencySnapshot> getLatencies() {
+			return latencies();
+		}
+		@Override
+		public Map<String, Long> getCounters() {
+			return counters();
+		}
+		@Override
+		public String getReport() {
+			return report();
+		}
+		@Override
+		public void reset() {
+			Metrics.reset();
+		}
+	}
+}
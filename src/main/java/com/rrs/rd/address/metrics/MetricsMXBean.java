@@ -0,0 +1,19 @@
+package com.rrs.rd.address.metrics;
+
+import java.util.Map;
+
+/**
+ * 通过JMX查看{@link Metrics}，ObjectName为{@value Metrics#OBJECT_NAME}。
+ */
+public interface MetricsMXBean {
+	/**
+	 * 全部耗时统计，耗时单位为微秒。
+	 */
+	Map<String, LatencySnapshot> getLatencies();
+	Map<String, Long> getCounters();
+	/**
+	 * 文本格式的全部统计数据，参考{@link Metrics#report()}。
+	 */
+	String getReport();
+	void reset();
+}
@@ -1,23 +1,75 @@
 package com.rrs.rd.address.misc;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import com.rrs.rd.address.persist.AddressEntity;
 import com.rrs.rd.address.persist.AddressPersister;
+import com.rrs.rd.address.persist.PartitionWatermark;
 import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.similarity.CacheManifest;
+import com.rrs.rd.address.similarity.Document;
 import com.rrs.rd.address.similarity.SimilarityComputer;
 
+/**
+ * 为全部分区（区县）生成缓存文件。
+ * <p>用法：BuildFileCache [-threads 线程数] [-incremental]</p>
+ * <p>
+ * 每个分区一个任务，地址以流式结果集逐条读取并分词，不在内存中持有分区全部地址。
+ * 指定线程数大于1时多个分区并行生成，线程数即同时使用的数据库连接数，不要超过连接池的maxActive，
+ * 也需要考虑mysql服务器的负载，默认为1，依次生成。
+ * </p>
+ * <p>
+ * 生成缓存文件时将各分区的地址水位（最大地址ID、地址数量）记录到缓存目录的{@link CacheManifest 清单文件}中。
+ * 指定-incremental时只重新生成水位发生变化的分区，水位未变化、没有地址并且没有缓存文件的分区直接跳过。
+ * 地址全部删除的分区删除缓存文件和清单中的记录。
+ * 分区的IDF依赖分区全部地址，有变化的分区整体重新生成，不在原缓存文件上追加。
+ * </p>
+ */
 public class BuildFileCache {
 	private static ClassPathXmlApplicationContext context = null;
 	private static AddressPersister persister = null;
 	private static SimilarityComputer computer = null;
 	private static SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
 
+	private static int total = 0;
+	private static AtomicInteger finished = new AtomicInteger(0);
+	private static AtomicInteger skipped = new AtomicInteger(0);
+	private static AtomicInteger removed = new AtomicInteger(0);
+	private static AtomicLong totalDocs = new AtomicLong(0);
+	private static AtomicLong totalBytes = new AtomicLong(0);
+	private static long startAt = 0;
+
 	public static void main(String[] args) {
+		int threads = 1;
+		boolean incremental = false;
+		for(int i=0; args!=null && i<args.length; i++){
+			if("-incremental".equals(args[i])) incremental = true;
+			if("-threads".equals(args[i]) && i+1<args.length){
+				try{
+					threads = Integer.parseInt(args[++i]);
+				}catch(NumberFormatException ex){
+					System.out.println("> [错误] 线程数必须是整数：" + args[i]);
+					return;
+				}
+			}
+		}
+
 		//启动spring容器
 		try{
 			context = new ClassPathXmlApplicationContext(new String[] { "spring-config.xml" });
@@ -32,46 +84,172 @@ public class BuildFileCache {
 			ex.printStackTrace(System.out);
 			return;
 		}
-		context.start(); 
+		context.start();
 		
+		CacheManifest manifest = null;
+		try {
+			manifest = CacheManifest.load(new File(computer.getCacheFolder()));
+		} catch (IOException ex) {
+			System.out.println("> [错误] 无法读取清单文件：" + ex.getMessage());
+			return;
+		}
+		Map<String, long[]> watermarks = loadWatermarks();
+
+		List<PartitionTask> tasks = new ArrayList<PartitionTask>();
 		RegionEntity root = persister.rootRegion();
 		for(RegionEntity province : root.getChildren()){
 			//if(province.getId()!=110000) continue; //TODO: test only. 仅测试北京的地址
 			for(RegionEntity city : province.getChildren()){
 				if(city.getChildren()==null){
-					long start = System.currentTimeMillis();
-					Date startDate = new Date();
-					try{
-						List<AddressEntity> addresses = persister.loadAddresses(province.getId(), city.getId(), 0);
-						if(addresses==null || addresses.isEmpty()) continue;
-						
-						computer.buildDocumentFileCache(computer.buildCacheKey(addresses.get(0)), addresses);
-						System.out.println("> [" + format.format(startDate) + " -> " + format.format(new Date()) + "] "
-							+ province.getName() + "-" + city.getName() + ", " + addresses.size() + " addresses, " 
-							+ "elapsed: " + (System.currentTimeMillis()-start)/1000.0 + "s.");
-					}catch(Exception ex){
-						System.out.println("> [" + format.format(startDate) + " -> " + format.format(new Date()) + "] "
-							+ province.getName() + "-" + city.getName() + " error: " + ex.getMessage());
-						ex.printStackTrace(System.out);
-					}
+					tasks.add(new PartitionTask(province, city, null));
 				}else{
-					for(RegionEntity county : city.getChildren()){
-						long start = System.currentTimeMillis();
-						Date startDate = new Date();
-						try{
-							List<AddressEntity> addresses = persister.loadAddresses(province.getId(), city.getId(), county.getId());
-							if(addresses==null || addresses.isEmpty()) continue;
-							computer.buildDocumentFileCache(computer.buildCacheKey(addresses.get(0)), addresses);
-							System.out.println("> [" + format.format(startDate) + " -> " + format.format(new Date()) + "] "
-								+ province.getName() + "-" + city.getName() + "-" + county.getName() + ", " + addresses.size() + " addresses, " 
-								+ "elapsed: " + (System.currentTimeMillis()-start)/1000.0 + "s.");
-						}catch(Exception ex){
-							System.out.println("> [" + format.format(startDate) + " -> " + format.format(new Date()) + "] "
-								+ province.getName() + "-" + city.getName() + " error: " + ex.getMessage());
-							ex.printStackTrace(System.out);
-						}
+					for(RegionEntity county : city.getChildren())
+						tasks.add(new PartitionTask(province, city, county));
+				}
+			}
+		}
+		for(PartitionTask task : tasks){
+			task.watermark = watermarks.get(task.key);
+			task.manifest = manifest;
+			task.incremental = incremental;
+		}
+		total = tasks.size();
+		startAt = System.currentTimeMillis();
+
+		if(threads<=1){
+			for(PartitionTask task : tasks) task.run();
+		}else{
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			for(PartitionTask task : tasks) pool.execute(task);
+			pool.shutdown();
+			try {
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ex) {
+				System.out.println("> [错误] 等待生成缓存文件时被中断");
+				pool.shutdownNow();
+				return;
+			}
+		}
+
+		print(new Date(startAt), "finished " + total + " partitions (" + skipped.get() + " unchanged, " + removed.get() + " removed) with " 
+			+ threads + " threads, " + progress());
+	}
+	
+	/**
+	 * 读取全部分区的地址水位。
+	 * @return key为cacheKey，value为 {最大地址ID, 地址数量}。
+	 */
+	private static Map<String, long[]> loadWatermarks(){
+		Map<String, long[]> watermarks = new HashMap<String, long[]>();
+		for(PartitionWatermark wm : persister.loadWatermarks()){
+			//城市下没有区县时整个城市为一个分区，合并该城市的所有统计行
+			String key = cacheKey(persister.getRegion(wm.getProvinceId()), persister.getRegion(wm.getCityId())
+					, persister.getRegion(wm.getDistrictId()));
+			if(key==null) continue;
+			long[] value = watermarks.get(key);
+			if(value==null){
+				watermarks.put(key, new long[]{ wm.getMaxId(), wm.getCount() });
+			}else{
+				value[0] = Math.max(value[0], wm.getMaxId());
+				value[1] += wm.getCount();
+			}
+		}
+		return watermarks;
+	}
+	
+	private static String cacheKey(RegionEntity province, RegionEntity city, RegionEntity county){
+		if(city!=null && city.getChildren()!=null && county==null) return null;
+		AddressEntity address = new AddressEntity();
+		address.setProvince(province);
+		address.setCity(city);
+		address.setDistrict(county);
+		return computer.buildCacheKey(address);
+	}
+
+	/**
+	 * 累计的处理速度。
+	 */
+	private static String progress(){
+		double seconds = Math.max(System.currentTimeMillis() - startAt, 1) / 1000.0;
+		return totalDocs.get() + " docs, " + String.format("%.1f", totalDocs.get() / seconds) + " docs/s, "
+			+ String.format("%.2f", totalBytes.get() / 1048576.0 / seconds) + " MB/s, elapsed: " + seconds + "s.";
+	}
+
+	private static synchronized void print(Date startDate, String message){
+		System.out.println("> [" + format.format(startDate) + " -> " + format.format(new Date()) + "] " + message);
+	}
+
+	/**
+	 * 生成一个分区的缓存文件。
+	 */
+	private static class PartitionTask implements Runnable {
+		private RegionEntity province, city, county;
+		private String key;
+		private long[] watermark;
+		private CacheManifest manifest;
+		private boolean incremental;
+
+		PartitionTask(RegionEntity province, RegionEntity city, RegionEntity county){
+			this.province = province;
+			this.city = city;
+			this.county = county;
+			this.key = cacheKey(province, city, county);
+		}
+		
+		/**
+		 * 增量生成时，水位与清单中记录的相同并且缓存文件存在，或者分区没有地址并且没有生成过缓存文件时不需要重新生成。
+		 * <p>分区没有地址但清单中有记录或者缓存文件存在时，分区的地址已经全部删除，需要删除缓存文件。</p>
+		 */
+		private boolean isUnchanged(){
+			if(!incremental) return false;
+			boolean exists = new File(computer.getCacheFolder() + "/" + key + ".vt").exists();
+			if(watermark==null) return !exists && !manifest.contains(key);
+			return manifest.isUpToDate(key, watermark[0], watermark[1]) && exists;
+		}
+
+		@Override
+		public void run() {
+			String name = province.getName() + "-" + city.getName() + (county==null ? "" : "-" + county.getName());
+			long start = System.currentTimeMillis();
+			Date startDate = new Date();
+			try{
+				if(isUnchanged()){
+					skipped.incrementAndGet();
+					finished.incrementAndGet();
+					return;
+				}
+				final List<Document> docs = new ArrayList<Document>();
+				persister.scanAddresses(province.getId(), city.getId(), county==null ? 0 : county.getId()
+						, new ResultHandler<AddressEntity>() {
+					@Override
+					public void handleResult(ResultContext<? extends AddressEntity> resultContext) {
+						docs.add(computer.analyse(resultContext.getResultObject()));
 					}
+				});
+				if(docs.isEmpty()){
+					//分区的地址已经全部删除，删除原来的缓存文件，不再提供已删除的地址
+					boolean deleted = computer.deleteDocumentFileCache(key);
+					if(manifest.remove(key)) deleted = true;
+					int done = finished.incrementAndGet();
+					if(deleted){
+						removed.incrementAndGet();
+						print(startDate, "[" + done + "/" + total + "] " + name + ", no addresses, cache files removed.");
+					}
+					return;
 				}
+
+				long bytes = computer.writeDocumentFileCache(key, docs);
+				//记录生成之前读取的水位，生成期间新导入的地址在下次增量生成时处理
+				if(watermark!=null) manifest.update(key, watermark[0], watermark[1]);
+				totalDocs.addAndGet(docs.size());
+				totalBytes.addAndGet(bytes);
+				int done = finished.incrementAndGet();
+				print(startDate, "[" + done + "/" + total + "] " + name + ", " + docs.size() + " addresses, "
+					+ "elapsed: " + (System.currentTimeMillis()-start)/1000.0 + "s. total " + progress());
+			}catch(Exception ex){
+				finished.incrementAndGet();
+				print(startDate, name + " error: " + ex.getMessage());
+				ex.printStackTrace(System.out);
 			}
 		}
 	}
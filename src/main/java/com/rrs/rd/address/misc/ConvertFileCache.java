@@ -0,0 +1,55 @@
+package com.rrs.rd.address.misc;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+import com.rrs.rd.address.similarity.PartitionFile;
+import com.rrs.rd.address.similarity.SimilarityComputer;
+
+/**
+ * 将缓存目录中文本格式的分区缓存文件（.vt）转换成二进制格式（.vtb）。
+ * <p>用法：ConvertFileCache &lt;缓存目录&gt;</p>
+ */
+public class ConvertFileCache {
+	private static SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+	
+	public static void main(String[] args) {
+		if(args==null || args.length<1){
+			System.out.println("> [错误] 请指定缓存目录");
+			return;
+		}
+		File folder = new File(args[0]);
+		File[] files = folder.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".vt");
+			}
+		});
+		if(files==null){
+			System.out.println("> [错误] 缓存目录不存在：" + folder.getAbsolutePath());
+			return;
+		}
+		Arrays.sort(files);
+		
+		SimilarityComputer computer = new SimilarityComputer();
+		computer.setCacheFolder(folder.getAbsolutePath());
+		for(File file : files){
+			String key = file.getName().substring(0, file.getName().length() - ".vt".length());
+			long start = System.currentTimeMillis();
+			Date startDate = new Date();
+			try{
+				int count = computer.convertFileCache(key);
+				System.out.println("> [" + format.format(startDate) + " -> " + format.format(new Date()) + "] "
+					+ key + PartitionFile.EXTENSION + ", " + count + " docs, " 
+					+ "elapsed: " + (System.currentTimeMillis()-start)/1000.0 + "s.");
+			}catch(Exception ex){
+				System.out.println("> [" + format.format(startDate) + " -> " + format.format(new Date()) + "] "
+					+ key + " error: " + ex.getMessage());
+				ex.printStackTrace(System.out);
+			}
+		}
+	}
+}
@@ -11,7 +11,6 @@ import java.util.List;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import com.rrs.rd.address.interpret.AddressInterpreter;
-import com.rrs.rd.address.interpret.RegionInterpreterVisitor;
 import com.rrs.rd.address.persist.AddressEntity;
 import com.rrs.rd.address.persist.AddressPersister;
 
@@ -90,8 +89,6 @@ public class ImportAddress {
 		List<String> addrTextList = new ArrayList<String>();
 		System.out.println("> 开始导入地址库");
 		
-		RegionInterpreterVisitor visitor = new RegionInterpreterVisitor(persister);
-		
 		try{
 			int count=0;
             while((line = br.readLine()) != null){
@@ -99,7 +96,7 @@ public class ImportAddress {
             	count++;
             	if(count % 40000 == 0){
             		try{
-                    	List<AddressEntity> addresses = interpreter.interpret(addrTextList, visitor); 
+                    	List<AddressEntity> addresses = interpreter.interpret(addrTextList); 
                     	imported += persister.importAddresses(addresses);
                 	}catch(RuntimeException ex){
                 		System.out.println("> [错误] " + ex.getMessage());
@@ -111,7 +108,7 @@ public class ImportAddress {
             }
             if(count % 40000 != 0){
         		try{
-                	List<AddressEntity> addresses = interpreter.interpret(addrTextList, visitor); 
+                	List<AddressEntity> addresses = interpreter.interpret(addrTextList); 
                 	imported += persister.importAddresses(addresses);
             	}catch(RuntimeException ex){
             		System.out.println("> [错误] " + ex.getMessage());
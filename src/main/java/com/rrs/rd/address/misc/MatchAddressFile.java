@@ -0,0 +1,436 @@
+package com.rrs.rd.address.misc;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import com.rrs.rd.address.interpret.AddressInterpreter;
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.persist.AddressPersister;
+import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.similarity.NoHistoryDataException;
+import com.rrs.rd.address.similarity.QueryResult;
+import com.rrs.rd.address.similarity.SimilarDoccument;
+import com.rrs.rd.address.similarity.SimilarityComputer;
+
+/**
+ * 离线批量匹配：为文件中的每一行地址在地址库中搜索相似地址，结果写入输出文件。
+ * <p>用法：MatchAddressFile 输入文件 输出文件 [-column 列号] [-csv] [-top N] [-threads 线程数]</p>
+ * <p>
+ * 输入文件为UTF-8编码的文本文件，默认每行一个地址；指定-column时按列读取地址（列号从1开始），
+ * 默认以tab分隔，指定-csv时以逗号分隔，支持双引号括起来的字段。
+ * </p>
+ * <p>
+ * 处理过程：
+ * <ol>
+ * <li>流式读取输入文件，每次读取一批地址，使用多个线程并行解析；</li>
+ * <li>解析后的地址按分区（{@link SimilarityComputer#buildCacheKey(AddressEntity) cacheKey}）分桶，
+ * 内存中的地址达到一定数量后追加写入各分区的临时桶文件，内存占用与输入文件大小无关；</li>
+ * <li>逐个分区处理桶文件：分区只加载一次，通过{@link SimilarityComputer#searchAddresses(List, int, boolean)}计算该分区全部地址，
+ * 结果写入输出文件后从内存缓存中移除该分区，同时只有一个分区在内存中。</li>
+ * </ol>
+ * </p>
+ * <p>
+ * 输出文件以tab分隔，每行：<code>行号 地址 状态 匹配结果</code>，状态为OK、NO_HISTORY、ERROR，
+ * 匹配结果为<code>地址ID:相似度</code>，多个结果以逗号分隔，出错时为错误信息。
+ * 输出按分区顺序排列，需要按输入顺序时使用行号排序，例如<code>sort -n</code>。
+ * 结束时输出处理速度（行/秒）和堆内存峰值。
+ * </p>
+ */
+public class MatchAddressFile {
+	/**
+	 * 每次读取、并行解析的行数。
+	 */
+	private static final int READ_BATCH = 10000;
+	/**
+	 * 内存中待写入桶文件的地址数量达到该值时写入桶文件。
+	 */
+	private static final int BUCKET_BUFFER = 100000;
+	/**
+	 * 每次计算相似度的地址数量，分区地址很多时分多次计算。
+	 */
+	private static final int SEARCH_BATCH = 10000;
+
+	private AddressInterpreter interpreter;
+	private AddressPersister persister;
+	private SimilarityComputer computer;
+	private int column = 0;
+	private char delimiter = '\t';
+	private int topN = 1;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private File bucketFolder;
+	private Map<String, List<String>> buffered = new HashMap<String, List<String>>();
+	private int bufferedRows = 0;
+	private long rows = 0, matched = 0, noHistory = 0, failed = 0;
+	private long peakHeap = 0;
+
+	public MatchAddressFile(AddressInterpreter interpreter, AddressPersister persister, SimilarityComputer computer){
+		this.interpreter = interpreter;
+		this.persister = persister;
+		this.computer = computer;
+	}
+
+	public static void main(String[] args) {
+		if(args==null || args.length<2){
+			System.out.println("> 用法：MatchAddressFile 输入文件 输出文件 [-column 列号] [-csv] [-top N] [-threads 线程数]");
+			return;
+		}
+		File input = new File(args[0].trim()), output = new File(args[1].trim());
+		if(!input.exists() || !input.isFile()){
+			System.out.println("> [错误] 文件\"" + args[0] + "\"不存在");
+			return;
+		}
+		int column = 0, topN = 1, threads = Runtime.getRuntime().availableProcessors();
+		boolean csv = false;
+		try{
+			for(int i=2; i<args.length; i++){
+				if("-csv".equals(args[i])) csv = true;
+				else if("-column".equals(args[i]) && i+1<args.length) column = Integer.parseInt(args[++i]);
+				else if("-top".equals(args[i]) && i+1<args.length) topN = Integer.parseInt(args[++i]);
+				else if("-threads".equals(args[i]) && i+1<args.length) threads = Integer.parseInt(args[++i]);
+			}
+		}catch(NumberFormatException ex){
+			System.out.println("> [错误] 参数必须是整数：" + ex.getMessage());
+			return;
+		}
+
+		//启动spring容器
+		ClassPathXmlApplicationContext context = null;
+		MatchAddressFile job = null;
+		try{
+			context = new ClassPathXmlApplicationContext(new String[] { "spring-config.xml" });
+			context.start();
+			job = new MatchAddressFile(context.getBean(AddressInterpreter.class), context.getBean(AddressPersister.class)
+					, context.getBean(SimilarityComputer.class));
+		}catch(Exception ex){
+			System.out.println("> [错误] spring-config.xml文件配置错误：" + ex.getMessage());
+			ex.printStackTrace(System.out);
+			return;
+		}
+		try{
+			job.setColumn(column);
+			job.setDelimiter(csv ? ',' : '\t');
+			job.setTopN(topN);
+			job.setThreads(threads);
+			job.run(input, output);
+		}catch(Exception ex){
+			System.out.println("> [错误] 匹配失败：" + ex.getMessage());
+			ex.printStackTrace(System.out);
+		}finally{
+			context.close();
+		}
+	}
+
+	/**
+	 * 匹配输入文件中的全部地址，结果写入输出文件。
+	 * @param input
+	 * @param output
+	 * @throws IOException
+	 */
+	public void run(File input, File output) throws IOException {
+		long start = System.currentTimeMillis();
+		this.bucketFolder = new File(output.getAbsolutePath() + ".buckets");
+		if(!this.bucketFolder.exists() && !this.bucketFolder.mkdirs())
+			throw new IOException("Can't create folder: " + this.bucketFolder.getAbsolutePath());
+		for(File file : this.bucketFolder.listFiles()) file.delete(); //上次中断时遗留的桶文件
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, this.threads));
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), "utf8"));
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(input), "utf8"));
+		try{
+			//1. 读取、并行解析，按分区分桶
+			List<String> lines = new ArrayList<String>(READ_BATCH);
+			long lineNum = 0, firstLine = 1;
+			String line = null;
+			while((line = reader.readLine()) != null){
+				lineNum++;
+				lines.add(line);
+				if(lines.size()<READ_BATCH) continue;
+				this.interpret(lines, firstLine, pool, writer);
+				lines.clear();
+				firstLine = lineNum + 1;
+			}
+			this.interpret(lines, firstLine, pool, writer);
+			this.flushBuckets();
+			System.out.println("> " + this.rows + " rows interpreted, elapsed " + (System.currentTimeMillis() - start)/1000.0 + "s.");
+
+			//2. 逐个分区计算相似度
+			String[] keys = this.bucketFolder.list();
+			Arrays.sort(keys);
+			for(String name : keys){
+				File bucket = new File(this.bucketFolder, name);
+				this.match(bucket, writer);
+				this.computer.getPartitionCache().remove(name);
+				bucket.delete();
+			}
+		}finally{
+			pool.shutdownNow();
+			try { reader.close(); } catch (IOException ex) { }
+			writer.close();
+			this.bucketFolder.delete();
+		}
+
+		double seconds = Math.max(System.currentTimeMillis() - start, 1) / 1000.0;
+		System.out.println("> " + this.rows + " rows, " + this.matched + " matched, " + this.noHistory + " no history, "
+			+ this.failed + " failed. " + String.format("%.1f", this.rows / seconds) + " rows/s, peak heap "
+			+ (this.peakHeap >> 20) + "MB, elapsed " + seconds + "s.");
+	}
+
+	/**
+	 * 并行解析一批地址，解析成功的放入分区桶中，失败的直接写入输出文件。
+	 */
+	private void interpret(final List<String> lines, long firstLine, ExecutorService pool, Writer writer) throws IOException {
+		if(lines.isEmpty()) return;
+		final String[] texts = new String[lines.size()];
+		for(int i=0; i<texts.length; i++) texts[i] = this.extractColumn(lines.get(i));
+		final AddressEntity[] addresses = new AddressEntity[texts.length];
+		int chunkSize = Math.max(1, texts.length / (this.threads * 4));
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		for(int from=0; from<texts.length; from+=chunkSize){
+			final int begin = from, end = Math.min(texts.length, from + chunkSize);
+			futures.add(pool.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					for(int i=begin; i<end; i++){
+						if(texts[i]==null || texts[i].trim().isEmpty()) continue;
+						try{
+							addresses[i] = interpreter.interpret(texts[i]);
+						}catch(Exception ex){
+							addresses[i] = null;
+						}
+					}
+					return null;
+				}
+			}));
+		}
+		for(Future<Object> future : futures){
+			try {
+				future.get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while interpreting addresses", ex);
+			} catch (ExecutionException ex) {
+				throw new IOException("Error in interpreting addresses", ex.getCause());
+			}
+		}
+		this.sampleHeap();
+
+		for(int i=0; i<texts.length; i++){
+			this.rows++;
+			long lineNum = firstLine + i;
+			AddressEntity addr = addresses[i];
+			if(addr==null || !addr.hasProvince() || !addr.hasCity() || !addr.hasDistrict()){
+				this.failed++;
+				this.write(writer, lineNum, texts[i], "ERROR", "Can't interpret address, invalid province, city or county name!");
+				continue;
+			}
+			addr.setRawText(texts[i]);
+			String key = this.computer.buildCacheKey(addr);
+			List<String> bucket = this.buffered.get(key);
+			if(bucket==null){
+				bucket = new ArrayList<String>();
+				this.buffered.put(key, bucket);
+			}
+			bucket.add(serialize(lineNum, addr));
+			if(++this.bufferedRows>=BUCKET_BUFFER) this.flushBuckets();
+		}
+	}
+
+	/**
+	 * 将内存中的地址追加写入各分区的桶文件。
+	 */
+	private void flushBuckets() throws IOException {
+		for(Map.Entry<String, List<String>> entry : this.buffered.entrySet()){
+			Writer writer = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(new File(this.bucketFolder, entry.getKey()), true), "utf8"));
+			try{
+				for(String row : entry.getValue()) writer.write(row + "\n");
+			}finally{
+				writer.close();
+			}
+		}
+		this.buffered.clear();
+		this.bufferedRows = 0;
+	}
+
+	/**
+	 * 计算一个分区桶文件中全部地址的相似地址。
+	 */
+	private void match(File bucket, Writer writer) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(bucket), "utf8"));
+		try{
+			List<Long> lineNums = new ArrayList<Long>(SEARCH_BATCH);
+			List<AddressEntity> addresses = new ArrayList<AddressEntity>(SEARCH_BATCH);
+			String row = null;
+			while((row = reader.readLine()) != null){
+				String[] fields = row.split("\t", -1);
+				lineNums.add(Long.parseLong(fields[0]));
+				addresses.add(this.deserialize(fields));
+				if(addresses.size()<SEARCH_BATCH) continue;
+				this.match(lineNums, addresses, writer);
+				lineNums.clear();
+				addresses.clear();
+			}
+			this.match(lineNums, addresses, writer);
+		}finally{
+			reader.close();
+		}
+	}
+
+	private void match(List<Long> lineNums, List<AddressEntity> addresses, Writer writer) throws IOException {
+		if(addresses.isEmpty()) return;
+		List<QueryResult> results = this.computer.searchAddresses(addresses, this.topN, false);
+		this.sampleHeap(); //分区已加载，查询结果尚未释放
+		for(int i=0; i<results.size(); i++){
+			QueryResult result = results.get(i);
+			if(result.isSuccess()){
+				StringBuilder sb = new StringBuilder();
+				for(SimilarDoccument simiDoc : result.getQuery().getSimilarDocs()){
+					if(sb.length()>0) sb.append(',');
+					sb.append(simiDoc.getDocument().getId()).append(':').append(String.format("%.4f", simiDoc.getSimilarity()));
+				}
+				this.matched++;
+				this.write(writer, lineNums.get(i), result.getAddressText(), "OK", sb.toString());
+			}else if(result.getError() instanceof NoHistoryDataException){
+				this.noHistory++;
+				this.write(writer, lineNums.get(i), result.getAddressText(), "NO_HISTORY", result.getError().getMessage());
+			}else{
+				this.failed++;
+				this.write(writer, lineNums.get(i), result.getAddressText(), "ERROR"
+					, result.getError()==null ? "" : result.getError().getMessage());
+			}
+		}
+	}
+
+	private void write(Writer writer, long lineNum, String text, String status, String result) throws IOException {
+		writer.write(lineNum + "\t" + clean(text) + "\t" + status + "\t" + clean(result) + "\n");
+	}
+
+	/**
+	 * 桶文件中一行：行号、省市区街道乡镇村庄ID、道路、门牌号、解析后剩余文本、地址原文，以tab分隔。
+	 */
+	private static String serialize(long lineNum, AddressEntity addr){
+		StringBuilder sb = new StringBuilder();
+		sb.append(lineNum).append('\t').append(id(addr.getProvince())).append('\t').append(id(addr.getCity()))
+			.append('\t').append(id(addr.getDistrict())).append('\t').append(id(addr.getStreet()))
+			.append('\t').append(id(addr.getTown())).append('\t').append(id(addr.getVillage()))
+			.append('\t').append(clean(addr.getRoad())).append('\t').append(clean(addr.getRoadNum()))
+			.append('\t').append(clean(addr.getText())).append('\t').append(clean(addr.getRawText()));
+		return sb.toString();
+	}
+
+	private AddressEntity deserialize(String[] fields){
+		AddressEntity addr = new AddressEntity(fields[9]);
+		addr.setRawText(fields[10]);
+		addr.setProvince(this.region(fields[1]));
+		addr.setCity(this.region(fields[2]));
+		addr.setDistrict(this.region(fields[3]));
+		addr.setStreet(this.region(fields[4]));
+		addr.setTown(this.region(fields[5]));
+		addr.setVillage(this.region(fields[6]));
+		addr.setRoad(fields[7]);
+		addr.setRoadNum(fields[8]);
+		return addr;
+	}
+
+	private RegionEntity region(String id){
+		long value = Long.parseLong(id);
+		return value<=0 ? null : this.persister.getRegion(value);
+	}
+
+	private static long id(RegionEntity region){
+		return region==null ? 0 : region.getId();
+	}
+
+	private static String clean(String text){
+		if(text==null) return "";
+		return text.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+	}
+
+	/**
+	 * 从输入行中取出地址所在列。
+	 */
+	private String extractColumn(String line){
+		if(this.column<=0) return line;
+		int col = 1;
+		StringBuilder sb = new StringBuilder();
+		boolean quoted = false;
+		for(int i=0; i<line.length(); i++){
+			char c = line.charAt(i);
+			if(this.delimiter==',' && c=='"'){
+				if(quoted && i+1<line.length() && line.charAt(i+1)=='"'){
+					if(col==this.column) sb.append('"'); //转义的双引号
+					i++;
+				}else{
+					quoted = !quoted;
+				}
+				continue;
+			}
+			if(c==this.delimiter && !quoted){
+				if(col==this.column) break;
+				col++;
+				continue;
+			}
+			if(col==this.column) sb.append(c);
+		}
+		return col<this.column ? null : sb.toString();
+	}
+
+	/**
+	 * 采样当前堆内存使用量，记录最大值作为堆内存峰值。
+	 * <p>每批地址解析、搜索完成后采样，各堆内存池的使用量峰值出现在不同时刻，不能相加。</p>
+	 */
+	private void sampleHeap(){
+		long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		if(used>this.peakHeap) this.peakHeap = used;
+	}
+
+	/**
+	 * 地址所在列，从1开始，小于等于0时每行为一个地址。
+	 * @param value
+	 */
+	public void setColumn(int value){
+		this.column = value;
+	}
+	/**
+	 * 列分隔符，tab或逗号。
+	 * @param value
+	 */
+	public void setDelimiter(char value){
+		this.delimiter = value;
+	}
+	/**
+	 * 每个地址返回多少条最相似地址。
+	 * @param value
+	 */
+	public void setTopN(int value){
+		this.topN = value;
+	}
+	/**
+	 * 解析地址的线程数。
+	 * @param value
+	 */
+	public void setThreads(int value){
+		this.threads = Math.max(1, value);
+	}
+}
@@ -11,6 +11,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import com.rrs.rd.address.interpret.AddressInterpreter;
+import com.rrs.rd.address.metrics.Metrics;
 import com.rrs.rd.address.persist.AddressEntity;
 import com.rrs.rd.address.persist.AddressPersister;
 import com.rrs.rd.address.similarity.NoHistoryDataException;
@@ -166,8 +167,7 @@ public class RegressionTestRunTest {
 				LOG.info("[perf] num:" + effectiveNum +", [time:" + round(timeTotal/1000000/1000.0) + ", avg:" + round(timeTotal*1.0/1000000/500)+"], "
 						+ "[inte: " + round(timeInter/1000000/1000.0) + ", avg:" + round(timeInter*1.0/1000000/500) + "], "
 						+ "[find: " + round(timeSimi/1000000/1000.0) + ", avg:" + round(timeSimi*1.0/1000000/500) + "], "
-						+ "[boost: " + round(computer.timeBoost/1000000/1000.0) +", avg:" + round(computer.timeBoost*1.0/1000000/500) + "]");
-				computer.timeBoost=0;
+						+ "[score: " + Metrics.histogram("search.score").snapshot() + "]");
 				start1 = System.nanoTime();
 				timeInter=0;
 				timeSimi=0;
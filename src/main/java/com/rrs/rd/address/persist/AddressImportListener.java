@@ -0,0 +1,14 @@
+package com.rrs.rd.address.persist;
+
+import java.util.List;
+
+/**
+ * 地址导入监听器，地址写入地址库之后通知，参考{@link AddressPersister#importAddresses(List)}。
+ */
+public interface AddressImportListener {
+	/**
+	 * 一批地址已写入地址库。
+	 * @param addresses 已写入的地址，地址ID已设置为数据库生成的ID。
+	 */
+	void addressesImported(List<AddressEntity> addresses);
+}
\ No newline at end of file
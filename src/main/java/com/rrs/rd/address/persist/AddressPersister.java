@@ -1,19 +1,26 @@
 package com.rrs.rd.address.persist;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 
+import com.rrs.rd.address.metrics.LatencyHistogram;
+import com.rrs.rd.address.metrics.Metrics;
 import com.rrs.rd.address.persist.dao.AddressDao;
 import com.rrs.rd.address.persist.dao.RegionDao;
 import com.rrs.rd.address.utils.LogUtil;
@@ -25,10 +32,18 @@ import com.rrs.rd.address.utils.StringUtil;
  */
 public class AddressPersister implements ApplicationContextAware {
 	private final static Logger LOG = LoggerFactory.getLogger(AddressPersister.class);
+	private final static LatencyHistogram TIME_DB = Metrics.histogram("import.db");
+	private final static AtomicLong IMPORTED = Metrics.counter("import.imported");
+	private final static AtomicLong DUPLICATED = Metrics.counter("import.duplicated");
 	
 	private static ApplicationContext context = null;
 	private AddressDao addressDao;
 	private RegionDao regionDao;
+	private AddressImportListener importListener = null;
+	/**
+	 * 只加载这些省份的区域，为空时加载全部省份。
+	 */
+	private Set<Long> regionProvinces = new TreeSet<Long>();
 	
 	private static Set<String> PROVINCE_LEVEL_CITIES = new HashSet<String>(8);
 	
@@ -37,6 +52,7 @@ public class AddressPersister implements ApplicationContextAware {
 	 * ，通过{@link RegionEntity#getChildren()}获取下一级列表
 	 */
 	private static RegionEntity REGION_TREE = null;
+	private static final long REGION_ROOT_ID = 1;
 	/**
 	 * 按区域ID缓存的全部区域对象。
 	 */
@@ -67,9 +83,6 @@ public class AddressPersister implements ApplicationContextAware {
 	public static AddressPersister instance(){
 		return context.getBean(AddressPersister.class);
 	}
-	public long timeDb=0, timeCache=0, timeInter=0, timeRegion=0, timeRmRed=0
-			, timeTown=0, timeRoad=0, timeBuild=0, timeRmSpec=0, timeBrc=0;
-	
 	/**
 	 * 批量导入地址到地址库中。
 	 * <p>
@@ -89,11 +102,13 @@ public class AddressPersister implements ApplicationContextAware {
 	 */
 	public int importAddresses(List<AddressEntity> addresses) throws IllegalStateException, RuntimeException {
 		int batchSize = 2000, count=0, imported = 0, duplicate = 0;
+		long timeDb = 0;
 		List<AddressEntity> batch = new ArrayList<AddressEntity>(batchSize);
 		for(AddressEntity address : addresses){
 			try{
 				if(this.isDuplicatedAddress(address.getRawText())) {
 					duplicate++;
+					DUPLICATED.incrementAndGet();
 					continue;
 				}
 				
@@ -117,13 +132,16 @@ public class AddressPersister implements ApplicationContextAware {
 				
 				count++;
 				if(count % batchSize == 0) {
-					long dbStart = System.currentTimeMillis();
-					imported += this.addressDao.batchCreate(batch);
+					long dbStart = System.nanoTime();
+					int created = this.addressDao.batchCreate(batch);
+					timeDb += TIME_DB.recordSince(dbStart) - dbStart;
+					imported += created;
+					IMPORTED.addAndGet(created);
+					this.fireImported(batch);
 					batch = new ArrayList<AddressEntity>(batchSize);
-					this.timeDb += System.currentTimeMillis() - dbStart;
 					
 					if(count % 40000 == 0 && LOG.isInfoEnabled())
-						LOG.info("[addr-imp] [perf] " + addresses.size() + " total: " + imported + " imported, " + duplicate + " duplicated, elapsed " + timeDb/1000.0);
+						LOG.info("[addr-imp] [perf] " + addresses.size() + " total: " + imported + " imported, " + duplicate + " duplicated, elapsed " + timeDb/1000000/1000.0);
 				}
 			}catch(Exception ex){
 				LOG.error("[addr-imp] [error] " + address.getRawText() + ": " + ex.getMessage(), ex);
@@ -131,18 +149,30 @@ public class AddressPersister implements ApplicationContextAware {
 		}
 		
 		if(!batch.isEmpty()){
-			long dbStart = System.currentTimeMillis();
-			imported += this.addressDao.batchCreate(batch);
+			long dbStart = System.nanoTime();
+			int created = this.addressDao.batchCreate(batch);
+			timeDb += TIME_DB.recordSince(dbStart) - dbStart;
+			imported += created;
+			IMPORTED.addAndGet(created);
+			this.fireImported(batch);
 			batch = null;
-			this.timeDb += System.currentTimeMillis() - dbStart;
 		}
 		
 		if(LOG.isInfoEnabled())
-			LOG.info("[addr-imp] [perf] " + addresses.size() + " total: " + imported + " imported, " + duplicate + " duplicated, elapsed " + timeDb/1000.0);
+			LOG.info("[addr-imp] [perf] " + addresses.size() + " total: " + imported + " imported, " + duplicate + " duplicated, elapsed " + timeDb/1000000/1000.0);
 		
 		return imported;
 	}
 	
+	private void fireImported(List<AddressEntity> batch){
+		if(this.importListener==null) return;
+		try{
+			this.importListener.addressesImported(batch);
+		}catch(Exception ex){
+			LOG.error("[addr-imp] [error] Error in notifying import listener: " + ex.getMessage(), ex);
+		}
+	}
+	
 	public AddressEntity getAddress(int id){
 		return this.addressDao.get(id);
 	}
@@ -158,6 +188,48 @@ public class AddressPersister implements ApplicationContextAware {
 		return REGION_CACHE.get(id);
 	}
 	
+	/**
+	 * 使用已加载的区域树（例如从本地快照读取）初始化区域缓存，不再从数据库加载。
+	 * @param root 中国国家区域对象，下级区域已通过{@link RegionEntity#getChildren()}建立树状结构。
+	 * @return 区域已经加载过时不做任何处理，返回false。
+	 */
+	public synchronized boolean initRegions(RegionEntity root){
+		if(REGION_LOADED || root==null) return false;
+		HashMap<Long, RegionEntity> cache = new HashMap<Long, RegionEntity>();
+		cacheRegions(root, cache);
+		REGION_TREE = root;
+		REGION_CACHE = cache;
+		REGION_LOADED = true;
+		return true;
+	}
+	private void cacheRegions(RegionEntity region, Map<Long, RegionEntity> cache){
+		cache.put(region.getId(), region);
+		if(region.getChildren()==null) return;
+		for(RegionEntity child : region.getChildren())
+			cacheRegions(child, cache);
+	}
+	/**
+	 * 区域是否已经加载。
+	 * @return
+	 */
+	public boolean isRegionLoaded(){
+		return REGION_LOADED;
+	}
+	/**
+	 * 只加载的省份区域ID，参考{@link #setRegionProvinces(String)}。
+	 * @return 已排序，为空时加载全部省份。
+	 */
+	public Set<Long> getRegionProvinces(){
+		return Collections.unmodifiableSet(this.regionProvinces);
+	}
+	/**
+	 * 统计数据库中行政区域表的水位，参考{@link RegionWatermark}。
+	 * @return
+	 */
+	public RegionWatermark regionWatermark(){
+		return this.regionDao.watermark();
+	}
+	
 	public void createRegion(RegionEntity region){
 		this.regionDao.create(region);
 	}
@@ -211,6 +283,25 @@ public class AddressPersister implements ApplicationContextAware {
 		return this.addressDao.find(provinceId, cityId, countyId);
 	}
 	
+	/**
+	 * 逐条读取地址，不在内存中持有全部地址，用于生成缓存文件等需要读取大量地址的场景。
+	 * @param provinceId
+	 * @param cityId
+	 * @param countyId 为0时读取城市下全部地址。
+	 * @param handler 每读取一条地址回调一次，在当前线程中执行。
+	 */
+	public void scanAddresses(long provinceId, long cityId, long countyId, ResultHandler<AddressEntity> handler){
+		this.addressDao.scan(provinceId, cityId, countyId, handler);
+	}
+	
+	/**
+	 * 按区县统计最大地址ID和地址数量，用于增量生成缓存文件。
+	 * @return
+	 */
+	public List<PartitionWatermark> loadWatermarks(){
+		return this.addressDao.watermarks();
+	}
+	
 	public boolean isDuplicatedAddress(String address){
 		this.checkAddressIndexByHash();
 		//检查地址是否重复
@@ -244,37 +335,75 @@ public class AddressPersister implements ApplicationContextAware {
 	
 	/**
 	 * 加载全部区域列表，按照行政区域划分构建树状结构关系。
+	 * <p>
+	 * 一次流式查询读取全部区域，结果按上级ID排序，同一上级的下级区域连续出现，按上级ID分组之后从根节点开始在内存中构建树状结构，
+	 * 不再按每个上级区域逐个查询下级区域。设置了{@link #setRegionProvinces(String)}时只保留指定省份。
+	 * </p>
+	 * @throws IllegalStateException 根区域不存在。
 	 */
 	private synchronized void loadRegions(){
 		if(REGION_LOADED) return;
 		Date start = new Date();
 		
-		REGION_TREE = this.regionDao.findRoot();
-		REGION_CACHE = new HashMap<Long, RegionEntity>();
-		REGION_CACHE.put(REGION_TREE.getId(), REGION_TREE);
-		this.loadRegionChildren(REGION_TREE);
+		final Map<Long, List<RegionEntity>> children = new HashMap<Long, List<RegionEntity>>();
+		final RegionEntity[] root = new RegionEntity[1];
+		this.regionDao.scanAll(new ResultHandler<RegionEntity>() {
+			private List<RegionEntity> siblings = null;
+			@Override
+			public void handleResult(ResultContext<? extends RegionEntity> resultContext) {
+				RegionEntity region = resultContext.getResultObject();
+				if(region.getId()==REGION_ROOT_ID) {
+					root[0] = region;
+					return;
+				}
+				if(siblings==null || siblings.get(0).getParentId()!=region.getParentId()){
+					siblings = children.get(region.getParentId());
+					if(siblings==null){
+						siblings = new ArrayList<RegionEntity>();
+						children.put(region.getParentId(), siblings);
+					}
+				}
+				siblings.add(region);
+			}
+		});
+		if(root[0]==null)
+			throw new IllegalStateException("[addr] [error] Root region " + REGION_ROOT_ID + " not found");
+		
+		HashMap<Long, RegionEntity> cache = new HashMap<Long, RegionEntity>();
+		cache.put(root[0].getId(), root[0]);
+		List<RegionEntity> provinces = children.remove(root[0].getId());
+		if(provinces!=null && !this.regionProvinces.isEmpty()){
+			List<RegionEntity> selected = new ArrayList<RegionEntity>(this.regionProvinces.size());
+			for(RegionEntity province : provinces)
+				if(this.regionProvinces.contains(province.getId())) selected.add(province);
+			provinces = selected;
+		}
+		if(provinces!=null && !provinces.isEmpty()){
+			root[0].setChildren(provinces);
+			for(RegionEntity province : provinces) this.buildRegionTree(province, children, cache);
+		}
+		REGION_TREE = root[0];
+		REGION_CACHE = cache;
 		REGION_LOADED = true;
 		
 		Date end = new Date();
 		if(LOG.isInfoEnabled())
-			LOG.info("[addr] [perf] Region tree loaded, [" + LogUtil.format(start) + " -> " 
+			LOG.info("[addr] [perf] Region tree loaded, " + cache.size() + " regions" 
+				+ (this.regionProvinces.isEmpty() ? "" : " of provinces " + this.regionProvinces) + ", [" + LogUtil.format(start) + " -> " 
 				+ LogUtil.format(end) + "], elapsed " + (end.getTime() - start.getTime())/1000.0 + "s");
 	}
 	
-	private void loadRegionChildren(RegionEntity parent){
+	private void buildRegionTree(RegionEntity parent, Map<Long, List<RegionEntity>> children, Map<Long, RegionEntity> cache){
+		cache.put(parent.getId(), parent);
 		//已经到最底层，结束
-		if(parent==null || parent.getType()==RegionType.Street || parent.getType()==RegionType.Village 
+		if(parent.getType()==RegionType.Street || parent.getType()==RegionType.Village 
 				|| parent.getType()==RegionType.PlatformL4 || parent.getType()==RegionType.Town) 
 			return;
-		//递归加载下一级
-		List<RegionEntity> children = this.regionDao.findByParent(parent.getId());
-		if(children!=null && children.size()>0){
-			parent.setChildren(children);
-			for(RegionEntity child : children) {
-				REGION_CACHE.put(child.getId(), child);
-				this.loadRegionChildren(child);
-			}
-		}
+		List<RegionEntity> list = children.remove(parent.getId());
+		if(list==null) return;
+		parent.setChildren(list);
+		for(RegionEntity child : list)
+			this.buildRegionTree(child, children, cache);
 	}
 	
 	//***************************************************************************************
@@ -283,9 +412,34 @@ public class AddressPersister implements ApplicationContextAware {
 	public void setAddressDao(AddressDao dao){
 		this.addressDao = dao;
 	}
+	/**
+	 * 地址导入监听器，地址写入地址库之后通知，用于使新导入的地址立即可以被搜索到。
+	 * @param value
+	 */
+	public void setImportListener(AddressImportListener value){
+		this.importListener = value;
+	}
 	public void setRegionDao(RegionDao dao){
 		this.regionDao = dao;
 	}
+	/**
+	 * 只加载指定省份的区域，用于只服务部分省份的区域节点，减少区域树和索引的内存占用。
+	 * @param value 省份区域ID，多个以逗号分隔，为空时加载全部省份。
+	 */
+	public void setRegionProvinces(String value){
+		Set<Long> provinces = new TreeSet<Long>();
+		if(value!=null){
+			for(String id : value.split(",")){
+				if(id.trim().isEmpty()) continue;
+				try{
+					provinces.add(Long.parseLong(id.trim()));
+				}catch(NumberFormatException ex){
+					throw new IllegalArgumentException("Invalid province id: " + id, ex);
+				}
+			}
+		}
+		this.regionProvinces = provinces;
+	}
 
 	@Override
 	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
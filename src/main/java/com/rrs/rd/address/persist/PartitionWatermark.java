@@ -0,0 +1,53 @@
+package com.rrs.rd.address.persist;
+
+/**
+ * 地址库中一个区县的地址水位：最大地址ID和地址数量，用于增量生成缓存文件时判断区县是否有变化。
+ *
+ * <p>地址只会追加，ID自增，新导入地址时最大ID变大；删除地址时数量变小。</p>
+ */
+public class PartitionWatermark {
+	private long provinceId;
+	private long cityId;
+	private long districtId;
+	private long maxId;
+	private long count;
+
+	public long getProvinceId() {
+		return provinceId;
+	}
+	public void setProvinceId(long value) {
+		this.provinceId = value;
+	}
+	public long getCityId() {
+		return cityId;
+	}
+	public void setCityId(long value) {
+		this.cityId = value;
+	}
+	public long getDistrictId() {
+		return districtId;
+	}
+	public void setDistrictId(long value) {
+		this.districtId = value;
+	}
+	/**
+	 * 最大地址ID。
+	 * @return
+	 */
+	public long getMaxId() {
+		return maxId;
+	}
+	public void setMaxId(long value) {
+		this.maxId = value;
+	}
+	/**
+	 * 地址数量。
+	 * @return
+	 */
+	public long getCount() {
+		return count;
+	}
+	public void setCount(long value) {
+		this.count = value;
+	}
+}
@@ -0,0 +1,66 @@
+package com.rrs.rd.address.persist;
+
+/**
+ * 行政区域表的水位：区域数量、最大区域ID，以及全部区域数据的校验和，用于判断本地快照是否与数据库一致。
+ *
+ * <p>区域的新增、删除会改变数量和最大ID，修改名称、别名、类型、上级区域会改变校验和。</p>
+ */
+public class RegionWatermark {
+	private long count;
+	private long maxId;
+	private long checksum;
+
+	public RegionWatermark(){
+	}
+	public RegionWatermark(long count, long maxId, long checksum){
+		this.count = count;
+		this.maxId = maxId;
+		this.checksum = checksum;
+	}
+
+	/**
+	 * 区域数量。
+	 * @return
+	 */
+	public long getCount() {
+		return count;
+	}
+	public void setCount(long value) {
+		this.count = value;
+	}
+	/**
+	 * 最大区域ID。
+	 * @return
+	 */
+	public long getMaxId() {
+		return maxId;
+	}
+	public void setMaxId(long value) {
+		this.maxId = value;
+	}
+	/**
+	 * 全部区域数据的校验和。
+	 * @return
+	 */
+	public long getChecksum() {
+		return checksum;
+	}
+	public void setChecksum(long value) {
+		this.checksum = value;
+	}
+
+	@Override
+	public boolean equals(Object obj){
+		if(obj==null || !RegionWatermark.class.equals(obj.getClass())) return false;
+		RegionWatermark other = (RegionWatermark)obj;
+		return this.count==other.count && this.maxId==other.maxId && this.checksum==other.checksum;
+	}
+	@Override
+	public int hashCode(){
+		return (int)(this.count ^ this.maxId ^ this.checksum);
+	}
+	@Override
+	public String toString(){
+		return "{count=" + this.count + ", maxId=" + this.maxId + ", checksum=" + this.checksum + "}";
+	}
+}
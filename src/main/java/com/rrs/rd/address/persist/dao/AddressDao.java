@@ -4,8 +4,10 @@ import java.util.List;
 
 import org.apache.ibatis.annotations.Flush;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.persist.PartitionWatermark;
 
 /**
  * 
@@ -15,8 +17,20 @@ import com.rrs.rd.address.persist.AddressEntity;
 public interface AddressDao {
 	List<AddressEntity> findAll();
 	int create(AddressEntity address);
-	int batchCreate(@Param("addresses") List<AddressEntity> addresses);
+	/**
+	 * 批量写入地址，写入后地址ID设置为数据库生成的ID。
+	 */
+	int batchCreate(List<AddressEntity> addresses);
 	List<AddressEntity> find(@Param("provinceId")long provinceId, @Param("cityId")long cityId,  @Param("countyId")long countyId);
+	/**
+	 * 与{@link #find(long, long, long)}相同，以流式结果集逐条读取，每读取一条地址回调一次handler，不在内存中持有全部地址。
+	 */
+	void scan(@Param("provinceId")long provinceId, @Param("cityId")long cityId,  @Param("countyId")long countyId
+			, ResultHandler<AddressEntity> handler);
+	/**
+	 * 按区县统计最大地址ID和地址数量。
+	 */
+	List<PartitionWatermark> watermarks();
 	AddressEntity get(int id);
 	int delete(int id);
 	
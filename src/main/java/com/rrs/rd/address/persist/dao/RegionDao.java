@@ -3,8 +3,10 @@ package com.rrs.rd.address.persist.dao;
 import java.util.List;
 
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionWatermark;
 
 /**
  * 
@@ -15,6 +17,15 @@ public interface RegionDao {
 	List<RegionEntity> findByParent(long pid);
 	RegionEntity findByParentAndName(@Param("pid") long pid, @Param("name") String name);
 	RegionEntity findRoot();
+	/**
+	 * 以流式结果集逐条读取全部区域，按上级ID、ID排序，同一上级的下级区域连续出现，每读取一个区域回调一次handler。
+	 */
+	void scanAll(ResultHandler<RegionEntity> handler);
+	/**
+	 * 统计行政区域表的水位，用于判断本地快照是否过期。
+	 * @return
+	 */
+	RegionWatermark watermark();
 	int create(RegionEntity entity);
 	int batchCreate(@Param("regions") List<RegionEntity> regions);
 	int update(RegionEntity entity);
@@ -0,0 +1,115 @@
+package com.rrs.rd.address.similarity;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * 缓存目录中记录各分区缓存文件生成时地址库水位的清单文件（manifest.properties），用于增量生成缓存文件。
+ *
+ * <p>
+ * 每个分区一行：<code>cacheKey=最大地址ID,地址数量</code>。生成缓存文件之前读取的水位与清单中记录的相同，
+ * 并且缓存文件存在时，说明分区没有新增或删除的地址，不需要重新生成。
+ * 分区的地址全部删除之后，分区的缓存文件和清单中的记录一起删除。
+ * 生成期间新导入的地址可能已经包含在缓存文件中，但清单记录的是生成之前的水位，下次增量生成时会再生成一次，不会遗漏。
+ * </p>
+ *
+ * <p>每次更新后立即写入文件（先写临时文件再替换），中断后重新执行时已完成的分区不会重复生成。{@link CacheManifest}是线程安全的。</p>
+ */
+public class CacheManifest {
+	public static final String FILE_NAME = "manifest.properties";
+
+	private File file;
+	private Properties entries = new Properties();
+
+	private CacheManifest(File file){
+		this.file = file;
+	}
+
+	/**
+	 * 读取缓存目录中的清单文件，文件不存在时返回空清单。
+	 * @param folder 缓存目录。
+	 * @return
+	 * @throws IOException
+	 */
+	public static CacheManifest load(File folder) throws IOException {
+		CacheManifest manifest = new CacheManifest(new File(folder, FILE_NAME));
+		if(!manifest.file.exists()) return manifest;
+		InputStream in = new FileInputStream(manifest.file);
+		try {
+			manifest.entries.load(in);
+		} finally {
+			in.close();
+		}
+		return manifest;
+	}
+
+	/**
+	 * 分区的缓存文件是否是按该水位生成的。
+	 * @param key 分区cacheKey。
+	 * @param maxId 最大地址ID。
+	 * @param count 地址数量。
+	 * @return
+	 */
+	public synchronized boolean isUpToDate(String key, long maxId, long count){
+		return (maxId + "," + count).equals(this.entries.getProperty(key));
+	}
+
+	/**
+	 * 记录分区缓存文件生成时的水位，并写入清单文件。
+	 * @param key 分区cacheKey。
+	 * @param maxId 最大地址ID。
+	 * @param count 地址数量。
+	 * @throws IOException
+	 */
+	public synchronized void update(String key, long maxId, long count) throws IOException {
+		this.entries.setProperty(key, maxId + "," + count);
+		this.store();
+	}
+
+	/**
+	 * 删除分区的记录，用于分区的地址全部删除、缓存文件已删除的情况，并写入清单文件。
+	 * @param key 分区cacheKey。
+	 * @return 清单中不存在该分区时返回false，不写入文件。
+	 * @throws IOException
+	 */
+	public synchronized boolean remove(String key) throws IOException {
+		if(this.entries.remove(key)==null) return false;
+		this.store();
+		return true;
+	}
+
+	/**
+	 * 清单中是否有分区的记录。
+	 * @param key 分区cacheKey。
+	 * @return
+	 */
+	public synchronized boolean contains(String key){
+		return this.entries.containsKey(key);
+	}
+
+	private void store() throws IOException {
+		File temp = new File(this.file.getAbsolutePath() + ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			this.entries.store(out, "cacheKey=maxId,count");
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * 清单中记录的分区数量。
+	 * @return
+	 */
+	public synchronized int size(){
+		return this.entries.size();
+	}
+}
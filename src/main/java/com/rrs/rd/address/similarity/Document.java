@@ -1,14 +1,49 @@
 package com.rrs.rd.address.similarity;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rrs.rd.address.TermType;
+import com.rrs.rd.address.metrics.Metrics;
 
 /**
  * 文档对象。
+ * 
+ * <p>
+ * 文档有两种形式：<br />
+ * 1. 对象形式：词条使用{@link Term}对象列表表示，由{@link SimilarityComputer#analyse(com.rrs.rd.address.persist.AddressEntity) analyse}、
+ * {@link SimilarityComputer#deserialize(String) deserialize}创建；<br />
+ * 2. 紧凑形式：由{@link #compact(TermDictionary, boolean)}创建，词条使用按ID升序排列的int[]表示，
+ * 并行保存词条的IDF、类型和在文档中的原始位置，不持有{@link Term}、{@link String}对象。
+ * 缓存在内存中的地址库文档都使用紧凑形式，计算相似度时按词条ID归并匹配，词条ID只在创建时使用的字典（即所在分区的字典）中有效，
+ * 参考{@link #getDictionary()}。需要展示词条时使用{@link #expand(TermDictionary)}还原成对象形式。
+ * </p>
+ * 
+ * <p>
+ * 紧凑形式的词条位置和类型编码在一个short中（位置 &lt;&lt; 4 | 类型），因此最多保存{@link #MAX_COMPACT_TERMS}（2047）个词条，
+ * 超出部分不参与相似度计算，{@link #expand(TermDictionary)}还原的文档也不包含这些词条。
+ * 发生截断时记录警告日志并累加计数器document.truncated；{@link MappedPartition}解码时同样只使用前2047个词条，
+ * 在写入分区文件时记录。
+ * </p>
  * @author Richie 刘志斌 yudi@sina.com
  */
 public class Document {
+	private final static Logger LOG = LoggerFactory.getLogger(Document.class);
+	private final static AtomicLong TRUNCATED = Metrics.counter("document.truncated");
+	
+	/**
+	 * 紧凑形式的文档最多保存的词条数量，词条位置和类型编码在一个short中：位置 &lt;&lt; 4 | 类型。
+	 */
+	static final int MAX_COMPACT_TERMS = Short.MAX_VALUE >> 4;
+	private static final TermType[] TERM_TYPES = TermType.values();
+	
 	private int id;
 	private List<Term> terms = null;
 	private Map<String, Term> termsMap = null;
@@ -18,6 +53,15 @@ public class Document {
 	private Term roadNum = null;
 	private int roadNumValue = 0;
 	
+	//紧凑形式
+	private int[] termIds = null;
+	private float[] termIdfs = null;
+	private short[] termSlots = null;
+	private int termCount = 0;
+	private int townId = TermDictionary.NONE, villageId = TermDictionary.NONE
+			, roadId = TermDictionary.NONE, roadNumId = TermDictionary.NONE;
+	private TermDictionary dictionary = null;
+	
 	public Document() {}
 	
 	public Document(int id){
@@ -116,6 +160,179 @@ public class Document {
 		}
 	}
 
+	/**
+	 * 转换成紧凑形式。
+	 * @param dict 词条字典。
+	 * @param register true: 字典中不存在的词条添加到字典中（地址库文档）；
+	 *   false: 不修改字典，不存在的词条ID为{@link TermDictionary#UNKNOWN}（查询文档）。
+	 * @return 新的紧凑形式文档，当前文档不会被修改。
+	 */
+	public Document compact(TermDictionary dict, boolean register){
+		Document doc = new Document(this.id);
+		int n = this.terms==null ? 0 : compactTermCount(this.id, this.terms.size());
+		//按 (词条ID, 位置) 排序
+		long[] keys = new long[n];
+		for(int i=0; i<n; i++){
+			int termId = termId(dict, this.terms.get(i), register);
+			keys[i] = ((long)termId << 32) | i;
+		}
+		Arrays.sort(keys);
+		doc.termIds = new int[n];
+		doc.termIdfs = new float[n];
+		doc.termSlots = new short[n];
+		doc.termCount = n;
+		for(int i=0; i<n; i++){
+			int pos = (int)keys[i];
+			Term term = this.terms.get(pos);
+			doc.termIds[i] = (int)(keys[i] >> 32);
+			doc.termIdfs[i] = (float)term.getIdf();
+			doc.termSlots[i] = (short)(pos << 4 | term.getType().ordinal());
+		}
+		doc.townId = termId(dict, this.town, register);
+		doc.villageId = termId(dict, this.village, register);
+		doc.roadId = termId(dict, this.road, register);
+		doc.roadNumId = termId(dict, this.roadNum, register);
+		doc.roadNumValue = this.roadNumValue;
+		doc.dictionary = dict;
+		return doc;
+	}
+	
+	/**
+	 * 紧凑形式保存的词条数量，超过{@link #MAX_COMPACT_TERMS}时记录警告日志和截断计数。
+	 * @param id 文档ID。
+	 * @param count 文档的词条数量。
+	 * @return
+	 */
+	static int compactTermCount(int id, int count){
+		if(count<=MAX_COMPACT_TERMS) return count;
+		TRUNCATED.incrementAndGet();
+		LOG.warn("[doc] [truncate] Document " + id + " has " + count + " terms, only the first " 
+				+ MAX_COMPACT_TERMS + " are used in similarity computing");
+		return MAX_COMPACT_TERMS;
+	}
+	
+	/**
+	 * 直接设置紧凑形式，用于从映射的分区文件中解码文档时重复使用同一个文档对象，参考{@link MappedPartition}。
+	 * <p>数组由调用方持有，长度可以大于词条数量，只使用前count个元素，词条必须已按 (词条ID, 位置) 排序。</p>
+	 */
+	void setCompact(TermDictionary dict, int id, int count, int[] ids, float[] idfs, short[] slots
+			, int townId, int villageId, int roadId, int roadNumId, int roadNumValue){
+		this.dictionary = dict;
+		this.id = id;
+		this.termCount = count;
+		this.termIds = ids;
+		this.termIdfs = idfs;
+		this.termSlots = slots;
+		this.townId = townId;
+		this.villageId = villageId;
+		this.roadId = roadId;
+		this.roadNumId = roadNumId;
+		this.roadNumValue = roadNumValue;
+	}
+	private static int termId(TermDictionary dict, Term term, boolean register){
+		if(term==null) return TermDictionary.NONE;
+		return register ? dict.idOf(term.getText()) : dict.find(term.getText());
+	}
+	
+	/**
+	 * 将紧凑形式的文档还原成对象形式，用于展示、explain等场景。
+	 * @param dict 词条字典。
+	 * @return 新的对象形式文档；当前文档不是紧凑形式时直接返回当前文档。
+	 */
+	public Document expand(TermDictionary dict){
+		if(!this.isCompact()) return this;
+		Document doc = new Document(this.id);
+		Term[] ordered = new Term[this.termCount];
+		for(int i=0; i<this.termCount; i++){
+			Term term = new Term(this.getTermType(i), dict.text(this.termIds[i]));
+			term.setIdf(this.termIdfs[i]);
+			ordered[this.getTermPosition(i)] = term;
+		}
+		List<Term> terms = new ArrayList<Term>(ordered.length);
+		for(Term term : ordered){
+			terms.add(term);
+			switch(term.getType()){
+				case Town: doc.setTown(term); break;
+				case Village: doc.setVillage(term); break;
+				case Road: doc.setRoad(term); break;
+				case RoadNum:
+					doc.setRoadNum(term);
+					term.setRef(doc.getRoad());
+					break;
+				default:
+			}
+		}
+		doc.setTerms(terms);
+		doc.setRoadNumValue(this.roadNumValue);
+		return doc;
+	}
+	
+	/**
+	 * 是否是紧凑形式。
+	 * @return
+	 */
+	public boolean isCompact(){
+		return this.termIds!=null;
+	}
+	/**
+	 * 紧凑形式的词条ID所属的字典，不是紧凑形式时为null。
+	 * @return
+	 */
+	public TermDictionary getDictionary(){
+		return this.dictionary;
+	}
+	/**
+	 * 紧凑形式的词条数量。
+	 * @return
+	 */
+	public int getTermCount(){
+		return this.termCount;
+	}
+	/**
+	 * 紧凑形式中第i个词条的ID，词条按ID升序排列。
+	 * @param i
+	 * @return
+	 */
+	public int getTermId(int i){
+		return this.termIds[i];
+	}
+	/**
+	 * 紧凑形式中第i个词条的IDF。
+	 * @param i
+	 * @return
+	 */
+	public float getTermIdf(int i){
+		return this.termIdfs[i];
+	}
+	/**
+	 * 紧凑形式中第i个词条的类型。
+	 * @param i
+	 * @return
+	 */
+	public TermType getTermType(int i){
+		return TERM_TYPES[this.termSlots[i] & 0xF];
+	}
+	/**
+	 * 紧凑形式中第i个词条在文档中的原始位置（对象形式中{@link #getTerms()}的下标）。
+	 * @param i
+	 * @return
+	 */
+	public int getTermPosition(int i){
+		return this.termSlots[i] >> 4;
+	}
+	public int getTownId(){
+		return this.townId;
+	}
+	public int getVillageId(){
+		return this.villageId;
+	}
+	public int getRoadId(){
+		return this.roadId;
+	}
+	public int getRoadNumId(){
+		return this.roadNumId;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
@@ -0,0 +1,253 @@
+package com.rrs.rd.address.similarity;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个分区（区县）的地址库文档及其衍生数据。
+ *
+ * <p>
+ * 分区由{@link SimilarityComputer#buildCacheKey(com.rrs.rd.address.persist.AddressEntity) cacheKey}标识，
+ * 包含分区的词条字典、紧凑形式的全部文档、全部词条的IDF值、倒排索引，在一次加载中同时创建，始终保持一致。
+ * 紧凑形式文档的词条ID只在分区的字典中有效，参考{@link TermDictionary}。
+ * </p>
+ *
+ * <p>
+ * 分区文档也可以直接使用内存映射的分区文件（{@link MappedPartition}），此时文档不在堆内存中，没有倒排索引，
+ * 计算相似度时通过{@link #getDocument(int, ScoringContext)}逐个解码。
+ * </p>
+ *
+ * <p>
+ * 新导入的地址在合并到分区文件之前保存在增量段中，查询时通过{@link #withDelta(Document[], int, TermDictionary)}得到包含增量段的分区视图，
+ * 增量段文档排在分区文档之后，不在倒排索引中，每次查询都计算相似度。
+ * </p>
+ *
+ * <p>{@link DocumentPartition}创建后只读，可以在多个线程之间共享。</p>
+ */
+public class DocumentPartition {
+	private String key;
+	private List<Document> docs;
+	private TermDictionary dictionary;
+	private MappedPartition mapped;
+	private Map<String, Double> idfs;
+	private InvertedIndex index;
+	private long loadTime;
+	private long estimatedBytes;
+	private int baseCount;
+	private Document[] delta = null;
+	private int deltaFrom = 0;
+	private volatile int maxDocId = -1;
+	private String fileVersion = null;
+
+	/**
+	 * @param key
+	 * @param docs 紧凑形式的分区文档。
+	 * @param dictionary 分区文档使用的词条字典。
+	 * @param idfs
+	 * @param index
+	 * @param loadTime
+	 */
+	public DocumentPartition(String key, List<Document> docs, TermDictionary dictionary
+			, Map<String, Double> idfs, InvertedIndex index, long loadTime){
+		this.key = key;
+		this.docs = docs;
+		this.dictionary = dictionary;
+		this.idfs = idfs;
+		this.index = index;
+		this.loadTime = loadTime;
+		this.baseCount = docs==null ? 0 : docs.size();
+		this.estimatedBytes = estimateBytes();
+	}
+
+	public DocumentPartition(String key, MappedPartition mapped, Map<String, Double> idfs, long loadTime){
+		this.key = key;
+		this.mapped = mapped;
+		this.docs = mapped.asList();
+		this.dictionary = mapped.getDictionary();
+		this.idfs = idfs;
+		this.loadTime = loadTime;
+		this.baseCount = mapped.getDocCount();
+		this.estimatedBytes = estimateBytes();
+	}
+
+	private DocumentPartition(DocumentPartition base, Document[] delta, int deltaFrom, TermDictionary dictionary){
+		this.key = base.key;
+		this.dictionary = dictionary;
+		this.mapped = base.mapped;
+		this.idfs = base.idfs;
+		this.index = base.index;
+		this.loadTime = base.loadTime;
+		this.estimatedBytes = base.estimatedBytes;
+		this.baseCount = base.baseCount;
+		this.maxDocId = base.maxDocId;
+		this.fileVersion = base.fileVersion;
+		this.delta = delta;
+		this.deltaFrom = deltaFrom;
+		final List<Document> baseDocs = base.docs;
+		this.docs = new AbstractList<Document>() {
+			@Override
+			public Document get(int index) {
+				if(index<baseCount) return baseDocs.get(index);
+				return DocumentPartition.this.delta[DocumentPartition.this.deltaFrom + index - baseCount];
+			}
+			@Override
+			public int size() {
+				return getDocCount();
+			}
+		};
+	}
+
+	/**
+	 * 创建包含增量段的分区视图，与当前分区共享文档、IDF、倒排索引。
+	 * @param delta 增量段的紧凑形式文档。
+	 * @param from 从该下标开始的文档属于视图，之前的文档已经包含在当前分区中。
+	 * @param dictionary 增量段文档使用的词条字典，当前分区字典的{@link TermDictionary#TermDictionary(TermDictionary) 扩展字典}。
+	 * @return
+	 */
+	public DocumentPartition withDelta(Document[] delta, int from, TermDictionary dictionary){
+		if(delta==null || from>=delta.length) return this;
+		return new DocumentPartition(this, delta, from, dictionary);
+	}
+	
+	private long estimateBytes(){
+		long bytes = 64;
+		if(this.dictionary!=null) bytes += this.dictionary.estimateBytes();
+		if(this.mapped!=null){
+			bytes += this.mapped.estimateBytes();
+		}else if(this.docs!=null){
+			for(Document doc : this.docs){
+				//Document对象 + 3个紧凑形式数组 + 列表引用
+				bytes += 80 + 3*16 + doc.getTermCount() * 10 + 8;
+			}
+		}
+		if(this.idfs!=null){
+			for(String key : this.idfs.keySet()){
+				//HashMap节点 + 桶 + Double + key字符串
+				bytes += 32 + 8 + 16 + 40 + key.length() * 2;
+			}
+		}
+		if(this.index!=null) bytes += this.index.estimateBytes();
+		return bytes;
+	}
+
+	/**
+	 * 分区标识，即cacheKey。
+	 * @return
+	 */
+	public String getKey(){
+		return this.key;
+	}
+
+	/**
+	 * 分区的词条字典，分区视图包含增量段时为增量段使用的扩展字典。
+	 * @return
+	 */
+	public TermDictionary getDictionary(){
+		return this.dictionary;
+	}
+
+	/**
+	 * 分区全部文档。
+	 * <p>使用映射的分区文件时为只读列表视图，每次访问文档时解码成新的对象，计算相似度时应使用{@link #getDocument(int, ScoringContext)}。</p>
+	 * @return
+	 */
+	public List<Document> getDocs(){
+		return this.docs;
+	}
+
+	/**
+	 * 分区文档数量。
+	 * @return
+	 */
+	public int getDocCount(){
+		return this.baseCount + this.getDeltaCount();
+	}
+
+	/**
+	 * 增量段文档数量，增量段文档的下标从{@link #getDocCount()} - {@link #getDeltaCount()}开始。
+	 * @return
+	 */
+	public int getDeltaCount(){
+		return this.delta==null ? 0 : this.delta.length - this.deltaFrom;
+	}
+
+	/**
+	 * 分区文档（不包括增量段）的最大文档ID，即地址ID，增量段中ID不大于该值的文档已经合并到分区中。
+	 * @return 没有文档时返回0。
+	 */
+	public int getMaxDocId(){
+		if(this.maxDocId<0){
+			int max = 0;
+			for(int i=0; i<this.baseCount; i++){
+				int id = this.mapped!=null ? this.mapped.getDocId(i) : this.docs.get(i).getId();
+				if(id>max) max = id;
+			}
+			this.maxDocId = max;
+		}
+		return this.maxDocId;
+	}
+
+	/**
+	 * 获取用于计算相似度的紧凑形式文档。
+	 * @param docIndex 文档下标。
+	 * @param context 当前线程的计算上下文，使用映射的分区文件时文档解码到上下文中重复使用的对象上，在下一次调用之前有效。
+	 * @return
+	 */
+	Document getDocument(int docIndex, ScoringContext context){
+		if(docIndex>=this.baseCount) return this.delta[this.deltaFrom + docIndex - this.baseCount];
+		if(this.mapped!=null) return this.mapped.decode(docIndex, context);
+		return this.docs.get(docIndex);
+	}
+
+	/**
+	 * 是否直接使用内存映射的分区文件。
+	 * @return
+	 */
+	public boolean isMapped(){
+		return this.mapped!=null;
+	}
+
+	/**
+	 * 加载分区时分区文件的版本，用于判断分区文件是否已经更新，参考{@link SimilarityComputer#reloadChangedPartitions()}。
+	 * @return 分区文件不存在时为null。
+	 */
+	public String getFileVersion(){
+		return this.fileVersion;
+	}
+	void setFileVersion(String value){
+		this.fileVersion = value;
+	}
+
+	/**
+	 * 分区全部词条的IDF值，未计算IDF时为null。
+	 * @return
+	 */
+	public Map<String, Double> getIdfs(){
+		return this.idfs;
+	}
+
+	/**
+	 * 分区倒排索引，未建立索引时为null。
+	 * @return
+	 */
+	public InvertedIndex getIndex(){
+		return this.index;
+	}
+
+	/**
+	 * 加载分区耗费的时间，单位毫秒，包括读取文件、计算IDF、建立倒排索引。
+	 * @return
+	 */
+	public long getLoadTime(){
+		return this.loadTime;
+	}
+
+	/**
+	 * 分区占用内存的估算值，单位字节，包括词条字典、文档、IDF、倒排索引，不包括映射的分区文件和增量段。
+	 * @return
+	 */
+	public long getEstimatedBytes(){
+		return this.estimatedBytes;
+	}
+}
@@ -0,0 +1,138 @@
+package com.rrs.rd.address.similarity;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 单个分区（区县）内文档的倒排索引：词条ID -&gt; 文档在分区文档列表中的下标（posting list）。
+ *
+ * <p>
+ * 相似度计算时，地址库文档只有包含查询文档中的某个词条，才可能得到大于0的相似度（参考
+ * {@link SimilarityComputer#computeDocSimilarity(Query, Document, int, boolean)}，词条按文本匹配，
+ * 即按{@link TermDictionary}的词条ID匹配）。
+ * 因此只需要对倒排索引中查询文档各词条posting list的并集计算相似度，其余文档的相似度必然为0。
+ * </p>
+ *
+ * <p>
+ * 词条ID按升序保存在int[]中，使用二分查找定位posting list，不需要为每个词条创建Map.Entry、Integer等对象。
+ * posting list中的下标按升序排列，{@link #candidates(Document)}返回的候选文档也按分区文档列表的原始顺序遍历，
+ * 保证与全量扫描的结果（包括相似度相同时的先后顺序）完全一致。
+ * </p>
+ *
+ * <p>{@link InvertedIndex}创建后只读，可以在多个线程之间共享。</p>
+ */
+public class InvertedIndex {
+	private static final int[] EMPTY_POSTINGS = new int[0];
+
+	private int docCount = 0;
+	private int[] termIds = null;
+	private int[][] postings = null;
+
+	private InvertedIndex(int docCount, int[] termIds, int[][] postings){
+		this.docCount = docCount;
+		this.termIds = termIds;
+		this.postings = postings;
+	}
+
+	/**
+	 * 为分区的全部文档建立倒排索引。
+	 * @param docs 分区内全部文档，必须是紧凑形式（参考{@link Document#compact(TermDictionary, boolean)}）。
+	 * @return
+	 */
+	public static InvertedIndex build(List<Document> docs){
+		if(docs==null || docs.isEmpty()) return new InvertedIndex(0, EMPTY_POSTINGS, new int[0][]);
+
+		//1. 收集 (词条ID, 文档下标) 并排序，排序后同一词条的文档下标连续且升序
+		int total = 0;
+		for(Document doc : docs) total += doc.getTermCount();
+		long[] pairs = new long[total];
+		int n = 0;
+		for(int i=0; i<docs.size(); i++){
+			Document doc = docs.get(i);
+			for(int j=0; j<doc.getTermCount(); j++)
+				pairs[n++] = ((long)doc.getTermId(j) << 32) | i;
+		}
+		Arrays.sort(pairs);
+
+		//2. 统计词条数量
+		int termCount = 0;
+		for(int i=0; i<n; i++)
+			if(i==0 || (int)(pairs[i] >> 32)!=(int)(pairs[i-1] >> 32)) termCount++;
+
+		//3. 填充posting list。道路、门牌号等结构化词条可能与Text词条同名，同一文档内的词条ID可能重复，需要去重
+		int[] termIds = new int[termCount];
+		int[][] postings = new int[termCount][];
+		int t = 0, start = 0;
+		while(start<n){
+			int termId = (int)(pairs[start] >> 32);
+			int end = start, distinct = 0;
+			while(end<n && (int)(pairs[end] >> 32)==termId){
+				if(end==start || pairs[end]!=pairs[end-1]) distinct++;
+				end++;
+			}
+			int[] list = new int[distinct];
+			int k = 0;
+			for(int i=start; i<end; i++)
+				if(i==start || pairs[i]!=pairs[i-1]) list[k++] = (int)pairs[i];
+			termIds[t] = termId;
+			postings[t++] = list;
+			start = end;
+		}
+
+		return new InvertedIndex(docs.size(), termIds, postings);
+	}
+
+	/**
+	 * 获取包含词条的全部文档下标。
+	 * @param termId 词条ID。
+	 * @return 升序排列的文档下标，不存在时返回空数组。
+	 */
+	public int[] postings(int termId){
+		if(termId<0) return EMPTY_POSTINGS;
+		int i = Arrays.binarySearch(this.termIds, termId);
+		return i<0 ? EMPTY_POSTINGS : this.postings[i];
+	}
+
+	/**
+	 * 获取与查询文档至少共享一个词条的候选文档。
+	 * @param queryDoc 紧凑形式的查询文档。
+	 * @return 候选文档下标集合，使用{@link BitSet#nextSetBit(int)}按原始顺序遍历。
+	 */
+	public BitSet candidates(Document queryDoc){
+		BitSet result = new BitSet(this.docCount);
+		if(queryDoc==null) return result;
+		for(int i=0; i<queryDoc.getTermCount(); i++){
+			if(i>0 && queryDoc.getTermId(i)==queryDoc.getTermId(i-1)) continue;
+			for(int docIndex : postings(queryDoc.getTermId(i)))
+				result.set(docIndex);
+		}
+		return result;
+	}
+
+	/**
+	 * 索引占用内存的估算值，单位字节。
+	 * @return
+	 */
+	public long estimateBytes(){
+		long bytes = 16 + 16 + 4L * this.termIds.length + 16 + 8L * this.postings.length;
+		for(int[] list : this.postings) bytes += 16 + 4L * list.length;
+		return bytes;
+	}
+
+	/**
+	 * 索引的文档数量。
+	 * @return
+	 */
+	public int getDocCount(){
+		return this.docCount;
+	}
+
+	/**
+	 * 索引的词条数量。
+	 * @return
+	 */
+	public int getTermCount(){
+		return this.termIds.length;
+	}
+}
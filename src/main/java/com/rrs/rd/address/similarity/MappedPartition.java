@@ -0,0 +1,161 @@
+package com.rrs.rd.address.similarity;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.rrs.rd.address.TermType;
+
+/**
+ * 直接在内存映射的分区文件（.vtb）上计算相似度的分区文档。
+ *
+ * <p>
+ * 文档不还原成{@link Document}/{@link Term}对象，计算相似度时按偏移量从映射的文件中读取文档的词条下标，
+ * 解码到{@link ScoringContext}中重复使用的紧凑形式文档上，参考{@link #decode(int, ScoringContext)}。
+ * 堆内存中只保留分区的词条字典和词条表对应的几个数组（词条ID、IDF、类型、门牌号数字），文档数据留在操作系统的页缓存中，
+ * 适合很大或者很少被查询的分区，同一台机器上的多个JVM映射同一个文件时共享同一份页缓存。
+ * </p>
+ *
+ * <p>{@link MappedPartition}创建后只读，可以在多个线程之间共享。</p>
+ */
+public class MappedPartition {
+	private static final TermType[] TERM_TYPES = TermType.values();
+
+	private PartitionFile file;
+	private TermDictionary dict;
+	private int[] termIds;
+	private float[] termIdfs;
+	private byte[] termTypes;
+	private int[] roadNumValues;
+
+	/**
+	 * @param file 映射的分区文件。
+	 * @param terms 分区文件的词条表，即{@link PartitionFile#readTerms()}的返回值。
+	 * @param dict 分区的词条字典，词条表中的词条按顺序注册到字典中。
+	 */
+	public MappedPartition(PartitionFile file, Term[] terms, TermDictionary dict){
+		this.file = file;
+		this.dict = dict;
+		this.termIds = new int[terms.length];
+		this.termIdfs = new float[terms.length];
+		this.termTypes = new byte[terms.length];
+		for(int i=0; i<terms.length; i++){
+			this.termIds[i] = dict.idOf(terms[i].getText());
+			this.termIdfs[i] = (float)terms[i].getIdf();
+			this.termTypes[i] = (byte)terms[i].getType().ordinal();
+		}
+		this.roadNumValues = file.readRoadNumValues();
+	}
+
+	/**
+	 * 分区的词条字典。
+	 * @return
+	 */
+	public TermDictionary getDictionary(){
+		return this.dict;
+	}
+
+	/**
+	 * 分区文档数量。
+	 * @return
+	 */
+	public int getDocCount(){
+		return this.file.getDocCount();
+	}
+
+	/**
+	 * 文档ID，不解码文档。
+	 * @param docIndex 文档下标。
+	 * @return
+	 */
+	public int getDocId(int docIndex){
+		return this.file.docId(docIndex);
+	}
+
+	/**
+	 * 将文档解码到上下文中重复使用的紧凑形式文档上，不分配任何对象（临时数组不够大时除外）。
+	 * <p>返回的文档在下一次调用之前有效，与{@link Document#compact(TermDictionary, boolean)}的结果一致。</p>
+	 * @param docIndex 文档下标。
+	 * @param context 当前线程的计算上下文。
+	 * @return
+	 */
+	Document decode(int docIndex, ScoringContext context){
+		int n = this.file.readDocTerms(docIndex, context.scratchTerms);
+		if(n>context.scratchTerms.length){
+			context.grow(n);
+			this.file.readDocTerms(docIndex, context.scratchTerms);
+		}
+		this.decode(docIndex, n, context.scratchTerms, context.scratchKeys
+				, context.scratchIds, context.scratchIdfs, context.scratchSlots, context.scratch);
+		return context.scratch;
+	}
+
+	/**
+	 * 将文档解码成新的紧凑形式文档，用于最终结果、explain等场景。
+	 * @param docIndex 文档下标。
+	 * @return
+	 */
+	public Document decode(int docIndex){
+		int[] terms = new int[this.file.readDocTerms(docIndex, new int[0])];
+		this.file.readDocTerms(docIndex, terms);
+		int n = Math.min(terms.length, Document.MAX_COMPACT_TERMS);
+		Document doc = new Document();
+		this.decode(docIndex, terms.length, terms, new long[n], new int[n], new float[n], new short[n], doc);
+		return doc;
+	}
+
+	private void decode(int docIndex, int count, int[] terms, long[] keys, int[] ids, float[] idfs, short[] slots, Document doc){
+		int townId = TermDictionary.NONE, villageId = TermDictionary.NONE
+				, roadId = TermDictionary.NONE, roadNumId = TermDictionary.NONE, roadNumValue = 0;
+		int n = Math.min(count, Document.MAX_COMPACT_TERMS);
+		for(int i=0; i<count; i++){
+			int t = terms[i];
+			if(i<n) keys[i] = ((long)this.termIds[t] << 32) | i;
+			switch(TERM_TYPES[this.termTypes[t]]){
+				case Town: townId = this.termIds[t]; break;
+				case Village: villageId = this.termIds[t]; break;
+				case Road: roadId = this.termIds[t]; break;
+				case RoadNum:
+					roadNumId = this.termIds[t];
+					roadNumValue = this.roadNumValues[t];
+					break;
+				default:
+			}
+		}
+		//按 (词条ID, 位置) 排序
+		Arrays.sort(keys, 0, n);
+		for(int i=0; i<n; i++){
+			int pos = (int)keys[i];
+			int t = terms[pos];
+			ids[i] = (int)(keys[i] >> 32);
+			idfs[i] = this.termIdfs[t];
+			slots[i] = (short)(pos << 4 | this.termTypes[t]);
+		}
+		doc.setCompact(this.dict, this.file.docId(docIndex), n, ids, idfs, slots, townId, villageId, roadId, roadNumId, roadNumValue);
+	}
+
+	/**
+	 * 全部文档的只读列表视图，每次访问时解码成新的紧凑形式文档。
+	 * @return
+	 */
+	public List<Document> asList(){
+		return new AbstractList<Document>() {
+			@Override
+			public Document get(int index) {
+				return decode(index);
+			}
+			@Override
+			public int size() {
+				return getDocCount();
+			}
+		};
+	}
+
+	/**
+	 * 占用堆内存的估算值，单位字节，只包括词条表对应的数组，不包括词条字典和映射的文件。
+	 * @return
+	 */
+	public long estimateBytes(){
+		return 64 + 4*16 + this.termIds.length * (4 + 4 + 1 + 4);
+	}
+}
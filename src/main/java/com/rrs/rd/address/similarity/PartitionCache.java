@@ -0,0 +1,258 @@
+package com.rrs.rd.address.similarity;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 内存中缓存的分区，按内存占用限制总量，超出限制时按LRU淘汰。
+ *
+ * <p>
+ * 加载：每个分区对应一个加载任务（{@link FutureTask}），同一分区的并发查询等待同一次加载，
+ * 不同分区的加载、查询互不阻塞。加载失败的任务会被移除，下次访问时重新加载。
+ * </p>
+ *
+ * <p>
+ * 淘汰：分区加载完成后按{@link DocumentPartition#getEstimatedBytes()}计入内存占用，超出{@link #setMaxBytes(long) 限制}时
+ * 从最久未访问的分区开始淘汰，直到内存占用回到限制以内。刚加载完成的分区不会被淘汰，单个分区超过限制时只保留该分区。
+ * 淘汰时分区的文档、IDF、倒排索引一起释放，再次访问时通过加载任务从文件重新加载。
+ * </p>
+ *
+ * <p>
+ * 替换：分区文件更新后，新分区在加载任务之外加载完成，再通过{@link #replace(String, DocumentPartition)}替换原分区，
+ * 替换前开始的查询继续使用原分区，替换后开始的查询使用新分区，替换期间的查询不需要等待加载。
+ * </p>
+ *
+ * <p>{@link PartitionCache}是线程安全的。</p>
+ */
+public class PartitionCache {
+	private final static Logger LOG = LoggerFactory.getLogger(PartitionCache.class);
+
+	private final ConcurrentHashMap<String, FutureTask<DocumentPartition>> futures
+		= new ConcurrentHashMap<String, FutureTask<DocumentPartition>>();
+	/**
+	 * 已加载完成的分区及其内存占用，按访问顺序排列，最久未访问的在最前面。
+	 */
+	private final LinkedHashMap<String, Long> lru = new LinkedHashMap<String, Long>(64, 0.75f, true);
+	private long totalBytes = 0;
+	private volatile long maxBytes = 0;
+
+	private final AtomicLong hits = new AtomicLong(0);
+	private final AtomicLong misses = new AtomicLong(0);
+	private final AtomicLong evictions = new AtomicLong(0);
+
+	/**
+	 * 获取分区，未加载时使用loader加载。
+	 * @param key 分区cacheKey。
+	 * @param loader 加载分区，在第一个访问该分区的线程中执行。
+	 * @return
+	 * @throws RuntimeException 加载失败或等待加载时线程被中断。
+	 */
+	public DocumentPartition get(String key, Callable<DocumentPartition> loader){
+		FutureTask<DocumentPartition> future = this.futures.get(key);
+		if(future==null){
+			FutureTask<DocumentPartition> created = new FutureTask<DocumentPartition>(loader);
+			future = this.futures.putIfAbsent(key, created);
+			if(future==null){
+				this.misses.incrementAndGet();
+				future = created;
+				future.run();
+				DocumentPartition partition = this.await(key, future);
+				this.admit(key, future, partition);
+				return partition;
+			}
+		}
+		this.hits.incrementAndGet();
+		DocumentPartition partition = this.await(key, future);
+		synchronized (this.lru) {
+			this.lru.get(key); //更新访问顺序
+		}
+		return partition;
+	}
+
+	/**
+	 * 获取已经加载完成的分区，不会触发加载，也不会等待正在进行的加载，不计入命中率统计。
+	 * @param key 分区cacheKey。
+	 * @return 分区未加载或正在加载时返回null。
+	 */
+	public DocumentPartition getIfLoaded(String key){
+		if(key==null) return null;
+		FutureTask<DocumentPartition> future = this.futures.get(key);
+		if(future==null || !future.isDone()) return null;
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * 移除分区。
+	 * @param key 分区cacheKey。
+	 */
+	public void remove(String key){
+		FutureTask<DocumentPartition> future = this.futures.remove(key);
+		if(future==null) return;
+		synchronized (this.lru) {
+			Long bytes = this.lru.remove(key);
+			if(bytes!=null) this.totalBytes -= bytes.longValue();
+		}
+	}
+
+	/**
+	 * 用已经加载完成的新分区替换原分区，参考{@link SimilarityComputer#reloadPartition(String)}。
+	 * <p>只替换已加载完成的分区，分区未加载、正在加载或替换期间被移除时不替换，不计入命中率统计，不触发淘汰。</p>
+	 * @param key 分区cacheKey。
+	 * @param partition 新分区。
+	 * @return 是否替换成功。
+	 */
+	public boolean replace(String key, final DocumentPartition partition){
+		FutureTask<DocumentPartition> current = this.futures.get(key);
+		if(current==null || !current.isDone()) return false;
+		FutureTask<DocumentPartition> loaded = new FutureTask<DocumentPartition>(new Callable<DocumentPartition>() {
+			@Override
+			public DocumentPartition call() throws Exception {
+				return partition;
+			}
+		});
+		loaded.run();
+		synchronized (this.lru) {
+			if(!this.futures.replace(key, current, loaded)) return false;
+			Long bytes = this.lru.put(key, partition.getEstimatedBytes());
+			if(bytes!=null) this.totalBytes -= bytes.longValue();
+			this.totalBytes += partition.getEstimatedBytes();
+		}
+		return true;
+	}
+
+	/**
+	 * 已加载分区的cacheKey，按访问顺序排列，最久未访问的在最前面。
+	 * @return
+	 */
+	public List<String> keys(){
+		synchronized (this.lru) {
+			return new ArrayList<String>(this.lru.keySet());
+		}
+	}
+
+	private DocumentPartition await(String key, FutureTask<DocumentPartition> future){
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while loading partition: " + key, ex);
+		} catch (ExecutionException ex) {
+			//加载失败时移除，下次访问重新加载
+			this.futures.remove(key, future);
+			LOG.error("[doc-vec] [cache] [error] Error in loading partition: " + key, ex.getCause());
+			throw new RuntimeException("Error in loading partition: " + key, ex.getCause());
+		}
+	}
+
+	private void admit(String key, FutureTask<DocumentPartition> future, DocumentPartition partition){
+		List<String> evicted = null;
+		synchronized (this.lru) {
+			if(this.futures.get(key)!=future) return; //加载期间已被移除
+			this.lru.put(key, partition.getEstimatedBytes());
+			this.totalBytes += partition.getEstimatedBytes();
+			if(this.maxBytes<=0 || this.totalBytes<=this.maxBytes) return;
+			evicted = new ArrayList<String>();
+			Iterator<Map.Entry<String, Long>> it = this.lru.entrySet().iterator();
+			while(this.totalBytes>this.maxBytes && it.hasNext()){
+				Map.Entry<String, Long> entry = it.next();
+				if(entry.getKey().equals(key)) continue;
+				it.remove();
+				this.totalBytes -= entry.getValue().longValue();
+				this.futures.remove(entry.getKey());
+				evicted.add(entry.getKey());
+			}
+		}
+		this.evictions.addAndGet(evicted.size());
+		if(LOG.isInfoEnabled() && !evicted.isEmpty())
+			LOG.info("[doc-vec] [cache] [evict] " + evicted + " evicted for " + key + ", "
+				+ (this.getTotalBytes() >> 20) + "MB of " + (this.maxBytes >> 20) + "MB used.");
+	}
+
+	/**
+	 * 设置内存占用限制，单位字节，小于等于0表示不限制。
+	 * <p>调小限制不会立即淘汰分区，在下一次加载分区时淘汰。</p>
+	 * @param value
+	 */
+	public void setMaxBytes(long value){
+		this.maxBytes = value;
+	}
+	public long getMaxBytes(){
+		return this.maxBytes;
+	}
+
+	/**
+	 * 已加载分区的内存占用估算值，单位字节。
+	 * @return
+	 */
+	public long getTotalBytes(){
+		synchronized (this.lru) {
+			return this.totalBytes;
+		}
+	}
+
+	/**
+	 * 已加载分区数量。
+	 * @return
+	 */
+	public int size(){
+		synchronized (this.lru) {
+			return this.lru.size();
+		}
+	}
+
+	/**
+	 * 命中次数，访问时分区已加载或正在加载。
+	 * @return
+	 */
+	public long getHitCount(){
+		return this.hits.get();
+	}
+
+	/**
+	 * 未命中次数，即加载分区的次数（包括淘汰后重新加载）。
+	 * @return
+	 */
+	public long getMissCount(){
+		return this.misses.get();
+	}
+
+	/**
+	 * 淘汰次数。
+	 * @return
+	 */
+	public long getEvictionCount(){
+		return this.evictions.get();
+	}
+
+	/**
+	 * 已加载分区的加载耗时。
+	 * @return key为cacheKey，value为加载耗时，单位毫秒。
+	 */
+	public Map<String, Long> getLoadTimes(){
+		Map<String, Long> times = new TreeMap<String, Long>();
+		for(String key : this.futures.keySet()){
+			DocumentPartition partition = this.getIfLoaded(key);
+			if(partition!=null) times.put(key, partition.getLoadTime());
+		}
+		return times;
+	}
+}
@@ -0,0 +1,358 @@
+package com.rrs.rd.address.similarity;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.rrs.rd.address.TermType;
+
+/**
+ * 分区文档的二进制缓存文件（.vtb），替代文本格式的.vt文件。
+ *
+ * <p>
+ * <strong>文件格式（版本2）</strong>，整数均为big-endian：<br />
+ * 1. 文件头，24字节：magic(int) | version(int) | 文档数(int) | 词条数(int) | 词条偏移表位置(int) | 文档偏移表位置(int)；<br />
+ * 2. 词条表，每个词条：类型(byte, {@link TermType#getValue()}) | 引用词条下标+1(varint，门牌号引用道路，0表示没有)
+ *    | IDF(double) | 门牌号数字(varint，仅门牌号词条) | 文本长度(varint) | 文本(UTF-8)；<br />
+ * 3. 词条偏移表：int[词条数]，每个词条在文件中的位置；<br />
+ * 4. 文档表，每个文档：文档ID(varint) | 词条数(varint) | 词条下标(varint) * 词条数，按文档中的原始顺序排列；<br />
+ * 5. 文档偏移表：int[文档数]，每个文档在文件中的位置。
+ * </p>
+ *
+ * <p>
+ * 词条表中的词条按 (类型, 文本, 引用词条) 去重，IDF为分区内预先计算的值，加载时不需要再统计逆文档引用情况。
+ * 偏移表支持按下标随机访问词条和文档，参考{@link #readDocTerms(int, int[])}。<br />
+ * 版本1的文档ID按与前一个文档的差值编码，无法随机访问，已不再支持，需要使用ConvertFileCache重新转换。
+ * </p>
+ *
+ * <p>
+ * 文件通过{@link FileChannel#map(java.nio.channels.FileChannel.MapMode, long, long)}只读映射到内存，
+ * {@link PartitionFile}创建后只读，读取方法使用各自的{@link ByteBuffer}视图，可以在多个线程之间共享。
+ * </p>
+ */
+public class PartitionFile {
+	/**
+	 * 文件扩展名。
+	 */
+	public static final String EXTENSION = ".vtb";
+	public static final int MAGIC = 0x56544231; //"VTB1"
+	public static final int VERSION = 2;
+	private static final int HEADER_SIZE = 24;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private ByteBuffer buffer;
+	private int docCount, termCount, termOffsetsPos, docOffsetsPos;
+
+	private PartitionFile(ByteBuffer buffer){
+		this.buffer = buffer;
+		if(buffer.capacity()<HEADER_SIZE || buffer.getInt(0)!=MAGIC)
+			throw new IllegalArgumentException("Not a partition file, invalid magic number");
+		int version = buffer.getInt(4);
+		if(version!=VERSION)
+			throw new IllegalArgumentException("Unsupported partition file version: " + version);
+		this.docCount = buffer.getInt(8);
+		this.termCount = buffer.getInt(12);
+		this.termOffsetsPos = buffer.getInt(16);
+		this.docOffsetsPos = buffer.getInt(20);
+		if(this.termOffsetsPos<HEADER_SIZE || this.termOffsetsPos + 4L*this.termCount > buffer.capacity()
+				|| this.docOffsetsPos<HEADER_SIZE || this.docOffsetsPos + 4L*this.docCount > buffer.capacity())
+			throw new IllegalArgumentException("Corrupted partition file, invalid offset tables");
+	}
+
+	/**
+	 * 只读方式映射分区文件。
+	 * @param file
+	 * @return
+	 * @throws IOException 文件读取失败。
+	 * @throws IllegalArgumentException 文件格式或版本不正确。
+	 */
+	public static PartitionFile open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new PartitionFile(buffer);
+		} finally {
+			raf.close(); //映射建立后关闭文件不影响映射的访问
+		}
+	}
+
+	/**
+	 * 基于内存中的数据读取分区，用于测试或数据来自网络等场景。
+	 * @param bytes
+	 * @return
+	 */
+	public static PartitionFile wrap(byte[] bytes){
+		return new PartitionFile(ByteBuffer.wrap(bytes));
+	}
+
+	public int getDocCount(){
+		return this.docCount;
+	}
+
+	public int getTermCount(){
+		return this.termCount;
+	}
+
+	/**
+	 * 读取词条表，还原成{@link Term}对象，门牌号词条的引用已设置，IDF为分区内计算的原始值。
+	 * @return 按词条下标排列。
+	 */
+	public Term[] readTerms(){
+		ByteBuffer buf = this.buffer.duplicate();
+		Term[] terms = new Term[this.termCount];
+		int[] refs = new int[this.termCount];
+		for(int i=0; i<this.termCount; i++){
+			buf.position(this.buffer.getInt(this.termOffsetsPos + 4*i));
+			TermType type = TermType.toEnum((char)(buf.get() & 0xFF));
+			refs[i] = readVarint(buf) - 1;
+			double idf = buf.getDouble();
+			if(TermType.RoadNum==type) readVarint(buf); //门牌号数字，参考readRoadNumValues()
+			int len = readVarint(buf);
+			byte[] bytes = new byte[len];
+			buf.get(bytes);
+			terms[i] = new Term(type, new String(bytes, UTF8));
+			terms[i].setIdf(idf);
+		}
+		for(int i=0; i<this.termCount; i++)
+			if(refs[i]>=0) terms[i].setRef(terms[refs[i]]);
+		return terms;
+	}
+
+	/**
+	 * 读取词条表中门牌号词条的门牌号数字。
+	 * @return 按词条下标排列，非门牌号词条为0。
+	 */
+	public int[] readRoadNumValues(){
+		ByteBuffer buf = this.buffer.duplicate();
+		int[] values = new int[this.termCount];
+		for(int i=0; i<this.termCount; i++){
+			buf.position(this.buffer.getInt(this.termOffsetsPos + 4*i));
+			TermType type = TermType.toEnum((char)(buf.get() & 0xFF));
+			if(TermType.RoadNum!=type) continue;
+			readVarint(buf);
+			buf.getDouble();
+			values[i] = readVarint(buf);
+		}
+		return values;
+	}
+
+	/**
+	 * 读取全部文档，还原成对象形式。相同的词条在文档之间共享同一个{@link Term}对象。
+	 * @return
+	 */
+	public List<Document> readDocuments(){
+		return this.readDocuments(this.readTerms());
+	}
+
+	/**
+	 * 读取全部文档，还原成对象形式。相同的词条在文档之间共享同一个{@link Term}对象。
+	 * @param terms {@link #readTerms()}的返回值。
+	 * @return
+	 */
+	public List<Document> readDocuments(Term[] terms){
+		int[] roadNumValues = this.readRoadNumValues();
+		List<Document> docs = new ArrayList<Document>(this.docCount);
+		if(this.docCount==0) return docs;
+		ByteBuffer buf = this.buffer.duplicate();
+		buf.position(this.buffer.getInt(this.docOffsetsPos));
+		for(int i=0; i<this.docCount; i++){
+			int docId = readVarint(buf);
+			Document doc = new Document(docId);
+			int n = readVarint(buf);
+			List<Term> docTerms = new ArrayList<Term>(n);
+			for(int j=0; j<n; j++){
+				int t = readVarint(buf);
+				Term term = terms[t];
+				docTerms.add(term);
+				switch(term.getType()){
+					case Town: doc.setTown(term); break;
+					case Village: doc.setVillage(term); break;
+					case Road: doc.setRoad(term); break;
+					case RoadNum:
+						doc.setRoadNum(term);
+						doc.setRoadNumValue(roadNumValues[t]);
+						break;
+					default:
+				}
+			}
+			doc.setTerms(docTerms);
+			docs.add(doc);
+		}
+		return docs;
+	}
+
+	/**
+	 * 文档ID。
+	 * @param docIndex 文档下标。
+	 * @return
+	 */
+	public int docId(int docIndex){
+		return varintAt(this.buffer, this.buffer.getInt(this.docOffsetsPos + 4*docIndex));
+	}
+
+	/**
+	 * 读取文档的词条下标，不创建任何对象，可以在多个线程中并发调用。
+	 * @param docIndex 文档下标。
+	 * @param termIndexes 按文档中的原始顺序写入词条下标，长度小于词条数时不写入。
+	 * @return 文档的词条数。
+	 */
+	public int readDocTerms(int docIndex, int[] termIndexes){
+		int pos = this.buffer.getInt(this.docOffsetsPos + 4*docIndex);
+		pos += varintSize(varintAt(this.buffer, pos)); //文档ID
+		int n = varintAt(this.buffer, pos);
+		pos += varintSize(n);
+		if(termIndexes.length<n) return n;
+		for(int i=0; i<n; i++){
+			int t = varintAt(this.buffer, pos);
+			pos += varintSize(t);
+			termIndexes[i] = t;
+		}
+		return n;
+	}
+
+	/**
+	 * 将文档写入分区文件。
+	 * <p>
+	 * 文档必须是对象形式，且词条的IDF已经设置为分区内计算的原始值（参考{@link Term#setIdf(double)}），
+	 * (类型, 文本, 引用词条) 相同的词条IDF必然相同，写入词条表时只保留一份。
+	 * </p>
+	 * @param file 目标文件，已存在时覆盖。
+	 * @param docs
+	 * @throws IOException
+	 */
+	public static void write(File file, List<Document> docs) throws IOException {
+		Map<String, Integer> termIndexes = new HashMap<String, Integer>();
+		List<Term> terms = new ArrayList<Term>();
+		List<Integer> roadNumValues = new ArrayList<Integer>();
+		int[][] docTerms = new int[docs.size()][];
+		for(int i=0; i<docs.size(); i++){
+			Document doc = docs.get(i);
+			int n = doc.getTerms()==null ? 0 : doc.getTerms().size();
+			//文件中保存全部词条，映射解码时只使用前面的词条，在这里记录截断
+			Document.compactTermCount(doc.getId(), n);
+			docTerms[i] = new int[n];
+			for(int j=0; j<n; j++)
+				docTerms[i][j] = termIndex(doc.getTerms().get(j), doc.getRoadNumValue(), termIndexes, terms, roadNumValues);
+		}
+
+		//先写入临时文件再替换，正在映射该文件的读取方不受影响（文件原地截断会导致访问映射时出错）
+		File temp = new File(file.getAbsolutePath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		int[] termOffsets = new int[terms.size()];
+		int[] docOffsets = new int[docs.size()];
+		int termOffsetsPos = 0, docOffsetsPos = 0;
+		try {
+			out.write(new byte[HEADER_SIZE]); //文件头最后写入
+			for(int i=0; i<terms.size(); i++){
+				termOffsets[i] = out.size();
+				Term term = terms.get(i);
+				out.writeByte(term.getType().getValue());
+				Integer ref = term.getRef()==null ? null : termIndexes.get(termKey(term.getRef()));
+				writeVarint(out, ref==null ? 0 : ref.intValue() + 1);
+				out.writeDouble(term.getRawIdf());
+				if(TermType.RoadNum==term.getType()) writeVarint(out, roadNumValues.get(i).intValue());
+				byte[] bytes = term.getText().getBytes(UTF8);
+				writeVarint(out, bytes.length);
+				out.write(bytes);
+			}
+			termOffsetsPos = out.size();
+			for(int offset : termOffsets) out.writeInt(offset);
+			for(int i=0; i<docs.size(); i++){
+				docOffsets[i] = out.size();
+				writeVarint(out, docs.get(i).getId());
+				writeVarint(out, docTerms[i].length);
+				for(int t : docTerms[i]) writeVarint(out, t);
+			}
+			docOffsetsPos = out.size();
+			for(int offset : docOffsets) out.writeInt(offset);
+			out.flush();
+		} finally {
+			out.close();
+		}
+		if(out.size()==Integer.MAX_VALUE) throw new IOException("Partition file too large: " + file.getAbsolutePath());
+
+		RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+		try {
+			raf.writeInt(MAGIC);
+			raf.writeInt(VERSION);
+			raf.writeInt(docs.size());
+			raf.writeInt(terms.size());
+			raf.writeInt(termOffsetsPos);
+			raf.writeInt(docOffsetsPos);
+		} finally {
+			raf.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static int termIndex(Term term, int roadNumValue, Map<String, Integer> termIndexes
+			, List<Term> terms, List<Integer> roadNumValues){
+		if(term.getRef()!=null) termIndex(term.getRef(), 0, termIndexes, terms, roadNumValues);
+		String key = termKey(term);
+		Integer index = termIndexes.get(key);
+		if(index!=null) return index.intValue();
+		index = terms.size();
+		terms.add(term);
+		roadNumValues.add(TermType.RoadNum==term.getType() ? roadNumValue : 0);
+		termIndexes.put(key, index);
+		return index.intValue();
+	}
+
+	private static String termKey(Term term){
+		StringBuilder sb = new StringBuilder();
+		sb.append(term.getType().getValue()).append(term.getText());
+		if(term.getRef()!=null) sb.append('\0').append(term.getRef().getType().getValue()).append(term.getRef().getText());
+		return sb.toString();
+	}
+
+	static int readVarint(ByteBuffer buf){
+		int value = 0, shift = 0;
+		while(true){
+			byte b = buf.get();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80)==0) return value;
+			shift += 7;
+		}
+	}
+
+	private static int varintAt(ByteBuffer buf, int pos){
+		int value = 0, shift = 0;
+		while(true){
+			byte b = buf.get(pos++);
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80)==0) return value;
+			shift += 7;
+		}
+	}
+
+	private static int varintSize(int value){
+		int size = 1;
+		while((value & ~0x7F)!=0){
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private static void writeVarint(DataOutputStream out, int value) throws IOException {
+		while((value & ~0x7F)!=0){
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+}
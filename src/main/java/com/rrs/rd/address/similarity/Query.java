@@ -1,11 +1,20 @@
 package com.rrs.rd.address.similarity;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import com.rrs.rd.address.persist.AddressEntity;
 
 public class Query {
+	private static final Comparator<SimilarDoccument> SIMILARITY_DESC = new Comparator<SimilarDoccument>() {
+		@Override
+		public int compare(SimilarDoccument a, SimilarDoccument b) {
+			return Double.compare(b.getSimilarity(), a.getSimilarity());
+		}
+	};
+	
 	private int topN;
 	private AddressEntity queryAddr;
 	private Document queryDoc;
@@ -32,29 +41,20 @@ public class Query {
 	}
 	
 	/**
-	 * 将相似文档按相似度从高到低排序。
+	 * 将相似文档按相似度从高到低排序，相似度相同时先添加的在前。
+	 * <p>与{@link TopNCollector}相同，按分区文档顺序添加时即为"分区中先出现的优先"。</p>
 	 */
 	public void sortSimilarDocs(){
 		if(this.simiDocs==null) return;
-		boolean exchanged = true;
-		int endIndex = this.simiDocs.size() - 1;
-		while(exchanged){
-			exchanged = false;
-			for(int i=1; i<=endIndex; i++){
-				if(this.simiDocs.get(i-1).getSimilarity() < this.simiDocs.get(i).getSimilarity()){
-					SimilarDoccument temp = this.simiDocs.get(i-1);
-					this.simiDocs.set(i-1, this.simiDocs.get(i));
-					this.simiDocs.set(i, temp);
-					exchanged = true;
-				}
-			}
-			endIndex--;
-		}
+		Collections.sort(this.simiDocs, SIMILARITY_DESC);
 	}
 	
 	/**
 	 * 添加一个相似文档。
-	 * <p>只保留相似度最高的top N条相似文档，相似度最低的从simiDocs中删除。</p>
+	 * <p>只保留相似度最高的top N条相似文档，相似度最低的从simiDocs中删除；相似度相同时先添加的优先，
+	 * simiDocs始终按添加顺序排列，参考{@link #sortSimilarDocs()}。</p>
+	 * <p>{@link SimilarityComputer#findSimilarAddress(String, int, boolean)}使用{@link TopNCollector}收集结果，
+	 * 该方法仅用于逐个文档调用{@link SimilarityComputer#computeDocSimilarity(Query, Document, int, boolean)}的场景。</p>
 	 * @param simiDoc
 	 * @return
 	 */
@@ -65,34 +65,49 @@ public class Query {
 			this.simiDocs.add(simiDoc);
 			return true;
 		}
-		int minSimilarityIndex = 0;
-		for(int i=1; i<this.topN; i++){
-			if(this.simiDocs.get(i).getSimilarity() < this.simiDocs.get(minSimilarityIndex).getSimilarity())
-				minSimilarityIndex = i;
-		}
+		int minSimilarityIndex = this.minSimilarityIndex();
 		if(this.simiDocs.get(minSimilarityIndex).getSimilarity() < simiDoc.getSimilarity()){
-			this.simiDocs.set(minSimilarityIndex, simiDoc);
+			this.simiDocs.remove(minSimilarityIndex);
+			this.simiDocs.add(simiDoc);
 			return true;
 		}
 		return false;
 	}
 	
+	/**
+	 * 添加一个相似文档，只有文档能够进入top N时才创建{@link SimilarDoccument}对象。
+	 * @param doc
+	 * @param similarity
+	 * @return
+	 */
 	public boolean addSimiDoc(Document doc, double similarity){
 		if(similarity<=0) return false;
-		if(this.simiDocs==null) {
-			this.simiDocs = new ArrayList<SimilarDoccument>(this.topN);
-			SimilarDoccument simiDoc = new SimilarDoccument(doc);
-			simiDoc.setSimilarity(similarity);
-			this.simiDocs.add(simiDoc);
-			return true;
-		}
-		if(this.simiDocs.get(0).getSimilarity()<similarity){
-			SimilarDoccument simiDoc = new SimilarDoccument(doc);
-			simiDoc.setSimilarity(similarity);
-			this.simiDocs.set(0, simiDoc);
-			return true;
+		if(this.simiDocs!=null && this.simiDocs.size()>=this.topN
+				&& this.simiDocs.get(this.minSimilarityIndex()).getSimilarity()>=similarity)
+			return false;
+		SimilarDoccument simiDoc = new SimilarDoccument(doc);
+		simiDoc.setSimilarity(similarity);
+		return this.addSimiDoc(simiDoc);
+	}
+	
+	/**
+	 * 最差的文档：相似度最低，相似度相同时为后添加的。
+	 */
+	private int minSimilarityIndex(){
+		int minSimilarityIndex = 0;
+		for(int i=1; i<this.simiDocs.size(); i++){
+			if(this.simiDocs.get(i).getSimilarity() <= this.simiDocs.get(minSimilarityIndex).getSimilarity())
+				minSimilarityIndex = i;
 		}
-		return false;
+		return minSimilarityIndex;
+	}
+	
+	/**
+	 * 设置相似文档列表，列表应当已经按相似度从高到低排序。
+	 * @param value
+	 */
+	public void setSimilarDocs(List<SimilarDoccument> value){
+		this.simiDocs = value;
 	}
 	
 	public List<SimilarDoccument> getSimilarDocs(){
@@ -0,0 +1,49 @@
+package com.rrs.rd.address.similarity;
+
+/**
+ * 批量搜索相似地址时单个地址的结果，参考{@link SimilarityComputer#findSimilarAddresses(java.util.List, int, boolean)}。
+ * <p>搜索成功时{@link #getQuery()}为搜索结果，失败时{@link #getError()}为失败原因，例如{@link NoHistoryDataException}。</p>
+ */
+public class QueryResult {
+	private String addressText;
+	private Query query;
+	private Throwable error;
+	
+	public QueryResult(String addressText){
+		this.addressText = addressText;
+	}
+	
+	/**
+	 * 查询地址原文。
+	 * @return
+	 */
+	public String getAddressText(){
+		return this.addressText;
+	}
+	
+	/**
+	 * 搜索结果，失败时为null。
+	 * @return
+	 */
+	public Query getQuery(){
+		return this.query;
+	}
+	public void setQuery(Query value){
+		this.query = value;
+	}
+	
+	/**
+	 * 失败原因，成功时为null。
+	 * @return
+	 */
+	public Throwable getError(){
+		return this.error;
+	}
+	public void setError(Throwable value){
+		this.error = value;
+	}
+	
+	public boolean isSuccess(){
+		return this.error==null && this.query!=null;
+	}
+}
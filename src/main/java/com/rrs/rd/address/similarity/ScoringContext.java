@@ -0,0 +1,79 @@
+package com.rrs.rd.address.similarity;
+
+/**
+ * 查询文档的相似度计算上下文。
+ *
+ * <p>
+ * 持有紧凑形式的查询文档（参考{@link Document#compact(TermDictionary, boolean)}），以及计算过程中使用的临时数组，
+ * 对地址库文档逐个计算相似度时不需要分配任何对象。
+ * </p>
+ *
+ * <p>{@link ScoringContext}非线程安全，多个线程计算同一个查询文档时，每个线程使用{@link #fork()}创建各自的实例。</p>
+ */
+class ScoringContext {
+	/**
+	 * 紧凑形式的查询文档。
+	 */
+	final Document query;
+	/**
+	 * 按词条在查询文档中的原始位置排列的词条下标，相似度计算按原始位置顺序累加，保证结果与对象形式一致。
+	 */
+	final int[] order;
+	/**
+	 * 每个查询词条匹配上的地址库文档词条下标，-1表示没有匹配。
+	 * 同一文本在地址库文档中出现多次时取位置最靠后的一个，与{@link Document#getTerm(String)}一致。
+	 */
+	final int[] matched;
+	/**
+	 * 每个查询词条匹配上的地址库文档中第一个Text类型词条的下标，-1表示没有匹配，用于计算词条稠密度。
+	 */
+	final int[] textMatched;
+	/**
+	 * 从映射的分区文件中解码地址库文档时重复使用的文档对象和临时数组，参考{@link MappedPartition#decode(int, ScoringContext)}。
+	 */
+	final Document scratch = new Document();
+	int[] scratchTerms, scratchIds;
+	long[] scratchKeys;
+	float[] scratchIdfs;
+	short[] scratchSlots;
+
+	ScoringContext(Document query){
+		this.query = query;
+		int n = query.getTermCount();
+		this.order = new int[n];
+		for(int i=0; i<n; i++)
+			this.order[query.getTermPosition(i)] = i;
+		this.matched = new int[n];
+		this.textMatched = new int[n];
+		this.grow(32);
+	}
+
+	private ScoringContext(Document query, int[] order){
+		this.query = query;
+		this.order = order;
+		this.matched = new int[order.length];
+		this.textMatched = new int[order.length];
+		this.grow(32);
+	}
+
+	/**
+	 * 将解码文档使用的临时数组扩大到至少能容纳size个词条。
+	 * @param size
+	 */
+	void grow(int size){
+		this.scratchTerms = new int[size];
+		size = Math.min(size, Document.MAX_COMPACT_TERMS);
+		this.scratchKeys = new long[size];
+		this.scratchIds = new int[size];
+		this.scratchIdfs = new float[size];
+		this.scratchSlots = new short[size];
+	}
+
+	/**
+	 * 为同一个查询文档创建新的上下文，共享只读部分，临时数组各自独立。
+	 * @return
+	 */
+	ScoringContext fork(){
+		return new ScoringContext(this.query, this.order);
+	}
+}
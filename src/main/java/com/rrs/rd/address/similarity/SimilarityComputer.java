@@ -8,17 +8,41 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.rrs.rd.address.TermType;
 import com.rrs.rd.address.interpret.AddressInterpreter;
+import com.rrs.rd.address.metrics.LatencyHistogram;
+import com.rrs.rd.address.metrics.Metrics;
 import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.persist.AddressImportListener;
 import com.rrs.rd.address.persist.RegionEntity;
 import com.rrs.rd.address.persist.RegionType;
 import com.rrs.rd.address.similarity.segment.SimpleSegmenter;
@@ -64,8 +88,20 @@ import com.rrs.rd.address.utils.StringUtil;
  * @author Richie 刘志斌 yudi@sina.com
  * 2016年9月21日
  */
-public class SimilarityComputer {
+public class SimilarityComputer implements AddressImportListener {
 	private final static Logger LOG = LoggerFactory.getLogger(SimilarityComputer.class);
+	/**
+	 * 查询、分区加载的耗时和计数，参考{@link Metrics}。
+	 * search.find为{@link #findSimilarAddress(String, int, boolean)}的总耗时，search.score为单个查询在分区中计算相似度的耗时，
+	 * search.scoreBatch为多查询计算一次遍历分区的耗时，partition.load为分区加载到内存的耗时，partition.read为不缓存时每次读取分区文件的耗时。
+	 */
+	private final static LatencyHistogram TIME_FIND = Metrics.histogram("search.find");
+	private final static LatencyHistogram TIME_SCORE = Metrics.histogram("search.score");
+	private final static LatencyHistogram TIME_SCORE_BATCH = Metrics.histogram("search.scoreBatch");
+	private final static LatencyHistogram TIME_LOAD = Metrics.histogram("partition.load");
+	private final static LatencyHistogram TIME_READ = Metrics.histogram("partition.read");
+	private final static AtomicLong QUERIES = Metrics.counter("search.queries");
+	private final static AtomicLong NO_HISTORY = Metrics.counter("search.noHistory");
 	
 	private static String DEFAULT_CACHE_FOLDER = "~/.vector_cache";
 	private static double BOOST_M = 1; //正常权重
@@ -75,16 +111,35 @@ public class SimilarityComputer {
 	private static double BOOST_XS = 0.25; //降权
 	
 	private static double MISSING_IDF = 4;
+	private static int MIN_PARALLEL_CHUNK = 1024; //并行计算相似度时每个区块的最小文档数
+	private static int MAX_QUERIES_PER_SCAN = 64; //多查询计算时一次遍历分区文档最多计算的查询数
 	
 	private AddressInterpreter interpreter = null;
 	private Segmenter segmenter = new SimpleSegmenter();
 	private List<String> defaultTokens = new ArrayList<String>(0);
 	private String cacheFolder;
 	private boolean cacheVectorsInMemory = false;
-	private static Map<String, List<Document>> VECTORS_CACHE = new HashMap<String, List<Document>>();
-	private static Map<String, Map<String, Double>> IDF_CACHE = new HashMap<String, Map<String, Double>>();
-	
-	public long timeBoost=0;
+	private boolean useInvertedIndex = true;
+	private boolean useMappedPartitions = false;
+	private boolean useDeltaSegments = false;
+	private int deltaMergeThreshold = 10000;
+	private ExecutorService mergeExecutor = null;
+	private ScheduledExecutorService reloadWatcher = null;
+	private int parallelThreshold = 0;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private ForkJoinPool scoringPool = null;
+	/**
+	 * 内存中缓存的分区，key为cacheKey，参考{@link PartitionCache}。
+	 */
+	private static PartitionCache PARTITIONS = new PartitionCache();
+	/**
+	 * 各分区尚未合并到分区文件的新导入地址。
+	 */
+	private static ConcurrentHashMap<String, DeltaSegment> DELTAS = new ConcurrentHashMap<String, DeltaSegment>();
+	/**
+	 * 同时只重新加载一个分区，避免同一分区重复加载、多个分区同时加载占用过多内存。
+	 */
+	private static final Object RELOAD_LOCK = new Object();
 	
 	/**
 	 * 分词，设置词条权重。
@@ -108,6 +163,17 @@ public class SimilarityComputer {
 	 * @return
 	 */
 	public Document analyse(AddressEntity addr){
+		DocumentPartition partition = PARTITIONS.getIfLoaded(this.buildCacheKey(addr));
+		return this.analyse(addr, partition==null ? null : partition.getIdfs());
+	}
+	
+	/**
+	 * 分词，设置词条权重。
+	 * @param addr
+	 * @param idfs 地址所在分区的IDF，为null时不设置词条的IDF。
+	 * @return
+	 */
+	private Document analyse(AddressEntity addr, Map<String, Double> idfs){
 		Document doc = new Document(addr.getId());
 		
 		//1. 分词。仅针对AddressEntity的text（地址解析后剩余文本）进行分词。
@@ -143,7 +209,6 @@ public class SimilarityComputer {
 		for(String token : tokens)
 			addTerm(token, TermType.Text, terms, null);
 		
-		Map<String, Double> idfs = IDF_CACHE.get(this.buildCacheKey(addr));
 		if(idfs!=null){
 			Double idf = null;
 			for(Term t : terms){
@@ -188,19 +253,20 @@ public class SimilarityComputer {
 	
 	/**
 	 * 计算词条加权权重boost值。
+	 * <p>查询文档、地址库文档均为紧凑形式，乡镇、村庄、道路按词条ID比较，与按文本比较的结果一致。</p>
 	 * @param forDoc true:为地址库文档词条计算boost；false:为查询文档词条计算boost。
 	 * @param qdoc 查询文档。
-	 * @param qterm 查询文档词条。
+	 * @param qterm 查询文档词条下标。
 	 * @param ddoc 地址库文档。
-	 * @param dterm 地址库文档词条。
+	 * @param dterm 地址库文档词条下标。
 	 * @return
 	 */
-	private double getBoostValue(boolean forDoc, Document qdoc, Term qterm, Document ddoc, Term dterm){
-		//forDoc==true, 为地址库文档计算boost，qdoc, qterm, ddoc, dterm肯定不为null；
-		//forDoc==false, 为查询文档计算boost，qdoc, qterm, ddoc肯定不为null, dterm肯定是null；
+	private double getBoostValue(boolean forDoc, Document qdoc, int qterm, Document ddoc, int dterm){
+		//forDoc==true, 为地址库文档计算boost，qterm, dterm肯定有效；
+		//forDoc==false, 为查询文档计算boost，qterm肯定有效, dterm肯定是-1；
 		
 		double value = BOOST_M;
-		TermType type = forDoc ? dterm.getType() : qterm.getType();
+		TermType type = forDoc ? ddoc.getTermType(dterm) : qdoc.getTermType(qterm);
 		switch(type){
 			case Province:
 			case City:
@@ -220,15 +286,16 @@ public class SimilarityComputer {
 					//查询文档和地址库文档都有乡镇，为乡镇加权。注意：存在乡镇相同、不同两种情况。
 					//  乡镇相同：查询文档和地址库文档都加权BOOST_L，提高相似度
 					//  乡镇不同：只有查询文档的词条加权BOOST_L，地址库文档的词条因无法匹配不会进入该函数。结果是拉开相似度的差异
-					if(qdoc.getTown()!=null && ddoc.getTown()!=null) value = BOOST_L;
+					if(qdoc.getTownId()!=TermDictionary.NONE && ddoc.getTownId()!=TermDictionary.NONE) value = BOOST_L;
 				}else{ //村庄
 					//查询文档和地址库文档都有乡镇且乡镇相同，且查询文档和地址库文档都有村庄时，为村庄加权
 					//与上述乡镇类似，存在村庄相同和不同两种情况
-					if(qdoc.getVillage()!=null && ddoc.getVillage()!=null && qdoc.getTown()!=null){
-						if(qdoc.getTown().equals(ddoc.getTown())){ //镇相同
-							if(qdoc.getVillage().equals(ddoc.getVillage())) value = BOOST_XL;
+					if(qdoc.getVillageId()!=TermDictionary.NONE && ddoc.getVillageId()!=TermDictionary.NONE 
+							&& qdoc.getTownId()!=TermDictionary.NONE){
+						if(qdoc.getTownId()==ddoc.getTownId()){ //镇相同
+							if(qdoc.getVillageId()==ddoc.getVillageId()) value = BOOST_XL;
 							else value = BOOST_L;
-						}else if(ddoc.getTown()!=null) { //镇不同
+						}else if(ddoc.getTownId()!=TermDictionary.NONE) { //镇不同
 							if(!forDoc) value = BOOST_L;
 							else value = BOOST_S;
 						}
@@ -237,12 +304,12 @@ public class SimilarityComputer {
 				break;
 			case Road:
 			case RoadNum:
-				if(qdoc.getTown()==null || qdoc.getVillage()==null){ //有乡镇有村庄，不再考虑道路、门牌号的加权
+				if(qdoc.getTownId()==TermDictionary.NONE || qdoc.getVillageId()==TermDictionary.NONE){ //有乡镇有村庄，不再考虑道路、门牌号的加权
 					if(TermType.Road==type){ //道路
-						if(qdoc.getRoad()!=null && ddoc.getRoad()!=null) value = BOOST_L;
+						if(qdoc.getRoadId()!=TermDictionary.NONE && ddoc.getRoadId()!=TermDictionary.NONE) value = BOOST_L;
 					}else{ //门牌号。注意：查询文档和地址库文档的门牌号都会进入此处执行，这一点跟Road、Town、Village不同。
 						if(qdoc.getRoadNumValue()>0 && ddoc.getRoadNumValue()>0
-								&& qdoc.getRoad()!=null && qdoc.getRoad().equals(ddoc.getRoad())){
+								&& qdoc.getRoadId()!=TermDictionary.NONE && qdoc.getRoadId()==ddoc.getRoadId()){
 							if(qdoc.getRoadNumValue()==ddoc.getRoadNumValue()) value = 3;
 							else value = forDoc ? ( 1 / Math.sqrt(Math.sqrt( Math.abs(qdoc.getRoadNumValue() - ddoc.getRoadNumValue()) + 1 )) ) * BOOST_L : 3;
 						}
@@ -389,8 +456,228 @@ public class SimilarityComputer {
 	 * @return
 	 */
 	public Query findSimilarAddress(String addressText, int topN, boolean explain){
-		Query query = new Query(topN); 
+		long start = System.nanoTime();
+		AddressEntity queryAddr = interpretQuery(addressText);
+		//从文件缓存或内存缓存获取所有文档。
+		DocumentPartition partition = loadPartition(queryAddr);
+		Query query = search(queryAddr, partition, topN, explain, true);
+		TIME_FIND.recordSince(start);
+		
+		if(LOG.isInfoEnabled()){
+			LOG.info("[simi-addr] " + addressText);
+			if(query.getSimilarDocs()==null)
+				LOG.info("[simi-addr]    NONE");
+			else{
+				for(SimilarDoccument simiDoc : query.getSimilarDocs()){
+					LOG.info("[simi-addr]    " + simiDoc.getSimilarity() + ": " + simiDoc.getDocument().toString());
+				}
+			}
+		}
+		
+		return query;
+	}
+	
+	/**
+	 * 批量搜索相似地址。
+	 * <p>
+	 * 先并行解析全部地址，再按{@link #buildCacheKey(AddressEntity) cacheKey}分组，每个分区只加载一次，
+	 * 分区加载后并行计算该分区全部查询地址的相似度，然后再处理下一个分区，避免大批量查询时分区被反复加载、淘汰。
+	 * </p>
+	 * <p>
+	 * 单个地址的错误（地址为空、无法解析、{@link NoHistoryDataException}、分区加载失败等）记录在对应的{@link QueryResult}中，
+	 * 不影响其它地址。每个地址的结果与{@link #findSimilarAddress(String, int, boolean)}一致。
+	 * </p>
+	 * @param addressTexts 详细地址文本，开头部分必须包含省、市、区。数据量很大时由调用方分批调用。
+	 * @param topN 每个地址返回多少条最相似地址。
+	 * @param explain
+	 * @return 与addressTexts顺序一致的查询结果。
+	 */
+	public List<QueryResult> findSimilarAddresses(List<String> addressTexts, final int topN, final boolean explain){
+		if(addressTexts==null) return null;
+		long start = System.currentTimeMillis();
+		final int size = addressTexts.size();
+		final QueryResult[] results = new QueryResult[size];
+		final AddressEntity[] addresses = new AddressEntity[size];
+		int[] items = new int[size];
+		for(int i=0; i<size; i++){
+			results[i] = new QueryResult(addressTexts.get(i));
+			items[i] = i;
+		}
+		
+		//1. 并行解析地址
+		runBatch(results, items, items.length / (getScoringPool().getParallelism() * 4), new BatchStep() {
+			@Override
+			public void run(int[] items, int begin, int end) {
+				for(int i=begin; i<end; i++){
+					try{
+						addresses[items[i]] = interpretQuery(results[items[i]].getAddressText());
+					}catch(RuntimeException ex){
+						results[items[i]].setError(ex);
+					}
+				}
+			}
+		});
+		//区块执行失败时该区块的地址都记录了错误，已经解析的也不再搜索
+		for(int i=0; i<size; i++)
+			if(results[i].getError()!=null) addresses[i] = null;
+		
+		searchAddresses(results, addresses, topN, explain);
+		
+		if(LOG.isInfoEnabled()){
+			int failed = 0;
+			for(QueryResult result : results) if(!result.isSuccess()) failed++;
+			LOG.info("[simi-addr] [batch] " + size + " addresses, " + failed + " failed, elapsed " 
+				+ (System.currentTimeMillis() - start)/1000.0 + "s.");
+		}
+		return Arrays.asList(results);
+	}
+	
+	/**
+	 * 批量搜索已解析地址的相似地址，参考{@link #findSimilarAddresses(List, int, boolean)}。
+	 * <p>用于地址已经解析过的场景，例如离线匹配时先解析、按分区分桶，再逐个分区搜索。</p>
+	 * @param queryAddrs 解析后的查询地址，必须包含省、市、区，可以属于不同的分区。
+	 * @param topN 每个地址返回多少条最相似地址。
+	 * @param explain
+	 * @return 与queryAddrs顺序一致的查询结果，{@link QueryResult#getAddressText()}为地址原文。
+	 */
+	public List<QueryResult> searchAddresses(List<AddressEntity> queryAddrs, int topN, boolean explain){
+		if(queryAddrs==null) return null;
+		int size = queryAddrs.size();
+		QueryResult[] results = new QueryResult[size];
+		AddressEntity[] addresses = new AddressEntity[size];
+		for(int i=0; i<size; i++){
+			AddressEntity addr = queryAddrs.get(i);
+			results[i] = new QueryResult(addr==null ? null : addr.getRawText());
+			if(addr==null || !addr.hasProvince() || !addr.hasCity() || !addr.hasDistrict())
+				results[i].setError(new IllegalArgumentException("Invalid query address, province, city or county required!"));
+			else
+				addresses[i] = addr;
+		}
+		searchAddresses(results, addresses, topN, explain);
+		return Arrays.asList(results);
+	}
+	
+	private void searchAddresses(final QueryResult[] results, final AddressEntity[] addresses, final int topN, final boolean explain){
+		int size = addresses.length;
 		
+		//2. 按分区分组
+		Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+		for(int i=0; i<size; i++){
+			if(addresses[i]==null) continue;
+			String key = buildCacheKey(addresses[i]);
+			List<Integer> group = groups.get(key);
+			if(group==null){
+				group = new ArrayList<Integer>();
+				groups.put(key, group);
+			}
+			group.add(i);
+		}
+		
+		//3. 逐个分区加载，查询地址拆分成多组并行计算，每组一次遍历分区文档计算组内全部查询地址的相似度。
+		//   查询之间已经并行，单个查询不再拆分
+		for(List<Integer> group : groups.values()){
+			int[] groupItems = new int[group.size()];
+			for(int i=0; i<groupItems.length; i++) groupItems[i] = group.get(i);
+			final DocumentPartition partition;
+			try{
+				partition = loadPartition(addresses[groupItems[0]]);
+			}catch(RuntimeException ex){
+				for(int item : groupItems) results[item].setError(ex);
+				continue;
+			}
+			int parallelism = getScoringPool().getParallelism();
+			int chunkSize = Math.min(MAX_QUERIES_PER_SCAN, (groupItems.length + parallelism - 1) / parallelism);
+			runBatch(results, groupItems, chunkSize, new BatchStep() {
+				@Override
+				public void run(int[] items, int begin, int end) {
+					List<AddressEntity> queryAddrs = new ArrayList<AddressEntity>(end - begin);
+					for(int i=begin; i<end; i++) queryAddrs.add(addresses[items[i]]);
+					try{
+						List<Query> queries = search(queryAddrs, partition, topN, explain);
+						for(int i=begin; i<end; i++) results[items[i]].setQuery(queries.get(i - begin));
+					}catch(NoHistoryDataException ex){
+						//分区中没有地址，每个地址使用各自的错误信息，第一个地址的错误即ex
+						results[items[begin]].setError(ex);
+						for(int i=begin+1; i<end; i++){
+							try{
+								checkHistoryData(addresses[items[i]], partition);
+							}catch(RuntimeException e){
+								results[items[i]].setError(e);
+							}
+						}
+					}catch(RuntimeException ex){
+						for(int i=begin; i<end; i++) results[items[i]].setError(ex);
+					}
+				}
+			});
+		}
+	}
+	
+	/**
+	 * 批量查询中对一个区块的地址执行的步骤，错误由步骤自行记录到查询结果中。
+	 */
+	private interface BatchStep {
+		/**
+		 * @param items 地址下标。
+		 * @param begin 区块在items中的起始位置（包含）。
+		 * @param end 区块在items中的结束位置（不包含）。
+		 */
+		void run(int[] items, int begin, int end);
+	}
+	
+	/**
+	 * 将items拆分成多个区块，在{@link #getScoringPool() 计算线程池}中并行执行，全部完成后返回。
+	 * <p>
+	 * 步骤没有处理的异常（例如{@link Error}）记录到所在区块中还没有结果的每个地址上，批量查询不会遗漏任何地址的结果。
+	 * </p>
+	 * @param results 查询结果，items中的值为其下标。
+	 * @param items
+	 * @param chunkSize 每个区块的地址数量，小于1时按1处理。
+	 * @param step
+	 */
+	private void runBatch(QueryResult[] results, final int[] items, int chunkSize, final BatchStep step){
+		if(items.length==0) return;
+		ForkJoinPool pool = getScoringPool();
+		chunkSize = Math.max(1, chunkSize);
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(items.length / chunkSize + 1);
+		for(int from=0; from<items.length; from+=chunkSize){
+			final int begin = from, end = Math.min(items.length, from + chunkSize);
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					step.run(items, begin, end);
+					return null;
+				}
+			});
+		}
+		List<Future<Object>> futures = pool.invokeAll(tasks);
+		for(int i=0; i<futures.size(); i++){
+			try {
+				futures.get(i).get();
+			} catch (ExecutionException ex) {
+				int begin = i * chunkSize;
+				failUnfinished(results, items, begin, Math.min(items.length, begin + chunkSize), ex.getCause());
+			} catch (InterruptedException ex) {
+				//invokeAll返回时任务已经全部完成，不会发生
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	private static void failUnfinished(QueryResult[] results, int[] items, int begin, int end, Throwable error){
+		LOG.error("[simi-addr] [batch] " + (end - begin) + " addresses failed: " + error.getMessage(), error);
+		for(int i=begin; i<end; i++){
+			QueryResult result = results[items[i]];
+			if(result.getQuery()==null && result.getError()==null) result.setError(error);
+		}
+	}
+	
+	/**
+	 * 解析查询地址，必须包含省、市、区。
+	 * @param addressText
+	 * @return
+	 */
+	private AddressEntity interpretQuery(String addressText){
 		//解析地址
 		if(addressText==null || addressText.trim().isEmpty())
 			throw new IllegalArgumentException("Null or empty address text! Please provider a valid address.");
@@ -407,43 +694,269 @@ public class SimilarityComputer {
 					+ " << " + addressText);
 			throw new RuntimeException("Can't interpret address, invalid province, city or county name!");
 		}
+		return queryAddr;
+	}
+	
+	/**
+	 * 在分区中搜索查询地址的相似地址。
+	 * @param queryAddr 解析后的查询地址。
+	 * @param partition 查询地址所在分区。
+	 * @param topN
+	 * @param explain
+	 * @param parallel 待计算文档数量超过{@link #setParallelThreshold(int) 阈值}时是否拆分成多个区块并行计算。
+	 * @return
+	 */
+	private Query search(AddressEntity queryAddr, DocumentPartition partition, int topN, boolean explain, boolean parallel){
+		checkHistoryData(queryAddr, partition);
+		long start = System.nanoTime();
+		Query query = new Query(topN); 
+		
+		//对应地址库中每条地址计算相似度，并保留相似度最高的topN条地址
+		ScoringContext context = prepareQuery(query, queryAddr, partition);
+		BitSet candidates = candidates(context, partition);
+		int scoreCount = candidates==null ? partition.getDocCount() : candidates.cardinality();
+		TopNCollector collector = null;
+		if(parallel && parallelThreshold>0 && scoreCount>=parallelThreshold){
+			//待计算文档数量超过阈值，拆分成多个区块并行计算，每个区块使用各自的ScoringContext和TopNCollector，最后合并
+			int[] docIndexes = null;
+			if(candidates!=null){
+				docIndexes = new int[scoreCount];
+				for(int i=candidates.nextSetBit(0), n=0; i>=0; i=candidates.nextSetBit(i+1)) docIndexes[n++] = i;
+			}
+			int chunkSize = Math.max(MIN_PARALLEL_CHUNK, scoreCount / (getScoringPool().getParallelism() * 4));
+			collector = getScoringPool().invoke(new ScoringTask(context, partition, docIndexes, 0, scoreCount
+					, topN, chunkSize, new AtomicInteger(Integer.MAX_VALUE)));
+		}else{
+			collector = new TopNCollector(topN);
+			double similarity=0;
+			if(candidates!=null){
+				for(int i=candidates.nextSetBit(0); i>=0; i=candidates.nextSetBit(i+1)){
+					similarity = computeDocSimilarity(context, partition.getDocument(i, context), null);
+					collector.collect(i, similarity);
+					if(topN==1 && similarity==1) break;
+				}
+			}else{
+				for(int i=0; i<scoreCount; i++){
+					similarity = computeDocSimilarity(context, partition.getDocument(i, context), null);
+					collector.collect(i, similarity);
+					if(topN==1 && similarity==1) break;
+				}
+			}
+		}
 		
-		//从文件缓存或内存缓存获取所有文档。
-		List<Document> allDocs = loadDocunentsFromCache(queryAddr);
-		if(allDocs.isEmpty()) {
-			String message = queryAddr.getProvince().getName() + queryAddr.getCity().getName();
-			if(!(RegionType.CityLevelDistrict==queryAddr.getDistrict().getType()))
-				message = message + queryAddr.getDistrict().getName();
-			throw new NoHistoryDataException(message);
+		finishQuery(query, context, collector, partition, topN, explain);
+		TIME_SCORE.recordSince(start);
+		QUERIES.incrementAndGet();
+		return query;
+	}
+	
+	/**
+	 * 在同一个分区中搜索多个查询地址的相似地址，参考{@link #scoreQueries(ScoringContext[], BitSet[], DocumentPartition, int)}。
+	 * <p>每个地址的结果与{@link #findSimilarAddress(String, int, boolean)}一致，适合同一区县有大量查询地址的场景。</p>
+	 * @param queryAddrs 解析后的查询地址，必须属于同一个分区（{@link #buildCacheKey(AddressEntity) cacheKey}相同）。
+	 * @param topN 每个地址返回多少条最相似地址。
+	 * @param explain
+	 * @return 与queryAddrs顺序一致的查询结果。
+	 * @throws IllegalArgumentException 查询地址不属于同一个分区。
+	 * @throws NoHistoryDataException 分区中没有地址。
+	 */
+	public List<Query> searchPartition(List<AddressEntity> queryAddrs, int topN, boolean explain){
+		if(queryAddrs==null || queryAddrs.isEmpty()) return new ArrayList<Query>(0);
+		String key = buildCacheKey(queryAddrs.get(0));
+		for(AddressEntity queryAddr : queryAddrs){
+			if(key==null || !key.equals(buildCacheKey(queryAddr)))
+				throw new IllegalArgumentException("Query addresses must belong to the same partition: " + key);
 		}
+		return search(queryAddrs, loadPartition(queryAddrs.get(0)), topN, explain);
+	}
+	
+	private List<Query> search(List<AddressEntity> queryAddrs, DocumentPartition partition, int topN, boolean explain){
+		checkHistoryData(queryAddrs.get(0), partition);
+		long start = System.nanoTime();
+		int n = queryAddrs.size();
+		Query[] queries = new Query[n];
+		ScoringContext[] contexts = new ScoringContext[n];
+		BitSet[] candidates = new BitSet[n];
+		for(int q=0; q<n; q++){
+			queries[q] = new Query(topN);
+			contexts[q] = prepareQuery(queries[q], queryAddrs.get(q), partition);
+			candidates[q] = candidates(contexts[q], partition);
+		}
+		TopNCollector[] collectors = scoreQueries(contexts, candidates, partition, topN);
+		for(int q=0; q<n; q++)
+			finishQuery(queries[q], contexts[q], collectors[q], partition, topN, explain);
+		TIME_SCORE_BATCH.recordSince(start);
+		QUERIES.addAndGet(n);
+		return Arrays.asList(queries);
+	}
+	
+	/**
+	 * 多查询计算核心：顺序遍历一次分区文档，为多个查询文档计算相似度，每个查询使用各自的{@link TopNCollector}。
+	 * <p>
+	 * 每个地址库文档只读取一次（映射的分区文件只解码一次），趁文档数据还在CPU缓存中依次与各查询文档计算相似度，
+	 * 代替对分区文档的多次完整扫描。每个查询的结果与单独扫描一致：只为该查询的候选文档计算相似度，
+	 * topN为1时遇到相似度为1的文档后该查询不再计算。
+	 * </p>
+	 * @param contexts 各查询文档的计算上下文。
+	 * @param candidates 各查询文档的候选文档，为null时计算全部文档。
+	 * @param partition
+	 * @param topN
+	 * @return 与contexts顺序一致的结果。
+	 */
+	private TopNCollector[] scoreQueries(ScoringContext[] contexts, BitSet[] candidates, DocumentPartition partition, int topN){
+		int n = contexts.length, docCount = partition.getDocCount();
+		TopNCollector[] collectors = new TopNCollector[n];
+		for(int q=0; q<n; q++) collectors[q] = new TopNCollector(topN);
+		if(n==0) return collectors;
 		
-		//为词条计算特征值
-		Document queryDoc = analyse(queryAddr);
+		//全部查询候选文档的并集，只遍历至少一个查询需要计算的文档
+		BitSet docs = new BitSet(docCount);
+		for(BitSet c : candidates){
+			if(c==null){
+				docs.set(0, docCount);
+				break;
+			}
+			docs.or(c);
+		}
+		boolean[] finished = new boolean[n];
+		int active = n;
+		ScoringContext decoder = contexts[0].fork(); //仅用于解码映射的分区文件中的文档
+		for(int i=docs.nextSetBit(0); i>=0 && active>0; i=docs.nextSetBit(i+1)){
+			Document doc = partition.getDocument(i, decoder);
+			for(int q=0; q<n; q++){
+				if(finished[q] || (candidates[q]!=null && !candidates[q].get(i))) continue;
+				double similarity = computeDocSimilarity(contexts[q], doc, null);
+				collectors[q].collect(i, similarity);
+				if(topN==1 && similarity==1){
+					finished[q] = true;
+					active--;
+				}
+			}
+		}
+		return collectors;
+	}
+	
+	private void checkHistoryData(AddressEntity queryAddr, DocumentPartition partition){
+		if(partition.getDocCount()>0) return;
+		String message = queryAddr.getProvince().getName() + queryAddr.getCity().getName();
+		if(!(RegionType.CityLevelDistrict==queryAddr.getDistrict().getType()))
+			message = message + queryAddr.getDistrict().getName();
+		NO_HISTORY.incrementAndGet();
+		throw new NoHistoryDataException(message);
+	}
+	
+	/**
+	 * 为查询地址的词条计算特征值，创建查询文档的计算上下文。
+	 * @param query
+	 * @param queryAddr
+	 * @param partition
+	 * @return
+	 */
+	private ScoringContext prepareQuery(Query query, AddressEntity queryAddr, DocumentPartition partition){
+		Document queryDoc = analyse(queryAddr, partition.getIdfs());
 		query.setQueryAddr(queryAddr);
 		query.setQueryDoc(queryDoc);
-		
-		//对应地址库中每条地址计算相似度，并保留相似度最高的topN条地址
-		double similarity=0;
-		for(Document doc : allDocs){
-			similarity = computeDocSimilarity(query, doc, topN, explain);
-			if(topN==1 && similarity==1) break;
+		return new ScoringContext(queryDoc.compact(partition.getDictionary(), false));
+	}
+	
+	/**
+	 * 使用倒排索引时只对包含查询文档词条的候选文档计算相似度，其余文档的相似度必然为0。
+	 * @param context
+	 * @param partition
+	 * @return 未使用倒排索引时返回null，需要计算全部文档。
+	 */
+	private BitSet candidates(ScoringContext context, DocumentPartition partition){
+		InvertedIndex index = useInvertedIndex ? partition.getIndex() : null;
+		if(index==null) return null;
+		BitSet candidates = index.candidates(context.query);
+		//增量段文档不在倒排索引中，全部需要计算相似度
+		if(partition.getDeltaCount()>0)
+			candidates.set(partition.getDocCount() - partition.getDeltaCount(), partition.getDocCount());
+		if(LOG.isDebugEnabled())
+			LOG.debug("[simi-addr] [index] " + candidates.cardinality() + " candidates of " + partition.getDocCount() + " docs");
+		return candidates;
+	}
+	
+	/**
+	 * 仅为最终结果创建SimilarDoccument（按相似度从高到低排序，文档还原成对象形式），需要explain时重新计算一次以记录匹配词条。
+	 */
+	private void finishQuery(Query query, ScoringContext context, TopNCollector collector, DocumentPartition partition, int topN, boolean explain){
+		List<SimilarDoccument> simiDocs = collector.toSimilarDocs(partition.getDocs(), partition.getDictionary());
+		if(explain && topN>1){
+			int[] sortedDocs = collector.sortedDocs();
+			for(int i=0; i<simiDocs.size(); i++)
+				computeDocSimilarity(context, partition.getDocument(sortedDocs[i], context), simiDocs.get(i));
 		}
+		query.setSimilarDocs(simiDocs);
+	}
+	
+	/**
+	 * 并行计算相似度的任务，计算分区文档中一段连续区间（或候选文档下标数组中一段连续区间）的文档。
+	 * <p>
+	 * 区间超过chunkSize时拆分成两个子任务，否则使用{@link ScoringContext#fork()}得到的上下文和独立的{@link TopNCollector}计算，
+	 * 子任务的结果通过{@link TopNCollector#merge(TopNCollector)}合并，与单线程计算的结果一致。
+	 * </p>
+	 * <p>
+	 * topN为1时，相似度为1的文档中下标最小的即为最终结果：perfectDoc记录目前找到的相似度为1的最小下标，
+	 * 各区块遇到下标大于perfectDoc的文档时停止计算，与单线程计算时的提前结束效果一致。
+	 * </p>
+	 */
+	private class ScoringTask extends RecursiveTask<TopNCollector> {
+		private static final long serialVersionUID = 1L;
 		
-		//按相似度从高到低排序
-		if(topN>1) query.sortSimilarDocs();
+		private ScoringContext context;
+		private DocumentPartition partition;
+		private int[] docIndexes;
+		private int from, to, topN, chunkSize;
+		private AtomicInteger perfectDoc;
 		
-		if(LOG.isInfoEnabled()){
-			LOG.info("[simi-addr] " + addressText);
-			if(query.getSimilarDocs()==null)
-				LOG.info("[simi-addr]    NONE");
-			else{
-				for(SimilarDoccument simiDoc : query.getSimilarDocs()){
-					LOG.info("[simi-addr]    " + simiDoc.getSimilarity() + ": " + simiDoc.getDocument().toString());
+		ScoringTask(ScoringContext context, DocumentPartition partition, int[] docIndexes, int from, int to
+				, int topN, int chunkSize, AtomicInteger perfectDoc){
+			this.context = context;
+			this.partition = partition;
+			this.docIndexes = docIndexes;
+			this.from = from;
+			this.to = to;
+			this.topN = topN;
+			this.chunkSize = chunkSize;
+			this.perfectDoc = perfectDoc;
+		}
+		
+		@Override
+		protected TopNCollector compute() {
+			if(this.to - this.from > this.chunkSize){
+				int middle = (this.from + this.to) >>> 1;
+				ScoringTask left = new ScoringTask(this.context, this.partition, this.docIndexes, this.from, middle
+						, this.topN, this.chunkSize, this.perfectDoc);
+				ScoringTask right = new ScoringTask(this.context, this.partition, this.docIndexes, middle, this.to
+						, this.topN, this.chunkSize, this.perfectDoc);
+				right.fork();
+				TopNCollector collector = left.compute();
+				collector.merge(right.join());
+				return collector;
+			}
+			
+			ScoringContext local = this.context.fork();
+			TopNCollector collector = new TopNCollector(this.topN);
+			for(int i=this.from; i<this.to; i++){
+				int docIndex = this.docIndexes==null ? i : this.docIndexes[i];
+				if(this.topN==1 && docIndex>this.perfectDoc.get()) break;
+				double similarity = computeDocSimilarity(local, this.partition.getDocument(docIndex, local), null);
+				collector.collect(docIndex, similarity);
+				if(this.topN==1 && similarity==1){
+					int current = this.perfectDoc.get();
+					while(docIndex<current && !this.perfectDoc.compareAndSet(current, docIndex))
+						current = this.perfectDoc.get();
+					break;
 				}
 			}
+			return collector;
 		}
-		
-		return query;
+	}
+	
+	private synchronized ForkJoinPool getScoringPool(){
+		if(scoringPool==null) scoringPool = new ForkJoinPool(parallelism<=0 ? 1 : parallelism);
+		return scoringPool;
 	}
 	
 	/**
@@ -454,29 +967,76 @@ public class SimilarityComputer {
 	 * @return
 	 */
 	public double computeDocSimilarity(Query query, Document doc, int topN, boolean explain){
-		Term dterm = null;
+		//地址库文档为紧凑形式时使用其所在分区的字典，否则使用临时字典编码
+		TermDictionary dict = doc.isCompact() ? doc.getDictionary() : new TermDictionary();
+		Document ddoc = doc.isCompact() ? doc : doc.compact(dict, true);
+		ScoringContext context = new ScoringContext(query.getQueryDoc().compact(dict, false));
+		SimilarDoccument simiDoc = null;
+		if(explain && topN>1){
+			simiDoc = new SimilarDoccument(doc.expand(dict));
+		}
+		double similarity = computeDocSimilarity(context, ddoc, simiDoc);
+		if(similarity<=0) return similarity;
+		if(simiDoc!=null){
+			simiDoc.setSimilarity(similarity);
+			query.addSimiDoc(simiDoc);
+		}else query.addSimiDoc(doc, similarity);
+		return similarity;
+	}
+	
+	/**
+	 * 计算查询文档与地址库文档的相似度，除context中的临时数组外不修改任何状态。
+	 * <p>
+	 * 查询文档、地址库文档都是紧凑形式，词条按ID升序排列，通过一次归并完成词条匹配，
+	 * 然后按查询文档词条的原始顺序计算，计算过程与按文本逐个查找词条完全一致。
+	 * </p>
+	 * @param context 查询文档的计算上下文，同一时刻只能在一个线程中使用。
+	 * @param doc 紧凑形式的地址库文档。
+	 * @param explain 不为null时，将匹配上的词条及其计算过程记录到explain中，explain中的文档必须是doc的对象形式。
+	 * @return
+	 */
+	private double computeDocSimilarity(ScoringContext context, Document doc, SimilarDoccument explain){
+		Document queryDoc = context.query;
+		int[] matched = context.matched, textMatched = context.textMatched;
+		int qn = queryDoc.getTermCount(), dn = doc.getTermCount();
+		//=====================================================================
+		//0. 按词条ID归并，为每个查询词条找到匹配的地址库文档词条
+		int qi = 0, di = 0;
+		while(qi<qn){
+			int termId = queryDoc.getTermId(qi);
+			while(di<dn && doc.getTermId(di)<termId) di++;
+			if(termId<0 || di>=dn || doc.getTermId(di)!=termId){
+				matched[qi] = textMatched[qi] = -1;
+				qi++;
+				continue;
+			}
+			int end = di, firstText = -1;
+			for(; end<dn && doc.getTermId(end)==termId; end++)
+				if(firstText<0 && TermType.Text==doc.getTermType(end)) firstText = end;
+			for(; qi<qn && queryDoc.getTermId(qi)==termId; qi++){
+				matched[qi] = end - 1; //同一ID的词条按位置升序排列，最后一个即位置最靠后的词条
+				textMatched[qi] = firstText;
+			}
+			di = end;
+		}
+		
 		//=====================================================================
 		//计算text类型词条的稠密度、匹配率
 		//1. Text类型词条匹配情况
 		int qTextTermCount = 0; //查询文档Text类型词条数量
 		int dTextTermMatchCount = 0, matchStart = -1, matchEnd = -1; //地址库文档匹配上的Text词条数量
-		for(Term qterm : query.getQueryDoc().getTerms()){
-			if(!(TermType.Text==qterm.getType())) continue; //仅针对Text类型词条计算 词条稠密度、词条匹配率
+		for(int q : context.order){
+			if(!(TermType.Text==queryDoc.getTermType(q))) continue; //仅针对Text类型词条计算 词条稠密度、词条匹配率
 			qTextTermCount++;
-			for(int i=0; i< doc.getTerms().size(); i++){
-				Term term = doc.getTerms().get(i);
-				if(!(TermType.Text==term.getType())) continue; //仅针对Text类型词条计算 词条稠密度、词条匹配率
-				if(term.getText().equals(qterm.getText())){
-					dTextTermMatchCount++;
-					if(matchStart==-1) {
-						matchStart = matchEnd = i;
-						break;
-					}
-					if(i>matchEnd) matchEnd = i;
-					else if(i<matchStart) matchStart = i;
-					break;
-				}
+			if(textMatched[q]<0) continue;
+			int i = doc.getTermPosition(textMatched[q]);
+			dTextTermMatchCount++;
+			if(matchStart==-1) {
+				matchStart = matchEnd = i;
+				continue;
 			}
+			if(i>matchEnd) matchEnd = i;
+			else if(i<matchStart) matchStart = i;
 		}
 		//2. 计算稠密度、匹配率
 		double textTermDensity = 1, textTermCoord = 1;
@@ -497,42 +1057,39 @@ public class SimilarityComputer {
 		if(qTextTermCount>=2 && dTextTermMatchCount>=2) 
 			textTermDensity = Math.sqrt( dTextTermMatchCount * 1.0 / (matchEnd - matchStart + 1) ) * 0.5 + 0.5;
 		
-		SimilarDoccument simiDoc = null;
-		if(explain && topN>1){
-			simiDoc = new SimilarDoccument(doc);
-		}
-		
 		//=====================================================================
 		//计算TF-IDF和相似度所需的中间值
 		double sumQD=0, sumQQ=0, sumDD=0, qtfidf=0, dtfidf=0;
 		double dboost = 0, qboost = 0; //加权值
-		for(Term qterm : query.getQueryDoc().getTerms()) {
-			qboost = getBoostValue(false, query.getQueryDoc(), qterm, doc, null);
-			qtfidf = qterm.getIdf() * qboost;
-			dterm = doc.getTerm(qterm.getText());
-			if(dterm==null && TermType.RoadNum==qterm.getType()){
+		for(int q : context.order) {
+			qboost = getBoostValue(false, queryDoc, q, doc, -1);
+			qtfidf = queryDoc.getTermIdf(q) * qboost;
+			int d = matched[q];
+			if(d<0 && TermType.RoadNum==queryDoc.getTermType(q)){
 				//从b中找门牌号词条
-				if(doc.getRoadNum()!=null && doc.getRoad()!=null && doc.getRoad().equals(qterm.getRef()))
-					dterm = doc.getRoadNum();
+				if(doc.getRoadNumId()!=TermDictionary.NONE && doc.getRoadId()!=TermDictionary.NONE 
+						&& doc.getRoadId()==queryDoc.getRoadId())
+					d = findRoadNum(doc);
 			}
-			dboost = dterm==null ? 0 : getBoostValue(true, query.getQueryDoc(), qterm, doc, dterm);
-			double coord = (dterm!=null && TermType.Text==dterm.getType()) ? textTermCoord : 1;
-			double density = (dterm!=null && TermType.Text==dterm.getType()) ? textTermDensity : 1;
-			dtfidf = (dterm!=null ? dterm.getIdf() : qterm.getIdf()) * dboost * coord * density;
+			boolean isText = d>=0 && TermType.Text==doc.getTermType(d);
+			dboost = d<0 ? 0 : getBoostValue(true, queryDoc, q, doc, d);
+			double coord = isText ? textTermCoord : 1;
+			double density = isText ? textTermDensity : 1;
+			dtfidf = (d>=0 ? doc.getTermIdf(d) : queryDoc.getTermIdf(q)) * dboost * coord * density;
 			
-			if(explain && topN>1 && dterm!=null){
+			if(explain!=null && d>=0){
 				MatchedTerm mt = null;
-				mt = new MatchedTerm(dterm);
+				mt = new MatchedTerm(explain.getDocument().getTerms().get(doc.getTermPosition(d)));
 				mt.setBoost(dboost);
 				mt.setTfidf(dtfidf);
-				if(dterm.getType()==TermType.Text){
+				if(isText){
 					mt.setDensity(density);
 					mt.setCoord(coord);
 				}else{
 					mt.setDensity(-1);
 					mt.setCoord(-1);
 				}
-				simiDoc.addMatchedTerm(mt);
+				explain.addMatchedTerm(mt);
 			}
 			
 			sumQQ += qtfidf * qtfidf;
@@ -541,12 +1098,21 @@ public class SimilarityComputer {
 		}
 		if(sumDD==0 || sumQQ==0) return 0;
 		
-		double similarity = sumQD / ( Math.sqrt(sumQQ * sumDD) );
-		if(explain && topN>1){
-			simiDoc.setSimilarity(similarity);
-			query.addSimiDoc(simiDoc);
-		}else query.addSimiDoc(doc, similarity);
-		return similarity;
+		return sumQD / ( Math.sqrt(sumQQ * sumDD) );
+	}
+	
+	/**
+	 * 查找紧凑形式文档的门牌号词条下标，与对象形式{@link Document#getRoadNum()}对应（位置最靠后的门牌号词条）。
+	 * @param doc
+	 * @return
+	 */
+	private int findRoadNum(Document doc){
+		int found = -1;
+		for(int i=0; i<doc.getTermCount(); i++){
+			if(doc.getTermId(i)!=doc.getRoadNumId() || TermType.RoadNum!=doc.getTermType(i)) continue;
+			if(found<0 || doc.getTermPosition(i)>doc.getTermPosition(found)) found = i;
+		}
+		return found;
 	}
 	
 	
@@ -556,64 +1122,525 @@ public class SimilarityComputer {
 	 * @return
 	 */
 	public List<Document> loadDocunentsFromCache(AddressEntity address){
-		String cacheKey = buildCacheKey(address);
+		DocumentPartition partition = loadPartition(address);
+		return partition==null ? null : partition.getDocs();
+	}
+	
+	/**
+	 * 从文件或内存缓存读取加载分区，分区存在增量段时返回包含增量段的分区视图。
+	 * <p>
+	 * 不缓存在内存中时，每次从文件读取，只包含文档，不计算IDF、不建立倒排索引。<br />
+	 * 使用映射的分区文件时，文档不读取到堆内存中，参考{@link #setUseMappedPartitions(boolean)}。<br />
+	 * 缓存在内存中时，未加载的分区从文件加载到内存中，同一分区只会加载一次，并发查询同一分区时等待同一次加载完成。
+	 * </p>
+	 * @param address 
+	 * @return
+	 */
+	private DocumentPartition loadPartition(AddressEntity address){
+		final String cacheKey = buildCacheKey(address);
 		if(cacheKey==null) return null;
-		
-		List<Document> docs = null;
+		DocumentPartition partition = loadBasePartition(cacheKey);
+		DeltaSegment delta = DELTAS.get(cacheKey);
+		return delta==null ? partition : delta.attach(partition);
+	}
+	
+	private DocumentPartition loadBasePartition(final String cacheKey){
 		if(!cacheVectorsInMemory){
 			//从文件读取
-			docs = loadDocumentsFromFileCache(cacheKey);
-			return docs;
-		} else {
-			//从内存读取，如果未缓存到内存，则从文件加载到内存中
-			docs = VECTORS_CACHE.get(cacheKey);
-			if(docs==null){
-				synchronized (VECTORS_CACHE) {
-					docs = VECTORS_CACHE.get(cacheKey);
-					if(docs==null){
-						docs = loadDocumentsFromFileCache(cacheKey);
-						if(docs==null) docs = new ArrayList<Document>(0);
-						VECTORS_CACHE.put(cacheKey, docs);
-					}
-					
-					//为所有词条计算IDF并缓存
-					Map<String, Double> idfs = IDF_CACHE.get(cacheKey);
-					if(idfs==null){
-						synchronized (IDF_CACHE) {
-							idfs = IDF_CACHE.get(cacheKey);
-							if(idfs==null){
-								Map<String, Integer> termReferences = statInverseDocRefers(docs);
-								idfs = new HashMap<String, Double>(termReferences.size());
-								for(Map.Entry<String, Integer> entry : termReferences.entrySet()){
-									double idf = 0; 
-									//纯数字或字母组成
-									if(StringUtil.isNumericChars(entry.getKey())) idf = 2;
-									else if(StringUtil.isAnsiChars(entry.getKey())) idf = 2;
-									else idf = Math.log( docs.size() * 1.0 / (entry.getValue() + 1) );
-									if(idf<0) idf = 0;
-									idfs.put(entry.getKey(), idf);
-								}
-								IDF_CACHE.put(cacheKey, idfs);
-							}
-						}
-					}
-					
-					for(Document doc : docs){
-						if(doc.getTown()!=null)
-							doc.getTown().setIdf(idfs.get(generateIDFCacheEntryKey(doc.getTown())));
-						if(doc.getVillage()!=null)
-							doc.getVillage().setIdf(idfs.get(generateIDFCacheEntryKey(doc.getVillage())));
-						if(doc.getRoad()!=null)
-							doc.getRoad().setIdf(idfs.get(generateIDFCacheEntryKey(doc.getRoad())));
-						if(doc.getRoadNum()!=null)
-							doc.getRoadNum().setIdf(idfs.get(generateIDFCacheEntryKey(doc.getRoadNum())));
-						for(Term term : doc.getTerms()) term.setIdf(idfs.get(generateIDFCacheEntryKey(term)));
-					}
+			long start = System.nanoTime();
+			DocumentPartition partition = readPartition(cacheKey);
+			TIME_READ.recordSince(start);
+			return partition;
+		}
+		
+		//从内存读取，如果未缓存到内存，则从文件加载到内存中
+		return PARTITIONS.get(cacheKey, new Callable<DocumentPartition>() {
+			@Override
+			public DocumentPartition call() throws Exception {
+				return buildPartition(cacheKey);
+			}
+		});
+	}
+	
+	/**
+	 * 不缓存在内存中时读取分区文件。
+	 * <p>
+	 * 读取前后分区文件的版本相同时记录版本，同一版本的分区文件每次读取得到的字典词条ID相同，
+	 * 增量段据此复用已转换的文档，参考{@link DeltaSegment}。
+	 * </p>
+	 */
+	private DocumentPartition readPartition(String cacheKey){
+		String version = fileVersion(cacheKey);
+		DocumentPartition partition = null;
+		PartitionFile file = openPartitionFile(cacheKey);
+		TermDictionary dict = new TermDictionary();
+		if(file==null){
+			partition = new DocumentPartition(cacheKey, compact(loadDocumentsFromFileCache(cacheKey), dict), dict, null, null, 0);
+		}else{
+			Term[] terms = file.readTerms();
+			if(useMappedPartitions)
+				partition = new DocumentPartition(cacheKey, new MappedPartition(file, terms, dict), buildIdfs(terms), 0);
+			else
+				partition = new DocumentPartition(cacheKey, compact(file.readDocuments(terms), dict), dict, buildIdfs(terms), null, 0);
+		}
+		//读取期间文件被替换时不记录版本，增量段不复用转换结果
+		if(version!=null && version.equals(fileVersion(cacheKey)))
+			partition.setFileVersion(version);
+		return partition;
+	}
+	
+	/**
+	 * 新导入的地址加入所在分区的增量段，查询时立即可以搜索到，参考{@link #setUseDeltaSegments(boolean)}。
+	 * <p>增量段地址数量达到{@link #setDeltaMergeThreshold(int) 合并阈值}时，在后台线程中合并到分区文件。</p>
+	 */
+	@Override
+	public void addressesImported(List<AddressEntity> addresses){
+		if(!useDeltaSegments || addresses==null) return;
+		Map<String, List<AddressEntity>> byPartition = new HashMap<String, List<AddressEntity>>();
+		for(AddressEntity address : addresses){
+			String key = buildCacheKey(address);
+			if(key==null || address.getId()<=0) continue;
+			List<AddressEntity> list = byPartition.get(key);
+			if(list==null){
+				list = new ArrayList<AddressEntity>();
+				byPartition.put(key, list);
+			}
+			list.add(address);
+		}
+		for(Map.Entry<String, List<AddressEntity>> entry : byPartition.entrySet()){
+			DeltaSegment delta = DELTAS.get(entry.getKey());
+			if(delta==null){
+				DeltaSegment created = new DeltaSegment();
+				delta = DELTAS.putIfAbsent(entry.getKey(), created);
+				if(delta==null) delta = created;
+			}
+			int size = delta.add(entry.getValue());
+			if(deltaMergeThreshold>0 && size>=deltaMergeThreshold) scheduleMerge(entry.getKey(), delta);
+		}
+	}
+	
+	private void scheduleMerge(final String key, final DeltaSegment delta){
+		if(!delta.schedule()) return; //已经在等待合并
+		getMergeExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					mergeDelta(key);
+				}catch(Exception ex){
+					LOG.error("[doc-vec] [delta] [error] Error in merging delta of " + key, ex);
 				}
 			}
+		});
+	}
+	
+	private synchronized ExecutorService getMergeExecutor(){
+		if(mergeExecutor==null){
+			mergeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "delta-merge");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 		}
+		return mergeExecutor;
+	}
+	
+	/**
+	 * 将分区的增量段合并到分区文件：读取分区文件全部文档，加上增量段地址，重新计算IDF后写入分区文件，
+	 * 然后重新加载内存中缓存的该分区，参考{@link #reloadPartition(String)}。
+	 * <p>
+	 * 合并期间的查询继续使用原分区和增量段；加载新分区文件之后，增量段中已经合并的地址（ID不大于新分区的最大文档ID）不再参与计算，
+	 * 因此合并前后查询结果不会重复或遗漏。
+	 * </p>
+	 * @param key 分区cacheKey。
+	 * @return 合并的地址数量。
+	 */
+	public int mergeDelta(String key){
+		DeltaSegment delta = DELTAS.get(key);
+		if(delta==null) return 0;
+		synchronized (delta.mergeLock) {
+			return mergeDelta(key, delta);
+		}
+	}
+	
+	private int mergeDelta(String key, DeltaSegment delta){
+		List<AddressEntity> addresses = delta.addresses(); //同时清除等待合并标记，合并期间新导入的地址达到阈值时可以再次合并
+		if(addresses.isEmpty()) return 0;
 		
-		return docs;
+		long start = System.currentTimeMillis();
+		List<Document> docs = loadDocumentsFromFileCache(key);
+		int maxId = 0;
+		for(Document doc : docs) if(doc.getId()>maxId) maxId = doc.getId();
+		int merged = 0, mergedMaxId = maxId;
+		for(AddressEntity address : addresses){
+			if(address.getId()<=maxId) continue; //上次合并已写入分区文件
+			docs.add(analyse(address, null));
+			mergedMaxId = Math.max(mergedMaxId, address.getId());
+			merged++;
+		}
+		if(merged>0){
+			writeDocumentFileCache(key, docs);
+			reloadPartition(key);
+		}
+		delta.removeUpTo(mergedMaxId);
+		if(LOG.isInfoEnabled())
+			LOG.info("[doc-vec] [delta] " + key + ", " + merged + " addresses merged, " + docs.size() + " docs, elapsed " 
+				+ (System.currentTimeMillis() - start)/1000.0 + "s.");
+		return merged;
+	}
+	
+	/**
+	 * 将全部分区的增量段合并到分区文件，参考{@link #mergeDelta(String)}。
+	 * @return 合并的地址数量。
+	 */
+	public int mergeDeltas(){
+		int merged = 0;
+		for(String key : DELTAS.keySet()) merged += mergeDelta(key);
+		return merged;
+	}
+	
+	/**
+	 * 分区的增量段：新导入、尚未合并到分区文件的地址，按地址ID升序排列。
+	 * <p>
+	 * 分词、转换成紧凑形式需要分区的IDF，因此在查询时按所在分区的IDF进行，结果缓存到下一次导入或分区文件更新为止。
+	 * 不在分区中的词条IDF使用{@link #MISSING_IDF}，与查询文档一致。
+	 * 增量段文档使用分区字典的扩展字典，增量段中的新词条不会添加到分区的字典中。
+	 * </p>
+	 * <p>
+	 * 转换结果和分区的最大文档ID按分区文件版本缓存：不缓存在内存中时每次查询都重新读取分区，
+	 * 同一版本的分区文件读取得到的IDF、字典词条ID都相同，不需要重新转换。
+	 * </p>
+	 */
+	private class DeltaSegment {
+		private List<AddressEntity> addresses = new ArrayList<AddressEntity>();
+		private Document[] compacted = new Document[0];
+		private TermDictionary baseDict = null;
+		private TermDictionary dict = null;
+		private String version = null;
+		private int maxDocId = -1;
+		private boolean scheduled = false;
+		/**
+		 * 同一分区同时只进行一个合并。
+		 */
+		final Object mergeLock = new Object();
+		
+		synchronized int add(List<AddressEntity> added){
+			int last = this.addresses.isEmpty() ? 0 : this.addresses.get(this.addresses.size()-1).getId();
+			boolean ordered = true;
+			for(AddressEntity address : added)
+				if(address.getId()<last) ordered = false;
+			this.addresses.addAll(added);
+			Collections.sort(this.addresses, ID_ORDER);
+			if(!ordered) this.compacted = new Document[0]; //已转换部分的顺序发生变化，全部重新转换
+			return this.addresses.size();
+		}
+		
+		synchronized List<AddressEntity> addresses(){
+			this.scheduled = false;
+			return new ArrayList<AddressEntity>(this.addresses);
+		}
+		
+		/**
+		 * 移除已合并到分区文件的地址。
+		 * @param maxId
+		 */
+		synchronized void removeUpTo(int maxId){
+			int n = 0;
+			while(n<this.addresses.size() && this.addresses.get(n).getId()<=maxId) n++;
+			if(n==0) return;
+			this.addresses = new ArrayList<AddressEntity>(this.addresses.subList(n, this.addresses.size()));
+			this.compacted = n>=this.compacted.length ? new Document[0] 
+				: Arrays.copyOfRange(this.compacted, n, this.compacted.length);
+		}
+		
+		/**
+		 * 创建包含增量段的分区视图，增量段中已经包含在分区中的地址不参与计算。
+		 * @param partition
+		 * @return
+		 */
+		DocumentPartition attach(DocumentPartition partition){
+			Document[] docs = null;
+			TermDictionary dict = null;
+			int maxDocId = 0;
+			synchronized (this) {
+				docs = this.compact(partition);
+				dict = this.dict;
+				maxDocId = this.maxDocId;
+			}
+			if(docs.length==0) return partition;
+			int from = 0;
+			while(from<docs.length && docs[from].getId()<=maxDocId) from++;
+			return partition.withDelta(docs, from, dict);
+		}
+		
+		private synchronized Document[] compact(DocumentPartition partition){
+			if(!this.isCurrent(partition)){
+				this.baseDict = partition.getDictionary();
+				this.dict = new TermDictionary(this.baseDict);
+				this.version = partition.getFileVersion();
+				this.maxDocId = partition.getMaxDocId();
+				this.compacted = new Document[0];
+			}
+			int n = this.compacted.length;
+			if(n<this.addresses.size()){
+				Document[] docs = Arrays.copyOf(this.compacted, this.addresses.size());
+				for(int i=n; i<docs.length; i++)
+					docs[i] = analyse(this.addresses.get(i), partition.getIdfs()).compact(this.dict, true);
+				this.compacted = docs;
+			}
+			return this.compacted;
+		}
+		
+		/**
+		 * 缓存的转换结果是否适用于该分区：同一个分区对象，从同一版本的分区文件读取，或者分区文件不存在（空分区）。
+		 */
+		private boolean isCurrent(DocumentPartition partition){
+			if(partition.getDictionary()==this.baseDict) return true;
+			if(this.baseDict==null) return false;
+			if(this.baseDict.size()==0 && this.maxDocId==0 && partition.getDocCount()==0) return true;
+			return this.version!=null && this.version.equals(partition.getFileVersion())
+				&& this.baseDict.size()==partition.getDictionary().size();
+		}
+		
+		synchronized boolean schedule(){
+			if(this.scheduled) return false;
+			this.scheduled = true;
+			return true;
+		}
+	}
+	
+	/**
+	 * 重新加载内存中缓存的分区，用于分区文件更新之后。
+	 * <p>
+	 * 新分区在查询路径之外加载，加载完成后替换原分区（参考{@link PartitionCache#replace(String, DocumentPartition)}），
+	 * 加载期间的查询继续使用原分区，不需要等待；替换前开始的查询在原分区上完成，替换后开始的查询使用新分区。
+	 * 分区未缓存或正在加载时直接移除，下次查询时从新的分区文件加载。
+	 * </p>
+	 * @param key 分区cacheKey。
+	 * @return 是否重新加载了分区。
+	 */
+	public boolean reloadPartition(String key){
+		synchronized (RELOAD_LOCK) {
+			if(PARTITIONS.getIfLoaded(key)==null){
+				PARTITIONS.remove(key);
+				return false;
+			}
+			DocumentPartition partition = buildPartition(key);
+			boolean replaced = PARTITIONS.replace(key, partition);
+			if(LOG.isInfoEnabled() && replaced)
+				LOG.info("[doc-vec] [reload] " + key + " reloaded, version " + partition.getFileVersion());
+			return replaced;
+		}
+	}
+	
+	/**
+	 * 检查内存中缓存的全部分区，分区文件已经更新（重新生成、合并增量段）的重新加载，参考{@link #reloadPartition(String)}。
+	 * @return 重新加载的分区数量。
+	 */
+	public int reloadChangedPartitions(){
+		int reloaded = 0;
+		for(String key : PARTITIONS.keys()){
+			DocumentPartition partition = PARTITIONS.getIfLoaded(key);
+			if(partition==null) continue;
+			String version = fileVersion(key);
+			//分区文件已删除（分区的地址全部删除）时也重新加载，不再使用原来的文档
+			if(version==null ? partition.getFileVersion()==null : version.equals(partition.getFileVersion())) continue;
+			if(reloadPartition(key)) reloaded++;
+		}
+		return reloaded;
+	}
+	
+	/**
+	 * 分区文件的版本：加载分区时优先使用的文件（.vtb，不存在时为.vt）的文件名、文件标识、修改时间和大小。
+	 * <p>分区文件总是先写临时文件再替换，替换后文件标识（inode）会变化，修改时间精度不够时也可以识别。</p>
+	 * @param key 分区cacheKey。
+	 * @return 分区文件不存在时返回null。
+	 */
+	private String fileVersion(String key){
+		File file = new File(getCacheFolder() + "/" + key + PartitionFile.EXTENSION);
+		if(!file.exists()) file = new File(getCacheFolder() + "/" + key + ".vt");
+		try {
+			BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			return file.getName() + "," + attrs.fileKey() + "," + attrs.lastModifiedTime().toMillis() + "," + attrs.size();
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+	
+	private static final Comparator<AddressEntity> ID_ORDER = new Comparator<AddressEntity>() {
+		@Override
+		public int compare(AddressEntity a, AddressEntity b) {
+			return a.getId()<b.getId() ? -1 : (a.getId()==b.getId() ? 0 : 1);
+		}
+	};
+	
+	/**
+	 * 从文件加载分区：读取文档，为所有词条计算IDF，转换成紧凑形式，建立倒排索引。
+	 * <p>使用映射的分区文件时只读取词条表，不读取文档、不建立倒排索引。</p>
+	 * @param cacheKey
+	 * @return
+	 */
+	private DocumentPartition buildPartition(String cacheKey){
+		long start = System.nanoTime();
+		//先取版本再读取文件，读取期间文件被替换时下次检查会再加载一次，不会遗漏更新
+		String version = fileVersion(cacheKey);
+		List<Document> docs = null;
+		Map<String, Double> idfs = null;
+		PartitionFile file = openPartitionFile(cacheKey);
+		if(file!=null && useMappedPartitions){
+			//直接使用映射的二进制缓存文件，只加载词条表
+			Term[] terms = file.readTerms();
+			MappedPartition mapped = new MappedPartition(file, terms, new TermDictionary());
+			long elapsed = (TIME_LOAD.recordSince(start) - start) / 1000000;
+			if(LOG.isInfoEnabled())
+				LOG.info("[doc-vec] [load] " + cacheKey + ", " + file.getDocCount() + " docs mapped, " 
+					+ terms.length + " terms, elapsed " + elapsed/1000.0 + "s.");
+			DocumentPartition partition = new DocumentPartition(cacheKey, mapped, buildIdfs(terms), elapsed);
+			partition.setFileVersion(version);
+			return partition;
+		}
+		if(file!=null){
+			//二进制缓存文件，IDF已预先计算
+			Term[] terms = file.readTerms();
+			docs = file.readDocuments(terms);
+			idfs = buildIdfs(terms);
+		}else{
+			docs = loadDocumentsFromFileCache(cacheKey);
+			if(docs==null) docs = new ArrayList<Document>(0);
+			idfs = computeIdfs(docs);
+			assignIdfs(docs, idfs);
+		}
+		
+		//转换成紧凑形式缓存在内存中，并建立倒排索引
+		TermDictionary dict = new TermDictionary();
+		docs = compact(docs, dict);
+		InvertedIndex index = InvertedIndex.build(docs);
+		
+		long elapsed = (TIME_LOAD.recordSince(start) - start) / 1000000;
+		if(LOG.isInfoEnabled())
+			LOG.info("[doc-vec] [load] " + cacheKey + ", " + docs.size() + " docs, " 
+				+ index.getTermCount() + " terms, elapsed " + elapsed/1000.0 + "s.");
+		DocumentPartition partition = new DocumentPartition(cacheKey, docs, dict, idfs, index, elapsed);
+		partition.setFileVersion(version);
+		return partition;
+	}
+	
+	/**
+	 * 为所有词条计算IDF。
+	 * @param docs 分区全部文档。
+	 * @return key参考{@link #generateIDFCacheEntryKey(Term)}。
+	 */
+	private Map<String, Double> computeIdfs(List<Document> docs){
+		Map<String, Integer> termReferences = statInverseDocRefers(docs);
+		Map<String, Double> idfs = new HashMap<String, Double>(termReferences.size());
+		for(Map.Entry<String, Integer> entry : termReferences.entrySet()){
+			double idf = 0; 
+			//纯数字或字母组成
+			if(StringUtil.isNumericChars(entry.getKey())) idf = 2;
+			else if(StringUtil.isAnsiChars(entry.getKey())) idf = 2;
+			else idf = Math.log( docs.size() * 1.0 / (entry.getValue() + 1) );
+			if(idf<0) idf = 0;
+			idfs.put(entry.getKey(), idf);
+		}
+		return idfs;
+	}
+	
+	private void assignIdfs(List<Document> docs, Map<String, Double> idfs){
+		for(Document doc : docs){
+			if(doc.getTown()!=null)
+				doc.getTown().setIdf(idfs.get(generateIDFCacheEntryKey(doc.getTown())));
+			if(doc.getVillage()!=null)
+				doc.getVillage().setIdf(idfs.get(generateIDFCacheEntryKey(doc.getVillage())));
+			if(doc.getRoad()!=null)
+				doc.getRoad().setIdf(idfs.get(generateIDFCacheEntryKey(doc.getRoad())));
+			if(doc.getRoadNum()!=null)
+				doc.getRoadNum().setIdf(idfs.get(generateIDFCacheEntryKey(doc.getRoadNum())));
+			for(Term term : doc.getTerms()) term.setIdf(idfs.get(generateIDFCacheEntryKey(term)));
+		}
+	}
+	
+	/**
+	 * 由二进制缓存文件的词条表还原IDF。
+	 * @param terms 词条表，IDF为预先计算的原始值。
+	 * @return
+	 */
+	private Map<String, Double> buildIdfs(Term[] terms){
+		Map<String, Double> idfs = new HashMap<String, Double>(terms.length);
+		for(Term term : terms)
+			idfs.put(generateIDFCacheEntryKey(term), term.getRawIdf());
+		return idfs;
+	}
+	
+	/**
+	 * 打开分区的二进制缓存文件。
+	 * @param key
+	 * @return 文件不存在或无法读取时返回null，此时使用文本格式的缓存文件。
+	 */
+	private PartitionFile openPartitionFile(String key){
+		File file = new File(getCacheFolder() + "/" + key + PartitionFile.EXTENSION);
+		if(!file.exists()) return null;
+		try {
+			return PartitionFile.open(file);
+		} catch (Exception ex) {
+			LOG.error("[doc-vec] [cache] [error] Error in reading file: " + file.getAbsolutePath(), ex);
+			return null;
+		}
+	}
+	
+	/**
+	 * 将分区的文本格式缓存文件（.vt）转换成二进制格式（.vtb），转换时为全部词条计算IDF。
+	 * <p>{@link #buildDocumentFileCache(String, List)}会同时写入两种格式，只需要为旧版本生成的缓存文件执行转换。</p>
+	 * @param key 分区cacheKey。
+	 * @return 转换的文档数量，.vt文件不存在时返回-1。
+	 */
+	public int convertFileCache(String key){
+		long start = System.currentTimeMillis();
+		if(!new File(getCacheFolder() + "/" + key + ".vt").exists()) return -1;
+		List<Document> docs = loadDocumentsFromFileCache(key);
+		writePartitionFile(key, docs);
+		LOG.info("[doc-vec] [cache] " + key + PartitionFile.EXTENSION + ", " 
+				+ docs.size() + " docs, elapsed " + (System.currentTimeMillis() - start)/1000.0 + "s.");
+		return docs.size();
+	}
+	
+	/**
+	 * 为全部词条计算IDF，连同文档一起写入分区的二进制缓存文件（.vtb）。
+	 * @param key 分区cacheKey。
+	 * @param docs 分区全部文档，词条的IDF会被修改。
+	 */
+	private void writePartitionFile(String key, List<Document> docs){
+		assignIdfs(docs, computeIdfs(docs));
+		String filePath = getCacheFolder() + "/" + key + PartitionFile.EXTENSION;
+		try {
+			PartitionFile.write(new File(filePath), docs);
+		} catch (IOException ex) {
+			LOG.error("[doc-vec] [cache] [error] Error in writing file: " + filePath, ex);
+			throw new RuntimeException("Error in writing file: " + filePath, ex);
+		}
+	}
+	
+	/**
+	 * 内存中缓存的分区，用于获取加载耗时、命中率、淘汰次数等统计信息。
+	 * @return
+	 */
+	public PartitionCache getPartitionCache(){
+		return PARTITIONS;
+	}
+	
+	/**
+	 * 将文档转换成紧凑形式，词条注册到分区的词条字典中。
+	 * @param docs 对象形式的文档。
+	 * @param dict 分区的词条字典。
+	 * @return
+	 */
+	private List<Document> compact(List<Document> docs, TermDictionary dict){
+		if(docs==null) return null;
+		List<Document> compacted = new ArrayList<Document>(docs.size());
+		for(Document doc : docs)
+			compacted.add(doc.compact(dict, true));
+		return compacted;
 	}
 	
 	public String buildCacheKey(AddressEntity address){
@@ -651,27 +1678,36 @@ public class SimilarityComputer {
 		return docs;
 	}
 	
+	/**
+	 * 为分区生成缓存文件：文本格式（.vt）和二进制格式（.vtb），二进制格式中包含预先计算的IDF。
+	 * @param key 分区cacheKey。
+	 * @param addresses 分区全部地址。
+	 */
 	public void buildDocumentFileCache(String key, List<AddressEntity> addresses){
-		long start = System.currentTimeMillis();
-		
 		if(addresses==null || addresses.isEmpty()) return;
-		List<Document> docs = analyse(addresses);
-		if(docs==null || docs.isEmpty()) return;
+		writeDocumentFileCache(key, analyse(addresses));
+	}
+	
+	/**
+	 * 为分区生成缓存文件，参考{@link #buildDocumentFileCache(String, List)}。
+	 * <p>用于逐条读取地址、分词后写入的场景，不需要同时持有分区全部{@link AddressEntity}。不同分区可以在多个线程中同时生成。</p>
+	 * @param key 分区cacheKey。
+	 * @param docs 分区全部文档，即{@link #analyse(AddressEntity)}的结果。
+	 * @return 写入的字节数。
+	 */
+	public long writeDocumentFileCache(String key, List<Document> docs){
+		long start = System.currentTimeMillis();
+		if(docs==null || docs.isEmpty()) return 0;
 		
+		//先写入临时文件，全部写入成功后替换原文件，读取方不会读到写了一半的文件
 		String filePath = getCacheFolder() + "/" + key + ".vt";
 		File file = new File(filePath);
-		try {
-			if(file.exists()) file.delete();
-			file.createNewFile();
-		} catch (IOException ex) {
-			LOG.error("[doc-vec] [cache] [error] Error in creating file: " + filePath, ex);
-			throw new RuntimeException("Error in creating file: " + filePath, ex);
-		}
+		File temp = new File(filePath + ".tmp");
 		
 		OutputStream outStream = null;
 		BufferedOutputStream bufferedStream = null; 
 		try {
-			outStream = new FileOutputStream(file);
+			outStream = new FileOutputStream(temp);
 			bufferedStream = new BufferedOutputStream(outStream);
 			for(Document doc : docs){
 				bufferedStream.write((serialize(doc)).getBytes("utf8"));
@@ -685,8 +1721,40 @@ public class SimilarityComputer {
 			if(bufferedStream!=null) try { bufferedStream.close(); } catch (IOException e) {}
 			if(outStream!=null) try { outStream.close(); } catch (IOException e) {}
 		}
-		LOG.info("[doc-vec] [cache] " + key + ".vt, " 
+		
+		try {
+			//预先计算IDF写入二进制缓存文件，加载分区时直接读取，不需要再统计逆文档引用情况
+			writePartitionFile(key, docs);
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ex) {
+			LOG.error("[doc-vec] [cache] [error] Error in writing file: " + filePath, ex);
+			throw new RuntimeException("Error in writing file: " + filePath, ex);
+		} finally {
+			if(temp.exists()) temp.delete();
+		}
+		LOG.info("[doc-vec] [cache] " + key + ".vt, " + key + PartitionFile.EXTENSION + ", " 
 				+ docs.size() + " docs, elapsed " + (System.currentTimeMillis() - start)/1000.0 + "s.");
+		return file.length() + new File(getCacheFolder() + "/" + key + PartitionFile.EXTENSION).length();
+	}
+	
+	/**
+	 * 删除分区的缓存文件（.vt和.vtb），用于分区的地址已经全部删除的情况。
+	 * @param key 分区cacheKey。
+	 * @return 是否删除了缓存文件，缓存文件不存在时返回false。
+	 */
+	public boolean deleteDocumentFileCache(String key){
+		boolean deleted = false;
+		for(String extension : new String[]{ ".vt", PartitionFile.EXTENSION }){
+			File file = new File(getCacheFolder() + "/" + key + extension);
+			if(!file.exists()) continue;
+			if(!file.delete()){
+				LOG.error("[doc-vec] [cache] [error] Can't delete file: " + file.getAbsolutePath());
+				throw new RuntimeException("Can't delete file: " + file.getAbsolutePath());
+			}
+			deleted = true;
+		}
+		if(deleted) LOG.info("[doc-vec] [cache] " + key + ".vt, " + key + PartitionFile.EXTENSION + " deleted, no addresses in partition.");
+		return deleted;
 	}
 	
 	private Term addTerm(String text, TermType type, List<Term> terms, RegionEntity region){
@@ -703,6 +1771,95 @@ public class SimilarityComputer {
 	public void setCacheVectorsInMemory(boolean value){
 		cacheVectorsInMemory = value;
 	}
+	/**
+	 * 是否使用倒排索引筛选候选文档，仅在{@link #setCacheVectorsInMemory(boolean) cacheVectorsInMemory}为true时有效。
+	 * <p>设置为false时对分区内全部文档计算相似度，用于和倒排索引方式对比结果与性能。</p>
+	 * @param value
+	 */
+	public void setUseInvertedIndex(boolean value){
+		useInvertedIndex = value;
+	}
+	/**
+	 * 存在二进制缓存文件（.vtb）时，是否直接在内存映射的文件上计算相似度，而不是将文档读取到堆内存中。
+	 * <p>
+	 * 映射的分区只在堆内存中保留词条表，文档数据由操作系统页缓存管理，多个JVM可以共享；没有倒排索引，对分区全部文档计算相似度。
+	 * 适合很大或者很少被查询的分区，默认为false。
+	 * </p>
+	 * @param value
+	 */
+	public void setUseMappedPartitions(boolean value){
+		useMappedPartitions = value;
+	}
+	/**
+	 * 是否将新导入的地址加入所在分区的增量段，使其不需要重新生成缓存文件就可以被搜索到，参考{@link #addressesImported(List)}。
+	 * <p>需要将{@link SimilarityComputer}设置为{@link com.rrs.rd.address.persist.AddressPersister#setImportListener(AddressImportListener) 地址导入监听器}，默认为false。</p>
+	 * @param value
+	 */
+	public void setUseDeltaSegments(boolean value){
+		useDeltaSegments = value;
+	}
+	/**
+	 * 分区增量段的地址数量达到该值时，在后台线程中合并到分区文件，小于等于0时不自动合并，默认为10000。
+	 * @param value
+	 */
+	public void setDeltaMergeThreshold(int value){
+		deltaMergeThreshold = value;
+	}
+	/**
+	 * 每隔多少秒检查一次分区文件是否已经更新，已更新的分区在后台线程中重新加载，参考{@link #reloadChangedPartitions()}。
+	 * <p>小于等于0时不检查（默认），仅在{@link #setCacheVectorsInMemory(boolean) cacheVectorsInMemory}为true时有意义，否则每次查询都读取文件。</p>
+	 * @param value
+	 */
+	public synchronized void setReloadIntervalSeconds(int value){
+		if(reloadWatcher!=null){
+			reloadWatcher.shutdownNow();
+			reloadWatcher = null;
+		}
+		if(value<=0) return;
+		reloadWatcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "partition-reload");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		reloadWatcher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					int reloaded = reloadChangedPartitions();
+					if(LOG.isInfoEnabled() && reloaded>0) LOG.info("[doc-vec] [reload] " + reloaded + " partitions reloaded.");
+				}catch(Exception ex){
+					LOG.error("[doc-vec] [reload] [error] Error in reloading partitions", ex);
+				}
+			}
+		}, value, value, TimeUnit.SECONDS);
+	}
+	/**
+	 * 内存中缓存分区的内存占用限制，单位MB，超出时按LRU淘汰分区，仅在{@link #setCacheVectorsInMemory(boolean) cacheVectorsInMemory}为true时有效。
+	 * <p>小于等于0时不限制，默认为0。</p>
+	 * @param value
+	 */
+	public void setCacheMemoryLimitMB(int value){
+		PARTITIONS.setMaxBytes((long)value << 20);
+	}
+	/**
+	 * 单个查询并行计算相似度的阈值，需要计算相似度的文档数量（使用倒排索引时为候选文档数量，否则为分区文档数量）
+	 * 大于等于该值时，拆分成多个区块在{@link ForkJoinPool}中并行计算。
+	 * <p>小于等于0时不使用并行计算，默认为0。</p>
+	 * @param value
+	 */
+	public void setParallelThreshold(int value){
+		parallelThreshold = value;
+	}
+	/**
+	 * 并行计算相似度的线程数，默认为CPU核数。全部查询共享同一个{@link ForkJoinPool}，需要在第一次并行计算之前设置。
+	 * @param value
+	 */
+	public void setParallelism(int value){
+		parallelism = value;
+	}
 	public void setInterpreter(AddressInterpreter value){
 		interpreter = value;
 	}
@@ -66,6 +66,14 @@ public class Term {
 		}
 	}
 	
+	/**
+	 * 设置的IDF原始值，不考虑词条类型，用于持久化。
+	 * @return
+	 */
+	double getRawIdf(){
+		return this.idf;
+	}
+	
 	public void setIdf(double value){
 		this.idf = value;
 	}
@@ -0,0 +1,136 @@
+package com.rrs.rd.address.similarity;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 词条字典，为词条文本分配整数ID。
+ *
+ * <p>
+ * 缓存在内存中的文档使用紧凑编码（参考{@link Document#isCompact()}），词条以ID表示，
+ * 相同文本的词条在同一分区的全部文档之间只保存一份{@link String}。
+ * </p>
+ *
+ * <p>
+ * 每个分区（{@link DocumentPartition}）使用各自的字典，ID只在分区内有效。分区被淘汰、重新加载，或者不缓存分区时查询结束，
+ * 字典随分区一起释放，字典占用的内存计入{@link DocumentPartition#getEstimatedBytes()}。
+ * </p>
+ *
+ * <p>
+ * 词条ID只与文本相关，与{@link com.rrs.rd.address.TermType TermType}无关：
+ * 计算相似度时查询文档与地址库文档的词条按文本匹配（参考{@link Document#getTerm(String)}），
+ * 词条类型作为文档的编码属性单独保存。
+ * </p>
+ *
+ * <p>
+ * 查询文档使用{@link #find(String)}获取ID，不会向字典中添加新词条；增量段文档使用{@link #TermDictionary(TermDictionary) 扩展字典}，
+ * 不会向分区的字典中添加新词条。因此分区字典的大小只与分区文件中的词条数量相关。<br />
+ * {@link TermDictionary}是线程安全的。
+ * </p>
+ */
+public class TermDictionary {
+	/**
+	 * 文档中不存在该词条（例如文档没有乡镇、道路等）。
+	 */
+	public static final int NONE = -1;
+	/**
+	 * 查询文档中存在该词条，但字典中不存在，不可能与任何地址库文档的词条匹配。
+	 */
+	public static final int UNKNOWN = -2;
+
+	private final TermDictionary base;
+	private final int baseSize;
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	private volatile String[] texts = new String[16];
+	private int size = 0;
+
+	public TermDictionary(){
+		this.base = null;
+		this.baseSize = 0;
+	}
+
+	/**
+	 * 创建扩展字典：base中已有的词条使用base中的ID，新词条添加到扩展字典中，ID从base的词条数量开始。
+	 * <p>用于增量段文档，与分区文档使用相同的ID而不修改分区的字典。创建之后base不能再添加词条。</p>
+	 * @param base
+	 */
+	public TermDictionary(TermDictionary base){
+		this.base = base;
+		this.baseSize = base.size();
+	}
+
+	/**
+	 * 获取词条ID，字典中不存在时添加到字典中。
+	 * @param text
+	 * @return
+	 */
+	public int idOf(String text){
+		if(this.base!=null){
+			int id = this.base.find(text);
+			if(id!=UNKNOWN) return id;
+		}
+		Integer id = this.ids.get(text);
+		if(id!=null) return id.intValue();
+		synchronized (this) {
+			id = this.ids.get(text);
+			if(id!=null) return id.intValue();
+			if(this.size>=this.texts.length){
+				String[] grown = new String[this.texts.length * 2];
+				System.arraycopy(this.texts, 0, grown, 0, this.size);
+				this.texts = grown;
+			}
+			String[] current = this.texts;
+			current[this.size] = text;
+			this.texts = current; //volatile写，保证读取到ID的线程能够读取到文本
+			id = this.baseSize + this.size++;
+			this.ids.put(text, id);
+			return id.intValue();
+		}
+	}
+
+	/**
+	 * 获取词条ID，不会向字典中添加新词条。
+	 * @param text
+	 * @return 字典中不存在时返回{@link #UNKNOWN}。
+	 */
+	public int find(String text){
+		if(text==null) return UNKNOWN;
+		if(this.base!=null){
+			int id = this.base.find(text);
+			if(id!=UNKNOWN) return id;
+		}
+		Integer id = this.ids.get(text);
+		return id==null ? UNKNOWN : id.intValue();
+	}
+
+	/**
+	 * 获取词条ID对应的文本。
+	 * @param id
+	 * @return
+	 */
+	public String text(int id){
+		if(id<0) return null;
+		if(id<this.baseSize) return this.base.text(id);
+		return this.texts[id - this.baseSize];
+	}
+
+	/**
+	 * 字典中的词条数量，扩展字典包括base中的词条。
+	 * @return
+	 */
+	public int size(){
+		return this.baseSize + this.ids.size();
+	}
+
+	/**
+	 * 占用内存的估算值，单位字节，扩展字典不包括base。
+	 * @return
+	 */
+	public long estimateBytes(){
+		long bytes = 64 + 16 + this.texts.length * 4;
+		for(String text : this.ids.keySet()){
+			//ConcurrentHashMap节点 + 桶 + Integer + 文本字符串
+			bytes += 32 + 8 + 16 + 40 + text.length() * 2;
+		}
+		return bytes;
+	}
+}
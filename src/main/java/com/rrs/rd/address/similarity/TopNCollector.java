@@ -0,0 +1,184 @@
+package com.rrs.rd.address.similarity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 保留相似度最高的top N个文档的收集器。
+ *
+ * <p>
+ * 使用基于原始类型数组的最小堆实现，堆顶为当前最差的文档。收集过程中只记录（文档下标, 相似度），
+ * 不会为每个候选文档创建任何Java对象，只在最后调用{@link #toSimilarDocs(List)}时为最终结果创建{@link SimilarDoccument}。
+ * </p>
+ *
+ * <p>
+ * 排序规则：相似度高的在前；相似度相同时文档下标小的在前，即与按分区文档原始顺序扫描时"先出现的优先"的效果一致。
+ * 该规则与收集顺序无关，因此多个收集器{@link #merge(TopNCollector) 合并}后的结果是确定的。
+ * </p>
+ *
+ * <p>{@link TopNCollector}非线程安全。</p>
+ */
+public class TopNCollector {
+	private int capacity;
+	private int size = 0;
+	private int[] docs;
+	private double[] scores;
+
+	public TopNCollector(int topN){
+		this.capacity = topN<=0 ? 1 : topN;
+		this.docs = new int[this.capacity];
+		this.scores = new double[this.capacity];
+	}
+
+	/**
+	 * 收集一个文档。
+	 * @param doc 文档在分区文档列表中的下标。
+	 * @param score 相似度，小于等于0的文档直接忽略。
+	 * @return 文档进入top N返回true，否则返回false。
+	 */
+	public boolean collect(int doc, double score){
+		if(score<=0) return false;
+		if(this.size<this.capacity){
+			this.docs[this.size] = doc;
+			this.scores[this.size] = score;
+			siftUp(this.size++);
+			return true;
+		}
+		if(!isWorse(this.docs[0], this.scores[0], doc, score)) return false;
+		this.docs[0] = doc;
+		this.scores[0] = score;
+		siftDown(0);
+		return true;
+	}
+
+	/**
+	 * 将另一个收集器的结果合并到当前收集器。
+	 * @param other
+	 */
+	public void merge(TopNCollector other){
+		if(other==null) return;
+		for(int i=0; i<other.size; i++)
+			this.collect(other.docs[i], other.scores[i]);
+	}
+
+	/**
+	 * 已收集的文档数量。
+	 * @return
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * 清空收集结果，收集器可以重复使用。
+	 */
+	public void reset(){
+		this.size = 0;
+	}
+
+	/**
+	 * 按相似度从高到低返回文档下标。
+	 * @return
+	 */
+	public int[] sortedDocs(){
+		int[] sortedDocs = new int[this.size];
+		this.sort(sortedDocs, new double[this.size]);
+		return sortedDocs;
+	}
+
+	/**
+	 * 按相似度从高到低返回相似度。
+	 * @return
+	 */
+	public double[] sortedScores(){
+		double[] sortedScores = new double[this.size];
+		this.sort(new int[this.size], sortedScores);
+		return sortedScores;
+	}
+
+	/**
+	 * 为最终结果创建{@link SimilarDoccument}，按相似度从高到低排列。
+	 * @param allDocs 分区全部文档，收集时使用的文档下标即为该列表中的下标。
+	 * @return
+	 */
+	public List<SimilarDoccument> toSimilarDocs(List<Document> allDocs){
+		return this.toSimilarDocs(allDocs, null);
+	}
+
+	/**
+	 * 为最终结果创建{@link SimilarDoccument}，按相似度从高到低排列，紧凑形式的文档还原成对象形式。
+	 * @param allDocs 分区全部文档，收集时使用的文档下标即为该列表中的下标。
+	 * @param dict 词条字典，为null时不还原。
+	 * @return
+	 */
+	public List<SimilarDoccument> toSimilarDocs(List<Document> allDocs, TermDictionary dict){
+		int[] sortedDocs = new int[this.size];
+		double[] sortedScores = new double[this.size];
+		this.sort(sortedDocs, sortedScores);
+		List<SimilarDoccument> result = new ArrayList<SimilarDoccument>(this.size);
+		for(int i=0; i<this.size; i++){
+			Document doc = allDocs.get(sortedDocs[i]);
+			SimilarDoccument simiDoc = new SimilarDoccument(dict==null ? doc : doc.expand(dict));
+			simiDoc.setSimilarity(sortedScores[i]);
+			result.add(simiDoc);
+		}
+		return result;
+	}
+
+	private void sort(int[] sortedDocs, double[] sortedScores){
+		//在副本上执行堆排序：依次取出堆顶（最差）元素，从后往前放置
+		int[] heapDocs = new int[this.size];
+		double[] heapScores = new double[this.size];
+		System.arraycopy(this.docs, 0, heapDocs, 0, this.size);
+		System.arraycopy(this.scores, 0, heapScores, 0, this.size);
+		for(int n=this.size; n>0; n--){
+			sortedDocs[n-1] = heapDocs[0];
+			sortedScores[n-1] = heapScores[0];
+			heapDocs[0] = heapDocs[n-1];
+			heapScores[0] = heapScores[n-1];
+			siftDown(heapDocs, heapScores, n-1, 0);
+		}
+	}
+
+	/**
+	 * 文档a是否比文档b差：相似度更低，或者相似度相同但文档下标更大。
+	 */
+	private static boolean isWorse(int docA, double scoreA, int docB, double scoreB){
+		if(scoreA!=scoreB) return scoreA < scoreB;
+		return docA > docB;
+	}
+
+	private void siftUp(int i){
+		int doc = this.docs[i];
+		double score = this.scores[i];
+		while(i>0){
+			int parent = (i-1) >>> 1;
+			if(!isWorse(doc, score, this.docs[parent], this.scores[parent])) break;
+			this.docs[i] = this.docs[parent];
+			this.scores[i] = this.scores[parent];
+			i = parent;
+		}
+		this.docs[i] = doc;
+		this.scores[i] = score;
+	}
+
+	private void siftDown(int i){
+		siftDown(this.docs, this.scores, this.size, i);
+	}
+
+	private static void siftDown(int[] docs, double[] scores, int size, int i){
+		int doc = docs[i];
+		double score = scores[i];
+		int half = size >>> 1;
+		while(i<half){
+			int child = 2*i + 1, right = child + 1;
+			if(right<size && isWorse(docs[right], scores[right], docs[child], scores[child])) child = right;
+			if(!isWorse(docs[child], scores[child], doc, score)) break;
+			docs[i] = docs[child];
+			scores[i] = scores[child];
+			i = child;
+		}
+		docs[i] = doc;
+		scores[i] = score;
+	}
+}
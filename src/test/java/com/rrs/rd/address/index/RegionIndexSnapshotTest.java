@@ -0,0 +1,332 @@
+package com.rrs.rd.address.index;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.Test;
+
+import com.rrs.rd.address.TermType;
+import com.rrs.rd.address.persist.AddressPersister;
+import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionType;
+import com.rrs.rd.address.persist.RegionWatermark;
+import com.rrs.rd.address.persist.dao.RegionDao;
+
+import junit.framework.TestCase;
+
+/**
+ * 区域树和索引树快照：写入、读取还原，文件损坏、数据库水位或省份过滤不一致时不使用快照。
+ * <p>区域树缓存在{@link AddressPersister}的静态变量中，每个测试前后清空，区域从内存中的{@link RegionDao}加载。</p>
+ */
+public class RegionIndexSnapshotTest extends TestCase {
+	private static final List<String> IGNORINGS = Arrays.asList("自治区", "地区");
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		resetRegions();
+		this.file = File.createTempFile("region", ".snapshot");
+		this.file.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		resetRegions();
+		this.file.delete();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		MemoryDao dao = new MemoryDao();
+		TermIndexEntry index = new TermIndexEntry();
+		indexNames(dao.root, index);
+		index.buildIndex("自治区", 0, new TermIndexItem(TermType.Ignore, null));
+		Set<Long> provinces = new TreeSet<Long>(Arrays.asList(220000L, 370000L));
+		RegionIndexSnapshot.write(this.file, dao.watermark, IGNORINGS, provinces, dao.root, index);
+
+		RegionIndexSnapshot snapshot = RegionIndexSnapshot.read(this.file);
+		assertEquals(dao.watermark, snapshot.getWatermark());
+		assertEquals(IGNORINGS, snapshot.getIgnorings());
+		assertEquals(provinces, snapshot.getProvinces());
+		assertRegionEquals(dao.root, snapshot.getRoot());
+		assertIndexEquals(index, snapshot.getIndexRoot(), snapshot.getRoot());
+		assertNull(RegionIndexSnapshot.read(new File(this.file.getPath() + ".missing")));
+	}
+
+	@Test
+	public void testRejectCorruptedFile() throws Exception {
+		MemoryDao dao = new MemoryDao();
+		RegionIndexSnapshot.write(this.file, dao.watermark, IGNORINGS, new TreeSet<Long>(), dao.root, new TermIndexEntry());
+		byte[] bytes = Files.readAllBytes(this.file.toPath());
+
+		byte[] corrupted = bytes.clone();
+		ByteBuffer.wrap(corrupted).putInt(0, 0x12345678);
+		assertRejected(corrupted, "magic");
+		corrupted = bytes.clone();
+		ByteBuffer.wrap(corrupted).putInt(4, RegionIndexSnapshot.VERSION + 1);
+		assertRejected(corrupted, "version");
+		corrupted = bytes.clone();
+		corrupted[corrupted.length - 1] ^= 1;
+		assertRejected(corrupted, "checksum");
+		assertRejected(Arrays.copyOf(bytes, bytes.length - 1), "length");
+
+		//损坏的快照不使用，从数据库加载并重新写入
+		corrupted = bytes.clone();
+		corrupted[corrupted.length - 1] ^= 1;
+		Files.write(this.file.toPath(), corrupted);
+		new TermIndexBuilder(dao.persister(""), IGNORINGS, this.file.getPath());
+		assertEquals(1, dao.scans);
+		assertEquals(dao.watermark, RegionIndexSnapshot.read(this.file).getWatermark());
+	}
+
+	@Test
+	public void testRestore() throws Exception {
+		MemoryDao dao = new MemoryDao();
+		TermIndexBuilder built = new TermIndexBuilder(dao.persister(""), IGNORINGS, this.file.getPath());
+		assertEquals(1, dao.scans);
+		assertTrue(this.file.exists());
+
+		resetRegions();
+		AddressPersister persister = dao.persister("");
+		TermIndexBuilder restored = new TermIndexBuilder(persister, IGNORINGS, this.file.getPath());
+		assertEquals(1, dao.scans); //从快照还原，没有读取数据库
+		assertNotSame(dao.root, persister.rootRegion());
+		assertRegionEquals(dao.root, persister.rootRegion());
+		for(String name : new String[]{ "青岛市", "市南区", "李村镇", "吉林", "自治区" }){
+			List<TermIndexItem> expected = built.fullMatch(name), actual = restored.fullMatch(name);
+			assertEquals(name, expected.size(), actual.size());
+			for(int i=0; i<expected.size(); i++){
+				assertEquals(expected.get(i).getType(), actual.get(i).getType());
+				if(expected.get(i).getValue()!=null)
+					assertSame(persister.getRegion(((RegionEntity)expected.get(i).getValue()).getId()), actual.get(i).getValue());
+			}
+		}
+	}
+
+	@Test
+	public void testRejectStaleWatermark() throws Exception {
+		MemoryDao dao = new MemoryDao();
+		new TermIndexBuilder(dao.persister(""), IGNORINGS, this.file.getPath());
+
+		resetRegions();
+		dao.watermark = new RegionWatermark(dao.watermark.getCount(), dao.watermark.getMaxId(), dao.watermark.getChecksum() + 1);
+		AddressPersister persister = dao.persister("");
+		new TermIndexBuilder(persister, IGNORINGS, this.file.getPath());
+		assertEquals(2, dao.scans);
+		assertSame(dao.root, persister.rootRegion());
+		assertEquals(dao.watermark, RegionIndexSnapshot.read(this.file).getWatermark());
+	}
+
+	@Test
+	public void testRejectOtherProvinces() throws Exception {
+		MemoryDao dao = new MemoryDao();
+		new TermIndexBuilder(dao.persister(""), IGNORINGS, this.file.getPath());
+
+		resetRegions();
+		AddressPersister persister = dao.persister("370000");
+		TermIndexBuilder builder = new TermIndexBuilder(persister, IGNORINGS, this.file.getPath());
+		assertEquals(2, dao.scans);
+		assertEquals(1, persister.rootRegion().getChildren().size());
+		assertNull(builder.fullMatch("吉林市"));
+		assertEquals(new TreeSet<Long>(Arrays.asList(370000L)), RegionIndexSnapshot.read(this.file).getProvinces());
+	}
+
+	@Test
+	public void testIgnoringsChanged() throws Exception {
+		MemoryDao dao = new MemoryDao();
+		new TermIndexBuilder(dao.persister(""), IGNORINGS, this.file.getPath());
+
+		//区域从快照还原，按新的忽略列表重新建立索引并重新写入快照
+		resetRegions();
+		List<String> ignorings = Arrays.asList("自治区", "地区", "开发区");
+		TermIndexBuilder builder = new TermIndexBuilder(dao.persister(""), ignorings, this.file.getPath());
+		assertEquals(1, dao.scans);
+		assertEquals(TermType.Ignore, builder.fullMatch("开发区").get(0).getType());
+		assertEquals(ignorings, RegionIndexSnapshot.read(this.file).getIgnorings());
+	}
+
+	private void assertRejected(byte[] bytes, String reason) throws Exception {
+		Files.write(this.file.toPath(), bytes);
+		try{
+			RegionIndexSnapshot.read(this.file);
+			fail("Snapshot with invalid " + reason + " accepted");
+		}catch(IllegalArgumentException ex){
+		}
+	}
+
+	private static void assertRegionEquals(RegionEntity expected, RegionEntity actual){
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.getParentId(), actual.getParentId());
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getAlias(), actual.getAlias());
+		assertEquals(expected.getType(), actual.getType());
+		assertEquals(expected.getZip(), actual.getZip());
+		int n = expected.getChildren()==null ? 0 : expected.getChildren().size();
+		assertEquals(n, actual.getChildren()==null ? 0 : actual.getChildren().size());
+		for(int i=0; i<n; i++)
+			assertRegionEquals(expected.getChildren().get(i), actual.getChildren().get(i));
+	}
+
+	/**
+	 * 比较索引树，还原的索引对象必须引用还原的区域树中的区域对象。
+	 */
+	private static void assertIndexEquals(TermIndexEntry expected, TermIndexEntry actual, RegionEntity root){
+		assertTrue(Arrays.equals(expected.getChildChars(), actual.getChildChars()));
+		assertEquals(expected.hasItem(), actual.hasItem());
+		if(expected.hasItem()){
+			assertEquals(expected.getItems().size(), actual.getItems().size());
+			for(int i=0; i<expected.getItems().size(); i++){
+				TermIndexItem item = actual.getItems().get(i);
+				assertEquals(expected.getItems().get(i).getType(), item.getType());
+				if(item.getValue()==null){
+					assertNull(expected.getItems().get(i).getValue());
+					continue;
+				}
+				RegionEntity region = (RegionEntity)item.getValue();
+				assertEquals(((RegionEntity)expected.getItems().get(i).getValue()).getId(), region.getId());
+				assertSame(find(root, region.getId()), region);
+			}
+		}
+		for(int i=0; i<expected.getChildEntries().length; i++)
+			assertIndexEquals(expected.getChildEntries()[i], actual.getChildEntries()[i], root);
+	}
+
+	private static RegionEntity find(RegionEntity region, long id){
+		if(region.getId()==id) return region;
+		if(region.getChildren()==null) return null;
+		for(RegionEntity child : region.getChildren()){
+			RegionEntity found = find(child, id);
+			if(found!=null) return found;
+		}
+		return null;
+	}
+
+	private static void indexNames(RegionEntity region, TermIndexEntry index){
+		if(region.getChildren()==null) return;
+		for(RegionEntity child : region.getChildren()){
+			TermIndexItem item = new TermIndexItem(TermType.Undefined, child);
+			for(String name : child.orderedNameAndAlias()) index.buildIndex(name, 0, item);
+			indexNames(child, index);
+		}
+	}
+
+	private static void resetRegions() throws Exception {
+		for(String name : new String[]{ "REGION_TREE", "REGION_CACHE", "REGION_LOADED" }){
+			Field field = AddressPersister.class.getDeclaredField(name);
+			field.setAccessible(true);
+			field.set(null, "REGION_LOADED".equals(name) ? Boolean.FALSE : null);
+		}
+	}
+
+	/**
+	 * 内存中的行政区域表。
+	 */
+	private static class MemoryDao implements RegionDao {
+		private RegionEntity root;
+		private List<RegionEntity> all = new ArrayList<RegionEntity>();
+		private RegionWatermark watermark = new RegionWatermark(11, 370211001, 123456789);
+		private int scans = 0;
+
+		MemoryDao(){
+			this.root = region(null, 1, "中国", null, RegionType.Country);
+			RegionEntity jl = region(this.root, 220000, "吉林省", "吉林", RegionType.Province);
+			RegionEntity jlc = region(jl, 220200, "吉林市", null, RegionType.City);
+			region(jlc, 220202, "昌邑区", null, RegionType.District);
+			RegionEntity sd = region(this.root, 370000, "山东省", "山东", RegionType.Province);
+			RegionEntity qd = region(sd, 370200, "青岛市", "青岛", RegionType.City);
+			region(qd, 370202, "市南区", null, RegionType.District);
+			RegionEntity lc = region(qd, 370211, "李沧区", null, RegionType.District);
+			region(lc, 370211001, "李村街道", null, RegionType.Street);
+			region(qd, 370212, "崂山区", null, RegionType.District);
+			region(jlc, 220203, "龙潭区", null, RegionType.District);
+		}
+
+		private RegionEntity region(RegionEntity parent, long id, String name, String alias, RegionType type){
+			RegionEntity region = new RegionEntity();
+			region.setId(id);
+			region.setParentId(parent==null ? 0 : parent.getId());
+			region.setName(name);
+			if(alias!=null) region.setAlias(alias);
+			region.setType(type);
+			region.setZip(String.valueOf(id % 1000000));
+			if(parent!=null){
+				if(parent.getChildren()==null) parent.setChildren(new ArrayList<RegionEntity>());
+				parent.getChildren().add(region);
+			}
+			this.all.add(region);
+			return region;
+		}
+
+		AddressPersister persister(String provinces){
+			AddressPersister persister = new AddressPersister();
+			persister.setRegionDao(this);
+			persister.setRegionProvinces(provinces);
+			return persister;
+		}
+
+		@Override
+		public void scanAll(ResultHandler<RegionEntity> handler) {
+			this.scans++;
+			List<RegionEntity> sorted = new ArrayList<RegionEntity>(this.all);
+			Collections.sort(sorted, new Comparator<RegionEntity>() {
+				@Override
+				public int compare(RegionEntity a, RegionEntity b) {
+					if(a.getParentId()!=b.getParentId()) return a.getParentId() < b.getParentId() ? -1 : 1;
+					return a.getId()==b.getId() ? 0 : (a.getId() < b.getId() ? -1 : 1);
+				}
+			});
+			DefaultResultContext<RegionEntity> context = new DefaultResultContext<RegionEntity>();
+			for(RegionEntity region : sorted){
+				context.nextResultObject(region);
+				handler.handleResult(context);
+			}
+		}
+		@Override
+		public RegionWatermark watermark() {
+			return this.watermark;
+		}
+		@Override
+		public List<RegionEntity> findByParent(long pid) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public RegionEntity findByParentAndName(long pid, String name) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public RegionEntity findRoot() {
+			return this.root;
+		}
+		@Override
+		public int create(RegionEntity entity) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public int batchCreate(List<RegionEntity> regions) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public int update(RegionEntity entity) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public RegionEntity get(long id) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public int delete(long id) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
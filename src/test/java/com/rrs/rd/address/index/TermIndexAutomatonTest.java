@@ -0,0 +1,105 @@
+package com.rrs.rd.address.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.TermType;
+
+import junit.framework.TestCase;
+
+/**
+ * Aho-Corasick自动机的匹配结果与逐字符遍历索引树的结果对比。
+ * 索引词条互相重叠：市南区/南区、吉林/吉林市/吉林省，以及别名山东/山东省/东省、青岛/青岛市/岛市；
+ * 吉林大街/林大路/大用于检查失败链上间隔了不包含索引对象的状态时的输出指针。
+ */
+public class TermIndexAutomatonTest extends TestCase {
+	private static final String[] TERMS = { "市南区", "南区", "吉林", "吉林市", "吉林省", "山东", "山东省", "东省"
+		, "青岛", "青岛市", "岛市", "市", "吉林大街", "林大路", "大" };
+	private static final String[] TEXTS = { "山东省青岛市市南区南京路", "吉林省吉林市吉林大街", "吉林市南区"
+		, "青岛市市南区山东路", "东省岛市市市", "北京市海淀区", "" };
+
+	@Test
+	public void testMatchAllOccurrences(){
+		TermIndexEntry root = buildIndex();
+		TermIndexAutomaton automaton = new TermIndexAutomaton(root);
+		for(String text : TEXTS)
+			assertEquals(text, expected(root, text), actual(automaton.match(text)));
+
+		//同一起始位置最长的词条在前
+		TermIndexMatches matches = automaton.match("吉林市南区");
+		List<String> found = terms(matches, 0);
+		assertEquals(2, found.size());
+		assertEquals("吉林市", found.get(0));
+		assertEquals("吉林", found.get(1));
+		found = terms(matches, 2);
+		assertEquals(2, found.size());
+		assertEquals("市南区", found.get(0));
+		assertEquals("市", found.get(1));
+		assertEquals(1, terms(matches, 3).size());
+		assertEquals("南区", terms(matches, 3).get(0));
+		assertFalse(matches.hasMatch(4));
+
+		//索引对象与索引树中的一致
+		int i = matches.first(0);
+		assertSame(root.getChild('吉').getChild('林').getChild('市'), matches.entry(i));
+		assertEquals(TermType.City, matches.entry(i).getItems().get(0).getType());
+	}
+
+	@Test
+	public void testSuffix(){
+		TermIndexAutomaton automaton = new TermIndexAutomaton(buildIndex());
+		for(String text : TEXTS){
+			TermIndexMatches matches = automaton.match(text);
+			for(int n=0; n<=text.length(); n++){
+				TermIndexMatches suffix = matches.suffix(n);
+				assertEquals(text.substring(n), suffix.getText());
+				assertEquals(text + "@" + n, actual(automaton.match(text.substring(n))), actual(suffix));
+			}
+		}
+	}
+
+	private static TermIndexEntry buildIndex(){
+		TermIndexEntry root = new TermIndexEntry();
+		for(String term : TERMS){
+			TermType type = term.endsWith("市") ? TermType.City : (term.endsWith("区") ? TermType.District : TermType.Province);
+			root.buildIndex(term, 0, new TermIndexItem(type, term));
+		}
+		return root;
+	}
+
+	/**
+	 * 逐字符遍历索引树得到每个起始位置的全部词条，按长度从长到短排列。
+	 */
+	private static List<List<String>> expected(TermIndexEntry root, String text){
+		List<List<String>> result = new ArrayList<List<String>>();
+		for(int start=0; start<text.length(); start++){
+			List<String> terms = new ArrayList<String>();
+			TermIndexEntry entry = root;
+			for(int end=start; end<text.length() && entry!=null; end++){
+				entry = entry.getChild(text.charAt(end));
+				if(entry!=null && entry.hasItem()) terms.add(0, text.substring(start, end + 1));
+			}
+			result.add(terms);
+		}
+		return result;
+	}
+
+	private static List<List<String>> actual(TermIndexMatches matches){
+		List<List<String>> result = new ArrayList<List<String>>();
+		for(int start=0; start<matches.getText().length(); start++)
+			result.add(terms(matches, start));
+		return result;
+	}
+
+	private static List<String> terms(TermIndexMatches matches, int start){
+		List<String> terms = new ArrayList<String>();
+		for(int i=matches.first(start); i>=0; i=matches.next(i)){
+			String term = matches.getText().substring(start, matches.end(i) + 1);
+			assertEquals(term, matches.entry(i).getKey());
+			terms.add(term);
+		}
+		return terms;
+	}
+}
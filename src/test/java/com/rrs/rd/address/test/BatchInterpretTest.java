@@ -0,0 +1,192 @@
+package com.rrs.rd.address.test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.Test;
+
+import com.rrs.rd.address.index.TermIndexBuilder;
+import com.rrs.rd.address.interpret.AddressInterpreter;
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.persist.AddressPersister;
+import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionType;
+import com.rrs.rd.address.persist.RegionWatermark;
+import com.rrs.rd.address.persist.dao.RegionDao;
+
+import junit.framework.TestCase;
+
+/**
+ * 多线程批量解析地址：结果保持输入顺序，空行、无法解析的地址逐条跳过，不影响其它地址的位置。
+ * <p>区域从内存中的{@link RegionDao}加载，不需要连接mysql；{@link AddressPersister}的静态区域缓存在测试前后清空。</p>
+ */
+public class BatchInterpretTest extends TestCase {
+	private static final String[] PREFIXES = { "山东青岛李沧区", "山东省青岛市市南区", "北京市海淀区", "北京北京市海淀区" };
+	private static final String[] INVALID = { "", "   ", null, "火星某地100号", "青岛" };
+
+	@Override
+	protected void setUp() throws Exception {
+		resetRegions();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		resetRegions();
+	}
+
+	@Test
+	public void testResultsInInputOrder() throws Exception {
+		AddressInterpreter interpreter = interpreter(4);
+		//4个线程时每个区块约12条地址，200条地址拆分成多个区块
+		List<String> texts = new ArrayList<String>();
+		for(int i=1; i<=200; i++)
+			texts.add(PREFIXES[i % PREFIXES.length] + "北崂路" + i + "号东山峰景小区");
+		List<AddressEntity> addresses = interpreter.interpret(texts);
+		assertEquals(texts.size(), addresses.size());
+		for(int i=0; i<texts.size(); i++){
+			assertEquals(texts.get(i), addresses.get(i).getRawText());
+			assertEquals((i + 1) + "号", addresses.get(i).getRoadNum());
+		}
+		assertSameResults(interpreter(1).interpret(texts), addresses);
+	}
+
+	@Test
+	public void testSkipInvalidLines() throws Exception {
+		AddressInterpreter interpreter = interpreter(3);
+		List<String> texts = new ArrayList<String>();
+		List<String> valid = new ArrayList<String>();
+		for(int i=1; i<=100; i++){
+			if(i % 7==0){
+				texts.add(INVALID[(i / 7) % INVALID.length]);
+				continue;
+			}
+			String text = PREFIXES[i % PREFIXES.length] + "宁夏路" + i + "号";
+			texts.add(text);
+			valid.add(text);
+		}
+		List<AddressEntity> addresses = interpreter.interpret(texts);
+		assertEquals(valid.size(), addresses.size());
+		for(int i=0; i<valid.size(); i++){
+			assertEquals(valid.get(i), addresses.get(i).getRawText());
+			assertTrue(addresses.get(i).hasCity() && addresses.get(i).hasDistrict());
+		}
+		assertSameResults(interpreter(1).interpret(texts), addresses);
+	}
+
+	private static void assertSameResults(List<AddressEntity> expected, List<AddressEntity> actual){
+		assertEquals(expected.size(), actual.size());
+		for(int i=0; i<expected.size(); i++){
+			assertEquals(expected.get(i).getRawText(), actual.get(i).getRawText());
+			assertEquals(expected.get(i).getText(), actual.get(i).getText());
+			assertEquals(expected.get(i).getDistrict().getId(), actual.get(i).getDistrict().getId());
+			assertEquals(expected.get(i).getRoad(), actual.get(i).getRoad());
+			assertEquals(expected.get(i).getRoadNum(), actual.get(i).getRoadNum());
+		}
+	}
+
+	private static AddressInterpreter interpreter(int parallelism){
+		AddressPersister persister = new AddressPersister();
+		persister.setRegionDao(new MemoryDao());
+		AddressInterpreter interpreter = new AddressInterpreter();
+		interpreter.setPersister(persister);
+		interpreter.setTermIndex(new TermIndexBuilder(persister, Arrays.asList("市区", "地区")));
+		interpreter.setBatchParallelism(parallelism);
+		return interpreter;
+	}
+
+	private static void resetRegions() throws Exception {
+		for(String name : new String[]{ "REGION_TREE", "REGION_CACHE", "REGION_LOADED" }){
+			Field field = AddressPersister.class.getDeclaredField(name);
+			field.setAccessible(true);
+			field.set(null, "REGION_LOADED".equals(name) ? Boolean.FALSE : null);
+		}
+	}
+
+	/**
+	 * 内存中的行政区域表。
+	 */
+	private static class MemoryDao implements RegionDao {
+		private List<RegionEntity> all = new ArrayList<RegionEntity>();
+
+		MemoryDao(){
+			RegionEntity root = region(null, 1, "中国", null, RegionType.Country);
+			RegionEntity sd = region(root, 370000, "山东省", "山东", RegionType.Province);
+			RegionEntity qd = region(sd, 370200, "青岛市", "青岛", RegionType.City);
+			region(qd, 370202, "市南区", null, RegionType.District);
+			region(qd, 370211, "李沧区", null, RegionType.District);
+			RegionEntity bj = region(root, 110000, "北京", "北京市", RegionType.ProvinceLevelCity1);
+			RegionEntity bjc = region(bj, 110100, "北京市", null, RegionType.ProvinceLevelCity2);
+			region(bjc, 110108, "海淀区", null, RegionType.District);
+		}
+
+		private RegionEntity region(RegionEntity parent, long id, String name, String alias, RegionType type){
+			RegionEntity region = new RegionEntity();
+			region.setId(id);
+			region.setParentId(parent==null ? 0 : parent.getId());
+			region.setName(name);
+			if(alias!=null) region.setAlias(alias);
+			region.setType(type);
+			this.all.add(region);
+			return region;
+		}
+
+		@Override
+		public void scanAll(ResultHandler<RegionEntity> handler) {
+			List<RegionEntity> sorted = new ArrayList<RegionEntity>(this.all);
+			Collections.sort(sorted, new Comparator<RegionEntity>() {
+				@Override
+				public int compare(RegionEntity a, RegionEntity b) {
+					if(a.getParentId()!=b.getParentId()) return a.getParentId() < b.getParentId() ? -1 : 1;
+					return a.getId()==b.getId() ? 0 : (a.getId() < b.getId() ? -1 : 1);
+				}
+			});
+			DefaultResultContext<RegionEntity> context = new DefaultResultContext<RegionEntity>();
+			for(RegionEntity region : sorted){
+				context.nextResultObject(region);
+				handler.handleResult(context);
+			}
+		}
+		@Override
+		public RegionWatermark watermark() {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public List<RegionEntity> findByParent(long pid) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public RegionEntity findByParentAndName(long pid, String name) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public RegionEntity findRoot() {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public int create(RegionEntity entity) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public int batchCreate(List<RegionEntity> regions) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public int update(RegionEntity entity) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public RegionEntity get(long id) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public int delete(long id) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
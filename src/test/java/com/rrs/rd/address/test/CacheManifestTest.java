@@ -0,0 +1,104 @@
+package com.rrs.rd.address.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionType;
+import com.rrs.rd.address.similarity.CacheManifest;
+import com.rrs.rd.address.similarity.NoHistoryDataException;
+import com.rrs.rd.address.similarity.PartitionFile;
+import com.rrs.rd.address.similarity.SimilarityComputer;
+
+import junit.framework.TestCase;
+
+public class CacheManifestTest extends TestCase {
+	@Test
+	public void testUpdateAndReload() throws Exception {
+		File folder = File.createTempFile("cache", "");
+		folder.delete();
+		folder.mkdirs();
+		File file = new File(folder, CacheManifest.FILE_NAME);
+		file.deleteOnExit();
+		folder.deleteOnExit();
+
+		CacheManifest manifest = CacheManifest.load(folder);
+		assertEquals(0, manifest.size());
+		assertFalse(manifest.isUpToDate("110000-110100-110101", 1200, 832));
+		manifest.update("110000-110100-110101", 1200, 832);
+		assertTrue(file.exists());
+
+		manifest = CacheManifest.load(folder);
+		assertTrue(manifest.isUpToDate("110000-110100-110101", 1200, 832));
+		assertFalse(manifest.isUpToDate("110000-110100-110101", 1300, 833)); //新导入地址
+		assertFalse(manifest.isUpToDate("110000-110100-110101", 1200, 831)); //删除地址
+	}
+
+	/**
+	 * 分区的地址全部删除：删除缓存文件和清单中的记录，不再提供已删除的地址。
+	 */
+	@Test
+	public void testPartitionDroppedToZeroRows() throws Exception {
+		File folder = File.createTempFile("cache", "");
+		folder.delete();
+		folder.mkdirs();
+		SimilarityComputer computer = new SimilarityComputer();
+		computer.setCacheFolder(folder.getAbsolutePath());
+
+		RegionEntity province = region(370000, "山东省", RegionType.Province, null);
+		RegionEntity district = region(370211, "李沧区", RegionType.District, null);
+		List<RegionEntity> districts = new ArrayList<RegionEntity>();
+		districts.add(district);
+		RegionEntity city = region(370200, "青岛市", RegionType.City, districts);
+		List<AddressEntity> addresses = new ArrayList<AddressEntity>();
+		for(int i=1; i<=3; i++){
+			AddressEntity address = new AddressEntity("东山峰景" + i + "号楼");
+			address.setId(i);
+			address.setProvince(province);
+			address.setCity(city);
+			address.setDistrict(district);
+			address.setRoad("北崂路");
+			address.setRoadNum(i + "号");
+			addresses.add(address);
+		}
+		String key = computer.buildCacheKey(addresses.get(0));
+		computer.buildDocumentFileCache(key, addresses);
+		CacheManifest manifest = CacheManifest.load(folder);
+		manifest.update(key, 3, 3);
+		assertEquals(3, computer.searchPartition(addresses.subList(0, 1), 5, false).get(0).getSimilarDocs().size());
+
+		//地址全部删除，水位统计中没有该分区
+		assertTrue(manifest.contains(key));
+		assertTrue(computer.deleteDocumentFileCache(key));
+		assertTrue(manifest.remove(key));
+		assertFalse(new File(folder, key + ".vt").exists());
+		assertFalse(new File(folder, key + PartitionFile.EXTENSION).exists());
+		assertFalse(CacheManifest.load(folder).contains(key));
+		assertEquals(0, CacheManifest.load(folder).size());
+		try{
+			computer.searchPartition(addresses.subList(0, 1), 5, false);
+			fail("Deleted addresses are still served");
+		}catch(NoHistoryDataException ex){
+		}
+
+		//再次执行时没有需要删除的内容
+		assertFalse(computer.deleteDocumentFileCache(key));
+		assertFalse(manifest.remove(key));
+
+		for(File file : folder.listFiles()) file.delete();
+		folder.delete();
+	}
+
+	private static RegionEntity region(long id, String name, RegionType type, List<RegionEntity> children){
+		RegionEntity region = new RegionEntity();
+		region.setId(id);
+		region.setName(name);
+		region.setType(type);
+		region.setChildren(children);
+		return region;
+	}
+}
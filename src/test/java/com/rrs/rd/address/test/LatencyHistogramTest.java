@@ -0,0 +1,53 @@
+package com.rrs.rd.address.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.metrics.LatencyHistogram;
+import com.rrs.rd.address.metrics.LatencySnapshot;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+	@Test
+	public void testPercentiles(){
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		//1到10000微秒各一次
+		for(int i=1; i<=10000; i++) histogram.record(i * 1000L);
+		LatencySnapshot snapshot = histogram.snapshot();
+		assertEquals(10000, snapshot.getCount());
+		assertEquals(5000.5, snapshot.getMean(), 0.001);
+		assertEquals(10000, snapshot.getMax(), 0);
+		//分位数误差不超过6.25%
+		assertEquals(5000, snapshot.getP50(), 5000 * 0.0625);
+		assertEquals(9900, snapshot.getP99(), 9900 * 0.0625);
+		assertEquals(9990, snapshot.getP999(), 9990 * 0.0625);
+		assertTrue(snapshot.getP999()<=snapshot.getMax());
+
+		histogram.reset();
+		snapshot = histogram.snapshot();
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0, snapshot.getP99(), 0);
+	}
+
+	@Test
+	public void testConcurrentRecord() throws Exception {
+		final LatencyHistogram histogram = new LatencyHistogram("test");
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t=0; t<4; t++){
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for(int i=0; i<100000; i++) histogram.record(i % 1000);
+				}
+			});
+		}
+		for(Thread thread : threads) thread.start();
+		for(Thread thread : threads) thread.join();
+		LatencySnapshot snapshot = histogram.snapshot();
+		assertEquals(400000, snapshot.getCount());
+		assertEquals(0.999, snapshot.getMax(), 0.0001);
+	}
+}
@@ -0,0 +1,92 @@
+package com.rrs.rd.address.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.persist.AddressEntity;
+import com.rrs.rd.address.persist.RegionEntity;
+import com.rrs.rd.address.persist.RegionType;
+import com.rrs.rd.address.similarity.Query;
+import com.rrs.rd.address.similarity.SimilarityComputer;
+
+import junit.framework.TestCase;
+
+/**
+ * 多查询计算与逐个查询单独扫描分区的结果对比。
+ */
+public class MultiQueryScoringTest extends TestCase {
+	private static final String[] ROADS = { "北崂路", "宁夏路", "香港中路", "金水路", "瑞昌路", "重庆中路" };
+	private static final String[] COMMS = { "东山峰景", "翠微西里", "期颐百年小区", "紫韵东城", "海上五月花", "和平商业大厦" };
+
+	@Test
+	public void testMultiQueryScoring() throws Exception {
+		File folder = File.createTempFile("cache", "");
+		folder.delete();
+		folder.mkdirs();
+		SimilarityComputer computer = new SimilarityComputer();
+		computer.setCacheFolder(folder.getAbsolutePath());
+		computer.setCacheVectorsInMemory(true);
+
+		RegionEntity district = region(370211, "李沧区", RegionType.District, null);
+		List<RegionEntity> districts = new ArrayList<RegionEntity>();
+		districts.add(district);
+		RegionEntity city = region(370200, "青岛市", RegionType.City, districts);
+		RegionEntity province = region(370000, "山东省", RegionType.Province, null);
+
+		Random random = new Random(42);
+		List<AddressEntity> addresses = new ArrayList<AddressEntity>();
+		for(int i=0; i<20000; i++)
+			addresses.add(address(i + 1, random, province, city, district));
+		String key = computer.buildCacheKey(addresses.get(0));
+		computer.buildDocumentFileCache(key, addresses);
+
+		List<AddressEntity> queries = new ArrayList<AddressEntity>();
+		for(int i=0; i<200; i++)
+			queries.add(address(0, random, province, city, district));
+		computer.searchPartition(queries, 5, false); //加载分区、预热
+
+		List<Query> separate = new ArrayList<Query>();
+		for(AddressEntity query : queries)
+			separate.addAll(computer.searchPartition(Collections.singletonList(query), 5, false));
+		List<Query> multi = computer.searchPartition(queries, 5, false);
+
+		assertEquals(separate.size(), multi.size());
+		for(int i=0; i<separate.size(); i++){
+			assertEquals(separate.get(i).getSimilarDocs().size(), multi.get(i).getSimilarDocs().size());
+			for(int j=0; j<separate.get(i).getSimilarDocs().size(); j++){
+				assertEquals(separate.get(i).getSimilarDocs().get(j).getDocument().getId()
+					, multi.get(i).getSimilarDocs().get(j).getDocument().getId());
+				assertEquals(separate.get(i).getSimilarDocs().get(j).getSimilarity()
+					, multi.get(i).getSimilarDocs().get(j).getSimilarity());
+			}
+		}
+
+		for(File file : folder.listFiles()) file.delete();
+		folder.delete();
+	}
+
+	private static RegionEntity region(long id, String name, RegionType type, List<RegionEntity> children){
+		RegionEntity region = new RegionEntity();
+		region.setId(id);
+		region.setName(name);
+		region.setType(type);
+		region.setChildren(children);
+		return region;
+	}
+
+	private static AddressEntity address(int id, Random random, RegionEntity province, RegionEntity city, RegionEntity district){
+		AddressEntity address = new AddressEntity(COMMS[random.nextInt(COMMS.length)] + (1 + random.nextInt(30)) + "号楼");
+		address.setId(id);
+		address.setProvince(province);
+		address.setCity(city);
+		address.setDistrict(district);
+		address.setRoad(ROADS[random.nextInt(ROADS.length)]);
+		address.setRoadNum((1 + random.nextInt(200)) + "号");
+		return address;
+	}
+}
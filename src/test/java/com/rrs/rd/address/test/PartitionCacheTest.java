@@ -0,0 +1,88 @@
+package com.rrs.rd.address.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.similarity.Document;
+import com.rrs.rd.address.similarity.DocumentPartition;
+import com.rrs.rd.address.similarity.PartitionCache;
+import com.rrs.rd.address.similarity.TermDictionary;
+
+import junit.framework.TestCase;
+
+public class PartitionCacheTest extends TestCase {
+	private static Callable<DocumentPartition> loader(final String key, final int[] loads){
+		return new Callable<DocumentPartition>() {
+			@Override
+			public DocumentPartition call() throws Exception {
+				loads[0]++;
+				List<Document> docs = new ArrayList<Document>();
+				for(int i=0; i<10; i++) docs.add(new Document(i));
+				return new DocumentPartition(key, docs, new TermDictionary(), null, null, 0);
+			}
+		};
+	}
+
+	@Test
+	public void testLruEviction(){
+		PartitionCache cache = new PartitionCache();
+		int[] loads = new int[1];
+		DocumentPartition a = cache.get("a", loader("a", loads));
+		cache.setMaxBytes(a.getEstimatedBytes() * 2);
+		cache.get("b", loader("b", loads));
+		assertSame(a, cache.get("a", loader("a", loads))); //命中，a成为最近访问
+		assertEquals(2, loads[0]);
+
+		cache.get("c", loader("c", loads)); //超出限制，淘汰最久未访问的b
+		assertEquals(3, loads[0]);
+		assertEquals(2, cache.size());
+		assertNotNull(cache.getIfLoaded("a"));
+		assertNull(cache.getIfLoaded("b"));
+		assertNotNull(cache.getIfLoaded("c"));
+
+		cache.get("b", loader("b", loads)); //重新加载b，淘汰a
+		assertEquals(4, loads[0]);
+		assertNull(cache.getIfLoaded("a"));
+
+		assertEquals(1, cache.getHitCount());
+		assertEquals(4, cache.getMissCount());
+		assertEquals(2, cache.getEvictionCount());
+		assertTrue(cache.getTotalBytes() <= cache.getMaxBytes());
+	}
+
+	@Test
+	public void testFailedLoadIsRetried(){
+		PartitionCache cache = new PartitionCache();
+		try{
+			cache.get("x", new Callable<DocumentPartition>() {
+				@Override
+				public DocumentPartition call() throws Exception {
+					throw new IllegalStateException("broken file");
+				}
+			});
+			fail();
+		}catch(RuntimeException ex){
+			assertTrue(ex.getCause() instanceof IllegalStateException);
+		}
+		int[] loads = new int[1];
+		assertNotNull(cache.get("x", loader("x", loads)));
+		assertEquals(1, loads[0]);
+	}
+
+	@Test
+	public void testReplace(){
+		PartitionCache cache = new PartitionCache();
+		int[] loads = new int[1];
+		cache.get("a", loader("a", loads));
+		DocumentPartition reloaded = new DocumentPartition("a", new ArrayList<Document>(), new TermDictionary(), null, null, 0);
+		assertFalse(cache.replace("b", reloaded)); //未加载的分区不替换
+		assertTrue(cache.replace("a", reloaded));
+		assertSame(reloaded, cache.get("a", loader("a", loads)));
+		assertEquals(1, loads[0]);
+		assertEquals(1, cache.size());
+		assertEquals(reloaded.getEstimatedBytes(), cache.getTotalBytes());
+	}
+}
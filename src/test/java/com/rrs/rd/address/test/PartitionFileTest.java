@@ -0,0 +1,115 @@
+package com.rrs.rd.address.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.TermType;
+import com.rrs.rd.address.similarity.Document;
+import com.rrs.rd.address.similarity.MappedPartition;
+import com.rrs.rd.address.similarity.PartitionFile;
+import com.rrs.rd.address.similarity.SimilarityComputer;
+import com.rrs.rd.address.similarity.Term;
+import com.rrs.rd.address.similarity.TermDictionary;
+
+import junit.framework.TestCase;
+
+public class PartitionFileTest extends TestCase {
+	@Test
+	public void testWriteAndRead() throws Exception {
+		SimilarityComputer computer = new SimilarityComputer();
+		String[] lines = new String[] {
+			"955163$R和平里中街|N17号|X天|X元|X和|X平",
+			"955160$T温泉镇|V北安河村|X和|X平",
+			"12$R和平里中街|N甲十二号院|X和|X平|X里"
+		};
+		List<Document> docs = new ArrayList<Document>();
+		for(String line : lines){
+			Document doc = computer.deserialize(line);
+			for(Term term : doc.getTerms()) term.setIdf(term.getText().length() * 0.5);
+			docs.add(doc);
+		}
+		Document empty = new Document(7); //没有词条的文档
+		empty.setTerms(new ArrayList<Term>(0));
+		docs.add(empty);
+
+		File file = File.createTempFile("partition", PartitionFile.EXTENSION);
+		file.deleteOnExit();
+		PartitionFile.write(file, docs);
+		PartitionFile pf = PartitionFile.open(file);
+		assertEquals(4, pf.getDocCount());
+		//和平里中街、17号、天、元、和、平、温泉镇、北安河村、甲十二号院、里
+		assertEquals(10, pf.getTermCount());
+
+		List<Document> read = pf.readDocuments();
+		assertEquals(docs.size(), read.size());
+		for(int i=0; i<docs.size(); i++){
+			Document expected = docs.get(i), actual = read.get(i);
+			assertEquals(expected.getId(), actual.getId());
+			assertEquals(computer.serialize(expected), computer.serialize(actual));
+			assertEquals(expected.getRoadNumValue(), actual.getRoadNumValue());
+			for(int j=0; j<expected.getTerms().size(); j++)
+				assertEquals(expected.getTerms().get(j).getIdf(), actual.getTerms().get(j).getIdf(), 0);
+		}
+		Document doc = read.get(2);
+		assertEquals(12, doc.getRoadNumValue());
+		assertEquals(TermType.RoadNum, doc.getRoadNum().getType());
+		assertSame(doc.getRoad(), doc.getRoadNum().getRef());
+		assertSame(read.get(0).getRoad(), doc.getRoad()); //相同词条共享
+		assertEquals("北安河村", read.get(1).getVillage().getText());
+	}
+
+	@Test
+	public void testMappedPartition() throws Exception {
+		SimilarityComputer computer = new SimilarityComputer();
+		String[] lines = new String[] {
+			"955163$R和平里中街|N17号|X天|X元|X和|X平",
+			"12$R和平里中街|N甲十二号院|X和|X平|X里"
+		};
+		List<Document> docs = new ArrayList<Document>();
+		for(String line : lines){
+			Document doc = computer.deserialize(line);
+			for(Term term : doc.getTerms()) term.setIdf(term.getText().length() * 0.5);
+			docs.add(doc);
+		}
+		File file = File.createTempFile("partition", PartitionFile.EXTENSION);
+		file.deleteOnExit();
+		PartitionFile.write(file, docs);
+		PartitionFile pf = PartitionFile.open(file);
+		assertEquals(12, pf.docId(1));
+		int[] termIndexes = new int[5];
+		assertEquals(5, pf.readDocTerms(1, termIndexes));
+		assertEquals(0, termIndexes[0]); //和平里中街，与第一个文档共享
+		assertEquals(6, pf.readDocTerms(0, new int[0])); //数组不够大时只返回词条数
+
+		TermDictionary dict = new TermDictionary();
+		MappedPartition mapped = new MappedPartition(pf, pf.readTerms(), dict);
+		assertEquals(2, mapped.getDocCount());
+		for(int i=0; i<docs.size(); i++){
+			Document expected = docs.get(i).compact(dict, true), actual = mapped.decode(i);
+			assertEquals(expected.getId(), actual.getId());
+			assertEquals(expected.getTermCount(), actual.getTermCount());
+			for(int j=0; j<expected.getTermCount(); j++){
+				assertEquals(expected.getTermId(j), actual.getTermId(j));
+				assertEquals(expected.getTermIdf(j), actual.getTermIdf(j), 0);
+				assertEquals(expected.getTermType(j), actual.getTermType(j));
+				assertEquals(expected.getTermPosition(j), actual.getTermPosition(j));
+			}
+			assertEquals(expected.getRoadId(), actual.getRoadId());
+			assertEquals(expected.getRoadNumId(), actual.getRoadNumId());
+			assertEquals(expected.getRoadNumValue(), actual.getRoadNumValue());
+			assertEquals(computer.serialize(docs.get(i)), computer.serialize(actual.expand(dict)));
+		}
+	}
+
+	@Test
+	public void testInvalidFile(){
+		try{
+			PartitionFile.wrap(new byte[32]);
+			fail();
+		}catch(IllegalArgumentException ex){
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package com.rrs.rd.address.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.rrs.rd.address.similarity.Document;
+import com.rrs.rd.address.similarity.Query;
+import com.rrs.rd.address.similarity.SimilarDoccument;
+import com.rrs.rd.address.similarity.TopNCollector;
+
+import junit.framework.TestCase;
+
+public class TopNCollectorTest extends TestCase {
+	@Test
+	public void testCollect(){
+		TopNCollector collector = new TopNCollector(3);
+		assertFalse(collector.collect(0, 0));
+		assertTrue(collector.collect(1, 0.5));
+		assertTrue(collector.collect(2, 0.9));
+		assertTrue(collector.collect(3, 0.7));
+		assertFalse(collector.collect(4, 0.3));
+		assertTrue(collector.collect(5, 0.8));
+		//相似度相同，下标小的优先
+		assertFalse(collector.collect(6, 0.7));
+		assertTrue(collector.collect(0, 0.7));
+
+		assertEquals(3, collector.size());
+		int[] docs = collector.sortedDocs();
+		assertEquals(2, docs[0]);
+		assertEquals(5, docs[1]);
+		assertEquals(0, docs[2]);
+		double[] scores = collector.sortedScores();
+		assertEquals(0.9, scores[0], 0);
+		assertEquals(0.8, scores[1], 0);
+		assertEquals(0.7, scores[2], 0);
+	}
+
+	@Test
+	public void testMerge(){
+		TopNCollector c1 = new TopNCollector(2), c2 = new TopNCollector(2), all = new TopNCollector(2);
+		double[] scores = new double[] { 0.4, 0.6, 0.6, 0.2, 0.9, 0.6 };
+		for(int i=0; i<scores.length; i++){
+			if(i%2==0) c1.collect(i, scores[i]);
+			else c2.collect(i, scores[i]);
+			all.collect(i, scores[i]);
+		}
+		c2.merge(c1);
+		int[] merged = c2.sortedDocs(), expected = all.sortedDocs();
+		assertEquals(expected.length, merged.length);
+		for(int i=0; i<expected.length; i++)
+			assertEquals(expected[i], merged[i]);
+		assertEquals(4, merged[0]);
+		assertEquals(1, merged[1]);
+	}
+
+	@Test
+	public void testToSimilarDocs(){
+		List<Document> docs = new ArrayList<Document>();
+		for(int i=0; i<5; i++) docs.add(new Document(1000 + i));
+		TopNCollector collector = new TopNCollector(10);
+		collector.collect(3, 0.5);
+		collector.collect(1, 0.75);
+		List<SimilarDoccument> result = collector.toSimilarDocs(docs);
+		assertEquals(2, result.size());
+		assertEquals(1001, result.get(0).getDocument().getId());
+		assertEquals(0.75, result.get(0).getSimilarity(), 0);
+		assertEquals(1003, result.get(1).getDocument().getId());
+	}
+
+	@Test
+	public void testSameOrderAsQuery(){
+		//文档ID与分区中的顺序相反，相似度相同时两者都应按分区顺序（先添加的优先）
+		List<Document> docs = new ArrayList<Document>();
+		for(int i=0; i<6; i++) docs.add(new Document(100 - i));
+		double[] scores = new double[] { 0.5, 0.7, 0.5, 0.7, 0.5, 0.9 };
+		TopNCollector collector = new TopNCollector(4);
+		Query query = new Query(4);
+		for(int i=0; i<docs.size(); i++){
+			collector.collect(i, scores[i]);
+			query.addSimiDoc(docs.get(i), scores[i]);
+		}
+		query.sortSimilarDocs();
+		List<SimilarDoccument> expected = collector.toSimilarDocs(docs), actual = query.getSimilarDocs();
+		assertEquals(4, actual.size());
+		for(int i=0; i<expected.size(); i++)
+			assertSame(expected.get(i).getDocument(), actual.get(i).getDocument());
+		assertEquals(95, actual.get(0).getDocument().getId());
+		assertEquals(99, actual.get(1).getDocument().getId());
+		assertEquals(97, actual.get(2).getDocument().getId());
+		assertEquals(100, actual.get(3).getDocument().getId());
+	}
+}